@@ -5,11 +5,20 @@ import java.io.File;
 import net.citizensnpcs.api.util.SpigotUtil;
 import net.citizensnpcs.api.util.schedulers.SchedulerAdapter;
 import org.bukkit.Bukkit;
+import org.bukkit.event.HandlerList;
 import org.bukkit.event.Listener;
 import org.bukkit.plugin.Plugin;
 
 import net.citizensnpcs.api.ai.speech.SpeechContext;
+import net.citizensnpcs.api.astar.pathfinder.ChunkSnapshotCache;
+import net.citizensnpcs.api.astar.pathfinder.ClearanceIndex;
+import net.citizensnpcs.api.astar.pathfinder.FlowFieldCache;
+import net.citizensnpcs.api.astar.pathfinder.PathCache;
+import net.citizensnpcs.api.astar.pathfinder.PathfindingScheduler;
+import net.citizensnpcs.api.astar.pathfinder.ReachabilityIndex;
+import net.citizensnpcs.api.astar.pathfinder.WalkabilityIndex;
 import net.citizensnpcs.api.command.CommandManager;
+import net.citizensnpcs.api.navmesh.NavMesh;
 import net.citizensnpcs.api.npc.MemoryNPCDataStore;
 import net.citizensnpcs.api.npc.NPC;
 import net.citizensnpcs.api.npc.NPCDataStore;
@@ -23,7 +32,15 @@ import net.citizensnpcs.api.trait.TraitFactory;
  */
 public final class CitizensAPI {
 
+    private static volatile ChunkSnapshotCache chunkSnapshotCache;
+    private static ClearanceIndex clearanceIndex;
+    private static FlowFieldCache flowFieldCache;
+    private static NavMesh navMesh;
+    private static PathCache pathCache;
+    private static PathfindingScheduler pathfindingScheduler;
+    private static ReachabilityIndex reachabilityIndex;
     private static SchedulerAdapter scheduler;
+    private static WalkabilityIndex walkabilityIndex;
 
     private CitizensAPI() {
     }
@@ -126,6 +143,102 @@ public final class CitizensAPI {
         return getImplementation().getNPCRegistry();
     }
 
+    /**
+     * Gets the shared {@link ChunkSnapshotCache}, which lets pathfinding block sources reuse recent chunk snapshots.
+     * The cache is created by {@link #setImplementation(CitizensPlugin)}, so it may be fetched from any thread.
+     *
+     * @return The chunk snapshot cache
+     */
+    public static ChunkSnapshotCache getChunkSnapshotCache() {
+        ChunkSnapshotCache cache = chunkSnapshotCache;
+        if (cache == null)
+            throw new IllegalStateException("no implementation set");
+        return cache;
+    }
+
+    /**
+     * Gets the shared {@link ClearanceIndex} over the {@link #getWalkabilityIndex() walkability index}, which is
+     * invalidated through the {@link ChunkSnapshotCache}.
+     *
+     * @return The clearance index
+     */
+    public static synchronized ClearanceIndex getClearanceIndex() {
+        if (clearanceIndex == null) {
+            clearanceIndex = new ClearanceIndex(getWalkabilityIndex(), getChunkSnapshotCache());
+        }
+        return clearanceIndex;
+    }
+
+    /**
+     * Gets the shared {@link FlowFieldCache} of flow fields towards common destinations, which is invalidated through
+     * the {@link ChunkSnapshotCache}.
+     *
+     * @return The flow field cache
+     */
+    public static synchronized FlowFieldCache getFlowFieldCache() {
+        if (flowFieldCache == null) {
+            flowFieldCache = new FlowFieldCache(getChunkSnapshotCache());
+        }
+        return flowFieldCache;
+    }
+
+    /**
+     * Gets the shared {@link NavMesh} over the {@link #getWalkabilityIndex() walkability index}, which is rebuilt
+     * through the {@link ChunkSnapshotCache} as chunks change.
+     *
+     * @return The navigation mesh
+     */
+    public static synchronized NavMesh getNavMesh() {
+        if (navMesh == null) {
+            navMesh = new NavMesh(getWalkabilityIndex(), getChunkSnapshotCache());
+        }
+        return navMesh;
+    }
+
+    /**
+     * Gets the shared {@link PathCache} of finished paths, which is invalidated through the {@link ChunkSnapshotCache}.
+     *
+     * @return The path cache
+     */
+    public static synchronized PathCache getPathCache() {
+        if (pathCache == null) {
+            pathCache = new PathCache(getChunkSnapshotCache());
+        }
+        return pathCache;
+    }
+
+    /**
+     * Gets the shared {@link PathfindingScheduler}, which spreads queued pathfinding searches over multiple ticks. The
+     * scheduler is started on first use.
+     * <p>
+     * On Folia the scheduler runs on the global region thread, which does not own any chunks, so only searches over
+     * snapshot or otherwise detached {@link net.citizensnpcs.api.astar.pathfinder.BlockSource}s such as
+     * {@link net.citizensnpcs.api.astar.pathfinder.ChunkSnapshotBlockSource} may be submitted there. Searches over live
+     * sources such as {@link net.citizensnpcs.api.astar.pathfinder.ChunkBlockSource} must be run on the owning region.
+     *
+     * @return The pathfinding scheduler
+     */
+    public static PathfindingScheduler getPathfindingScheduler() {
+        if (pathfindingScheduler == null) {
+            pathfindingScheduler = new PathfindingScheduler();
+            pathfindingScheduler.runTaskTimer(getPlugin(), 1, 1);
+        }
+        return pathfindingScheduler;
+    }
+
+    /**
+     * Gets the shared {@link ReachabilityIndex} over the {@link #getWalkabilityIndex() walkability index}, which is
+     * invalidated through the {@link ChunkSnapshotCache}.
+     *
+     * @return The reachability index
+     */
+    public static synchronized ReachabilityIndex getReachabilityIndex() {
+        if (reachabilityIndex == null) {
+            reachabilityIndex = new ReachabilityIndex(getWalkabilityIndex(), getChunkSnapshotCache());
+        }
+        return reachabilityIndex;
+    }
+
     /**
      * @return The current {@link Plugin} providing an implementation
      */
@@ -156,6 +269,18 @@ public final class CitizensAPI {
         return getImplementation().getTraitFactory();
     }
 
+    /**
+     * Gets the shared {@link WalkabilityIndex}, which is invalidated through the {@link ChunkSnapshotCache}.
+     *
+     * @return The walkability index
+     */
+    public static synchronized WalkabilityIndex getWalkabilityIndex() {
+        if (walkabilityIndex == null) {
+            walkabilityIndex = new WalkabilityIndex(getChunkSnapshotCache());
+        }
+        return walkabilityIndex;
+    }
+
     /**
      * @return Whether a Citizens implementation is currently present
      */
@@ -188,7 +313,8 @@ public final class CitizensAPI {
     }
 
     /**
-     * Sets the current Citizens implementation.
+     * Sets the current Citizens implementation and registers the shared {@link ChunkSnapshotCache} with it. Must be
+     * called on the main thread.
      *
      * @param implementation
      *            The new implementation
@@ -198,6 +324,16 @@ public final class CitizensAPI {
             getImplementation().onImplementationChanged();
         }
         instance = implementation;
+        if (implementation == null)
+            return;
+        synchronized (CitizensAPI.class) {
+            if (chunkSnapshotCache == null) {
+                chunkSnapshotCache = new ChunkSnapshotCache();
+            } else {
+                HandlerList.unregisterAll(chunkSnapshotCache);
+            }
+            registerEvents(chunkSnapshotCache);
+        }
     }
 
     /**
@@ -218,7 +354,22 @@ public final class CitizensAPI {
     /**
      * Shuts down any resources currently being held.
      */
-    public static void shutdown() {
+    public static synchronized void shutdown() {
+        if (pathfindingScheduler != null) {
+            pathfindingScheduler.cancelAll();
+            pathfindingScheduler.cancel();
+            pathfindingScheduler = null;
+        }
+        if (chunkSnapshotCache != null) {
+            HandlerList.unregisterAll(chunkSnapshotCache);
+            chunkSnapshotCache = null;
+        }
+        clearanceIndex = null;
+        flowFieldCache = null;
+        navMesh = null;
+        pathCache = null;
+        reachabilityIndex = null;
+        walkabilityIndex = null;
         instance = null;
     }
 
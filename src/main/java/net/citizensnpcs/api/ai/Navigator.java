@@ -29,7 +29,9 @@ public interface Navigator {
     boolean canNavigateTo(Location dest);
 
     /**
-     * Returns whether the NPC can navigate to the given destination with the navigator parameters.
+     * Returns whether the NPC can navigate to the given destination with the navigator parameters. Walking
+     * destinations in a different component of the shared
+     * {@link net.citizensnpcs.api.astar.pathfinder.ReachabilityIndex} can be rejected without a search.
      */
     boolean canNavigateTo(Location dest, NavigatorParameters params);
 
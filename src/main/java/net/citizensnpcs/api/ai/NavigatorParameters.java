@@ -14,8 +14,10 @@ import net.citizensnpcs.api.ai.event.CancelReason;
 import net.citizensnpcs.api.ai.event.NavigatorCallback;
 import net.citizensnpcs.api.astar.AStarMachine;
 import net.citizensnpcs.api.astar.pathfinder.BlockExaminer;
+import net.citizensnpcs.api.astar.pathfinder.LandmarkHeuristic;
 
 public class NavigatorParameters implements Cloneable {
+    private float anytimeEpsilon = 1F;
     private int attackDelayTicks = 20;
     private double attackRange;
     private AttackStrategy attackStrategy;
@@ -28,11 +30,16 @@ public class NavigatorParameters implements Cloneable {
     private double distanceMargin = 2F;
     private List<BlockExaminer> examiners = Lists.newArrayList();
     private int fallDistance = -1;
+    private boolean flowField;
+    private boolean incrementalReplanning;
+    private LandmarkHeuristic landmarks;
     private Function<Navigator, Location> lookAtFunction;
     private Function<Entity, Location> mapper;
     private double pathDistanceMargin = 1F;
     private PathfinderType pathfinderType;
+    private boolean pathSmoothing;
     private float range;
+    private int refinementIterations = 1000;
     private List<Runnable> runCallbacks = Lists.newArrayList();
     private float speedModifier = 1F;
     private int stationaryTicks = -1;
@@ -62,6 +69,29 @@ public class NavigatorParameters implements Cloneable {
         return this;
     }
 
+    /**
+     * @see #anytimeEpsilon(float)
+     * @return The initial heuristic weight of anytime searches
+     */
+    public float anytimeEpsilon() {
+        return anytimeEpsilon;
+    }
+
+    /**
+     * Sets the initial heuristic weight (default 1) of the {@link PathfinderType#CITIZENS} search. Values above 1 run an
+     * anytime search (see {@link AStarMachine#runAnytime(AStarMachine.AnytimeState, int)}) which first finds a path
+     * costing at most this many times the optimal cost, so that the NPC can start moving sooner, and then replaces it
+     * with cheaper paths for up to {@link #refinementIterations()} further iterations. A value of 1 searches for the
+     * optimal path directly.
+     *
+     * @param epsilon
+     *            The new heuristic weight, at least 1
+     */
+    public NavigatorParameters anytimeEpsilon(float epsilon) {
+        this.anytimeEpsilon = Math.max(1F, epsilon);
+        return this;
+    }
+
     /**
      * @see #attackDelayTicks(int)
      * @return The number of ticks to wait between attacks
@@ -330,10 +360,75 @@ public class NavigatorParameters implements Cloneable {
         return this;
     }
 
+    /**
+     * @see #flowField(boolean)
+     * @return Whether paths are read from a shared flow field
+     */
+    public boolean flowField() {
+        return flowField;
+    }
+
+    /**
+     * Sets whether paths to a fixed destination are read from a shared
+     * {@link net.citizensnpcs.api.astar.pathfinder.FlowField} towards the destination block, cached per destination
+     * in {@link net.citizensnpcs.api.CitizensAPI#getFlowFieldCache()}, instead of being searched for. This suits many
+     * NPCs heading to the same destination. NPCs starting outside the field fall back to a normal search.
+     *
+     * @param flowField
+     *            Whether to use a flow field
+     */
+    public NavigatorParameters flowField(boolean flowField) {
+        this.flowField = flowField;
+        return this;
+    }
+
     public boolean hasExaminer(Class<? extends BlockExaminer> clazz) {
         return Arrays.asList(examiners).stream().anyMatch(e -> clazz.isAssignableFrom(e.getClass()));
     }
 
+    /**
+     * @see #incrementalReplanning(boolean)
+     * @return Whether entity target paths are replanned incrementally
+     */
+    public boolean incrementalReplanning() {
+        return incrementalReplanning;
+    }
+
+    /**
+     * Sets whether the path to an {@link EntityTarget} is repaired incrementally every {@link #updatePathRate()} ticks
+     * using an {@link net.citizensnpcs.api.astar.pathfinder.IncrementalPathfinder}, reusing the previous search while
+     * the target moves, rather than being searched for from scratch.
+     *
+     * @param incremental
+     *            Whether to replan incrementally
+     */
+    public NavigatorParameters incrementalReplanning(boolean incremental) {
+        this.incrementalReplanning = incremental;
+        return this;
+    }
+
+    /**
+     * @see #landmarks(LandmarkHeuristic)
+     * @return The landmark heuristic, or <code>null</code>
+     */
+    public LandmarkHeuristic landmarks() {
+        return landmarks;
+    }
+
+    /**
+     * Sets the precomputed {@link LandmarkHeuristic} used to guide {@link PathfinderType#CITIZENS} searches, which
+     * greatly reduces the area searched in static, maze-like regions. The heuristic is only used in the world and
+     * with the {@link #examiners()} it was computed for, see
+     * {@link net.citizensnpcs.api.astar.pathfinder.VectorGoal#setLandmarks}.
+     *
+     * @param landmarks
+     *            The heuristic, or <code>null</code> to use the straight line distance
+     */
+    public NavigatorParameters landmarks(LandmarkHeuristic landmarks) {
+        this.landmarks = landmarks;
+        return this;
+    }
+
     /**
      * @see #lookAtFunction(Function)
      */
@@ -405,6 +500,27 @@ public class NavigatorParameters implements Cloneable {
         return this;
     }
 
+    /**
+     * @see #pathSmoothing(boolean)
+     * @return Whether paths are smoothed
+     */
+    public boolean pathSmoothing() {
+        return pathSmoothing;
+    }
+
+    /**
+     * Sets whether paths found by the {@link PathfinderType#CITIZENS} pathfinder are smoothed using
+     * {@link net.citizensnpcs.api.astar.pathfinder.Path#smooth(net.citizensnpcs.api.astar.pathfinder.BlockSource)},
+     * so that the NPC walks straight towards fewer waypoints instead of stepping through every block.
+     *
+     * @param smoothing
+     *            Whether to smooth paths
+     */
+    public NavigatorParameters pathSmoothing(boolean smoothing) {
+        this.pathSmoothing = smoothing;
+        return this;
+    }
+
     /**
      * @return The pathfinding range of the navigator in blocks.
      * @see #range(float)
@@ -425,6 +541,27 @@ public class NavigatorParameters implements Cloneable {
         return this;
     }
 
+    /**
+     * @see #refinementIterations(int)
+     * @return The refinement budget of anytime searches
+     */
+    public int refinementIterations() {
+        return refinementIterations;
+    }
+
+    /**
+     * Sets the number of iterations (default 1000) an anytime search may spend improving its path after the first path
+     * has been found.
+     *
+     * @see #anytimeEpsilon(float)
+     * @param iterations
+     *            The new refinement budget
+     */
+    public NavigatorParameters refinementIterations(int iterations) {
+        this.refinementIterations = iterations;
+        return this;
+    }
+
     /**
      * Removes a previously added run callback.
      *
@@ -561,6 +698,8 @@ public class NavigatorParameters implements Cloneable {
      * Sets the update path rate, in ticks (default 20). Mainly used for target following at this point - the NPC will
      * recalculate its path to the target every {@code rate} ticks.
      *
+     * @see #incrementalReplanning(boolean)
+     *
      * @param rate
      *            The new rate in ticks to use
      */
@@ -3,5 +3,10 @@ package net.citizensnpcs.api.ai;
 public enum PathfinderType {
     CITIZENS,
     MINECRAFT,
-    PLUGIN;
+    PLUGIN,
+    /**
+     * Searches a {@link net.citizensnpcs.api.navmesh.NavMesh} for a corridor of regions and refines the block path
+     * inside it using {@link net.citizensnpcs.api.navmesh.NavMeshPathfinder}.
+     */
+    NAVMESH;
 }
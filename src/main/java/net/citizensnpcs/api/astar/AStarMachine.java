@@ -1,8 +1,11 @@
 package net.citizensnpcs.api.astar;
 
+import java.util.Map;
 import java.util.Objects;
 import java.util.function.Supplier;
 
+import com.google.common.collect.Maps;
+
 public class AStarMachine<N extends AStarNode, P extends Plan> {
     private Supplier<AStarStorage> storageSupplier;
 
@@ -18,6 +21,23 @@ public class AStarMachine<N extends AStarNode, P extends Plan> {
         neighbour.h = h;
     }
 
+    /**
+     * Creates an {@link AnytimeState} for use with {@link #runAnytime(AnytimeState, int)}.
+     *
+     * @param goal
+     *            The {@link AStarGoal} state
+     * @param start
+     *            The starting {@link AStarNode}
+     * @param epsilon
+     *            The initial heuristic weight, at least 1
+     * @param decrement
+     *            The amount to lower the weight by after each search round, until it reaches 1
+     * @return The created state
+     */
+    public AnytimeState getAnytimeStateFor(AStarGoal<N> goal, N start, float epsilon, float decrement) {
+        return new AnytimeState(goal, start, epsilon, decrement);
+    }
+
     private AStarStorage getInitialisedStorage(AStarGoal<N> goal, N start) {
         AStarStorage storage = storageSupplier.get();
         storage.open(start);
@@ -62,37 +82,224 @@ public class AStarMachine<N extends AStarNode, P extends Plan> {
      *            The maximum number of iterations
      * @return The generated {@link Plan}, or <code>null</code> if not found
      */
-    public P run(AStarState state, int maxIterations) {
-        return run(state.storage, state.goal, state.start, maxIterations);
-    }
-
     @SuppressWarnings("unchecked")
-    private P run(AStarStorage storage, AStarGoal<N> goal, N start, int maxIterations) {
-        Objects.requireNonNull(goal);
-        Objects.requireNonNull(start);
-        Objects.requireNonNull(storage);
+    public P run(AStarState state, int maxIterations) {
+        AStarStorage storage = Objects.requireNonNull(state.storage);
+        AStarGoal<N> goal = Objects.requireNonNull(state.goal);
+        Objects.requireNonNull(state.start);
         N node;
         int iterations = 0;
         while (true) {
             node = (N) storage.removeBestNode();
             if (node == null)
                 return null;
-            if (goal.isFinished(node))
+            if (goal.isFinished(node)) {
+                state.goalReached = true;
                 return (P) node.buildPlan();
+            }
+            if (node != state.start && node.h < state.closestH) {
+                state.closest = node;
+                state.closestH = node.h;
+            }
             storage.close(node);
+            state.expanded++;
             for (AStarNode neighbour : node.getNeighbours()) {
                 f(goal, node, (N) neighbour);
                 if (!storage.shouldExamine(neighbour))
                     continue;
 
-                storage.open(neighbour);
                 neighbour.parent = node;
+                storage.open(neighbour);
             }
             if (maxIterations >= 0 && iterations++ >= maxIterations)
                 return null;
         }
     }
 
+    /**
+     * Runs the machine using the given {@link AStarState}, optionally falling back to a partial plan. If the goal is
+     * not reached within the iteration limit or the frontier is exhausted and <code>partial</code> is true, the plan to
+     * the node closest to the goal by heuristic is returned instead of <code>null</code>, so that an agent can make
+     * progress towards a distant or unreachable goal. The state is retained either way and can be run again to continue
+     * the search from where it stopped.
+     *
+     * @see AStarState#isGoalReached()
+     * @param state
+     *            The state to use
+     * @param maxIterations
+     *            The maximum number of iterations
+     * @param partial
+     *            Whether to return a partial plan if the goal was not reached
+     * @return The generated {@link Plan}, or <code>null</code> if not found and <code>partial</code> is false
+     */
+    public P run(AStarState state, int maxIterations, boolean partial) {
+        P plan = run(state, maxIterations);
+        if (plan != null || !partial)
+            return plan;
+        return state.getPartialPlan();
+    }
+
+    /**
+     * Runs an anytime search by restarting weighted A* with a falling weight. Each round is a fresh weighted A* search
+     * from the start using <code>g + epsilon * h</code>, which finds a plan costing at most <code>epsilon</code> times
+     * the optimal cost (given an admissible heuristic) far sooner than plain A*. Once a round finds a plan, the weight
+     * is lowered and the search restarts from scratch, pruning every node that cannot beat the best plan found so far,
+     * until a round with a weight of 1 proves the best plan optimal or the search space is exhausted. No work is
+     * carried over between rounds apart from the best cost, so later rounds repeat some expansions of earlier ones.
+     * <p>
+     * The search can be continued over several calls until {@link AnytimeState#isComplete()} returns true. The best
+     * plan so far is always available from {@link AnytimeState#getBestPlan()}.
+     *
+     * @param state
+     *            The state to use
+     * @param maxIterations
+     *            The maximum number of iterations for this call
+     * @return The improved {@link Plan} if a better plan was found during this call, otherwise <code>null</code>
+     */
+    @SuppressWarnings("unchecked")
+    public P runAnytime(AnytimeState state, int maxIterations) {
+        P improved = null;
+        int iterations = 0;
+        while (!state.complete) {
+            if (state.storage == null) {
+                state.storage = getInitialisedStorage(state.goal, state.start);
+                state.offset = state.start.g;
+            }
+            N node = (N) state.storage.removeBestNode();
+            if (node == null) {
+                state.nextRound(state.bestPlan == null);
+                continue;
+            }
+            if (state.goal.isFinished(node)) {
+                float cost = node.g - state.offset;
+                if (cost < state.bestCost) {
+                    state.bestCost = cost;
+                    state.bestPlan = improved = (P) node.buildPlan();
+                }
+                state.nextRound(state.epsilon <= 1);
+                continue;
+            }
+            state.storage.close(node);
+            for (AStarNode neighbour : node.getNeighbours()) {
+                f(state.goal, node, (N) neighbour);
+                if (neighbour.g - state.offset + neighbour.h >= state.bestCost)
+                    continue;
+                neighbour.h *= state.epsilon;
+                if (!state.storage.shouldExamine(neighbour))
+                    continue;
+
+                neighbour.parent = node;
+                state.storage.open(neighbour);
+            }
+            if (maxIterations >= 0 && iterations++ >= maxIterations)
+                break;
+        }
+        return improved;
+    }
+
+    /**
+     * Runs a bidirectional search until a plan is found or cannot be generated.
+     *
+     * @see #runBidirectional(AStarGoal, AStarNode, AStarGoal, AStarNode, int, float)
+     */
+    public P runBidirectional(AStarGoal<N> goal, N start, AStarGoal<N> reverseGoal, N end) {
+        return runBidirectional(goal, start, reverseGoal, end, -1, 1);
+    }
+
+    /**
+     * Runs a bidirectional A* search, alternating between a forward search from <code>start</code> using
+     * {@link AStarNode#getNeighbours()} and a backward search from <code>end</code> using
+     * {@link AStarNode#getReverseNeighbours()}. Whenever one search reaches a node already reached by the other, the
+     * combined cost of the two half-chains is recorded as a candidate. The search stops once the cheapest candidate
+     * costs no more than <code>suboptimality</code> times the lowest estimate left on either frontier, so with
+     * consistent heuristics a <code>suboptimality</code> of 1 yields an optimal plan and larger values yield plans at
+     * most that many times the optimal cost.
+     * <p>
+     * The nodes must implement {@link BidirectionalNode}, whose {@link BidirectionalNode#buildPlan(AStarNode)} builds
+     * the plan on the forward half of the meeting point. If the forward search reaches a node accepted by
+     * <code>goal</code> first, the plan is built as in {@link #runFully(AStarGoal, AStarNode, int)}.
+     *
+     * @param goal
+     *            The {@link AStarGoal} of the forward search, estimating the cost to <code>end</code>
+     * @param start
+     *            The starting {@link AStarNode}
+     * @param reverseGoal
+     *            The {@link AStarGoal} of the backward search, estimating the cost to <code>start</code>
+     * @param end
+     *            The {@link AStarNode} to search backwards from
+     * @param maxIterations
+     *            The maximum number of iterations, counting both directions
+     * @param suboptimality
+     *            The factor by which the plan may exceed the optimal cost, at least 1
+     * @return The generated {@link Plan}, or <code>null</code> if not found. If the iteration limit is exceeded after
+     *         the two searches have met, the best plan found so far is returned
+     * @throws IllegalArgumentException
+     *             If the nodes do not implement {@link BidirectionalNode}
+     */
+    @SuppressWarnings("unchecked")
+    public P runBidirectional(AStarGoal<N> goal, N start, AStarGoal<N> reverseGoal, N end, int maxIterations,
+            float suboptimality) {
+        if (!(start instanceof BidirectionalNode))
+            throw new IllegalArgumentException(start.getClass() + " does not implement BidirectionalNode");
+        Objects.requireNonNull(reverseGoal);
+        Objects.requireNonNull(end);
+        if (goal.isFinished(start))
+            return (P) start.buildPlan();
+        AStarStorage forward = getInitialisedStorage(goal, start);
+        AStarStorage backward = getInitialisedStorage(reverseGoal, end);
+        // the initial costs are only an offset, remove them when joining the two halves
+        float forwardOffset = start.g, backwardOffset = end.g;
+        Map<AStarNode, AStarNode> forwardReached = Maps.newHashMapWithExpectedSize(512);
+        Map<AStarNode, AStarNode> backwardReached = Maps.newHashMapWithExpectedSize(512);
+        forwardReached.put(start, start);
+        backwardReached.put(end, end);
+        float best = Float.POSITIVE_INFINITY;
+        AStarNode meetForward = null, meetBackward = null;
+        boolean forwardTurn = true;
+        int iterations = 0;
+        while (true) {
+            AStarNode forwardBest = forward.getBestNode(), backwardBest = backward.getBestNode();
+            if (forwardBest == null || backwardBest == null)
+                break;
+            float bound = Math.max(forwardBest.getPathCost() - forwardOffset,
+                    backwardBest.getPathCost() - backwardOffset);
+            if (meetForward != null && best <= bound * Math.max(1, suboptimality))
+                break;
+            boolean isForward = forwardTurn;
+            forwardTurn = !forwardTurn;
+            AStarStorage storage = isForward ? forward : backward;
+            AStarGoal<N> direction = isForward ? goal : reverseGoal;
+            Map<AStarNode, AStarNode> reached = isForward ? forwardReached : backwardReached;
+            Map<AStarNode, AStarNode> opposite = isForward ? backwardReached : forwardReached;
+            N node = (N) storage.removeBestNode();
+            if (isForward && goal.isFinished(node))
+                return (P) node.buildPlan();
+            storage.close(node);
+            for (AStarNode neighbour : isForward ? node.getNeighbours() : node.getReverseNeighbours()) {
+                f(direction, node, (N) neighbour);
+                if (!storage.shouldExamine(neighbour))
+                    continue;
+
+                neighbour.parent = node;
+                storage.open(neighbour);
+                reached.put(neighbour, neighbour);
+                AStarNode other = opposite.get(neighbour);
+                if (other == null)
+                    continue;
+                float cost = isForward ? neighbour.g - forwardOffset + other.g - backwardOffset
+                        : other.g - forwardOffset + neighbour.g - backwardOffset;
+                if (cost < best) {
+                    best = cost;
+                    meetForward = isForward ? neighbour : other;
+                    meetBackward = isForward ? other : neighbour;
+                }
+            }
+            if (maxIterations >= 0 && iterations++ >= maxIterations)
+                break;
+        }
+        return meetForward == null ? null : (P) ((BidirectionalNode) meetForward).buildPlan(meetBackward);
+    }
+
     /**
      * Runs the machine until a plan is either found or cannot be generated.
      *
@@ -115,7 +322,7 @@ public class AStarMachine<N extends AStarNode, P extends Plan> {
      * @return The generated {@link Plan}, or <code>null</code> if it was not found
      */
     public P runFully(AStarGoal<N> goal, N start, int iterations) {
-        return run(getInitialisedStorage(goal, start), goal, start, iterations);
+        return run(getStateFor(goal, start), iterations);
     }
 
     /**
@@ -128,8 +335,71 @@ public class AStarMachine<N extends AStarNode, P extends Plan> {
         storageSupplier = newSupplier;
     }
 
+    /**
+     * The state of an anytime search run by {@link AStarMachine#runAnytime(AnytimeState, int)}.
+     */
+    public class AnytimeState {
+        private float bestCost = Float.POSITIVE_INFINITY;
+        private P bestPlan;
+        private boolean complete;
+        private final float decrement;
+        private float epsilon;
+        private final AStarGoal<N> goal;
+        private float offset;
+        private final N start;
+        private AStarStorage storage;
+
+        private AnytimeState(AStarGoal<N> goal, N start, float epsilon, float decrement) {
+            this.goal = Objects.requireNonNull(goal);
+            this.start = Objects.requireNonNull(start);
+            this.epsilon = Math.max(1, epsilon);
+            this.decrement = decrement;
+        }
+
+        /**
+         * @return The cost of the best plan found so far, or {@link Float#POSITIVE_INFINITY} if none has been found
+         */
+        public float getBestCost() {
+            return bestCost;
+        }
+
+        /**
+         * @return The best plan found so far, or <code>null</code>
+         */
+        public P getBestPlan() {
+            return bestPlan;
+        }
+
+        /**
+         * @return The heuristic weight of the current search round
+         */
+        public float getEpsilon() {
+            return epsilon;
+        }
+
+        /**
+         * @return Whether the search has finished, either because the best plan is optimal or because no plan exists
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+
+        private void nextRound(boolean finished) {
+            storage = null;
+            if (finished || epsilon <= 1 || decrement <= 0) {
+                complete = true;
+                return;
+            }
+            epsilon = Math.max(1, epsilon - decrement);
+        }
+    }
+
     public class AStarState {
+        private N closest;
+        private float closestH = Float.POSITIVE_INFINITY;
+        private int expanded;
         private final AStarGoal<N> goal;
+        private boolean goalReached;
         private final N start;
         private final AStarStorage storage;
 
@@ -144,9 +414,46 @@ public class AStarMachine<N extends AStarNode, P extends Plan> {
             return (N) storage.getBestNode();
         }
 
+        /**
+         * @return The expanded node with the lowest heuristic estimate to the goal so far, or the start node if no
+         *         other node has been expanded
+         */
+        public N getClosestNode() {
+            return closest == null ? start : closest;
+        }
+
+        /**
+         * @return The number of nodes expanded by every run of this state so far
+         */
+        public int getExpandedCount() {
+            return expanded;
+        }
+
+        /**
+         * Builds a plan to the {@link #getClosestNode() closest node} found so far. The state may still be run
+         * afterwards.
+         *
+         * @return The partial plan, or <code>null</code> if no node other than the start has been expanded
+         */
+        @SuppressWarnings("unchecked")
+        public P getPartialPlan() {
+            if (closest == null)
+                return null;
+            // the chain may have changed since a previous partial plan was built
+            closest.parents = null;
+            return (P) closest.buildPartialPlan();
+        }
+
         public boolean isEmpty() {
             return storage.getBestNode() == null;
         }
+
+        /**
+         * @return Whether a run of this state has reached the goal
+         */
+        public boolean isGoalReached() {
+            return goalReached;
+        }
     }
 
     /**
@@ -16,6 +16,16 @@ public abstract class AStarNode implements Comparable<AStarNode> {
 
     public abstract Plan buildPlan();
 
+    /**
+     * Builds a plan that ends at this node instead of at the goal, used when the goal could not be reached. Defaults
+     * to {@link #buildPlan()}, which is correct for plans that end at their last node.
+     *
+     * @see AStarMachine.AStarState#getPartialPlan()
+     */
+    protected Plan buildPartialPlan() {
+        return buildPlan();
+    }
+
     @Override
     public int compareTo(AStarNode other) {
         return Float.compare(g + h, other.g + other.h);
@@ -24,8 +34,24 @@ public abstract class AStarNode implements Comparable<AStarNode> {
     @Override
     public abstract boolean equals(Object other);
 
+    /**
+     * @return The cost from the start node to this node
+     */
+    public float getG() {
+        return g;
+    }
+
     public abstract Iterable<AStarNode> getNeighbours();
 
+    /**
+     * Returns the nodes from which this node can be reached, used by the backward half of a bidirectional search of a
+     * {@link BidirectionalNode}. Their parent chains lead towards the end node. Defaults to {@link #getNeighbours()},
+     * which is correct for undirected graphs.
+     */
+    public Iterable<AStarNode> getReverseNeighbours() {
+        return getNeighbours();
+    }
+
     protected AStarNode getParent() {
         return parent;
     }
@@ -50,4 +76,16 @@ public abstract class AStarNode implements Comparable<AStarNode> {
         Collections.reverse(parents);
         return (Iterable<T>) parents;
     }
+
+    /**
+     * Clears all search state so that a pooled node can be reused for a new position.
+     *
+     * @param newParent
+     *            The new parent node
+     */
+    protected void reset(AStarNode newParent) {
+        g = h = 0;
+        parent = newParent;
+        parents = null;
+    }
 }
@@ -0,0 +1,19 @@
+package net.citizensnpcs.api.astar;
+
+/**
+ * Implemented by {@link AStarNode}s that can be searched with
+ * {@link AStarMachine#runBidirectional(AStarGoal, AStarNode, AStarGoal, AStarNode, int, float)}, by joining the chains
+ * of the forward and backward searches into a single plan. The backward search expands nodes through
+ * {@link AStarNode#getReverseNeighbours()}.
+ */
+public interface BidirectionalNode {
+    /**
+     * Builds a plan for a bidirectional search that met at this node. The plan follows this node's chain from the
+     * start and continues along the chain of <code>reverse</code>, the equal node reached by the backward search,
+     * towards the end node.
+     *
+     * @param reverse
+     *            The node of the backward search at the same position
+     */
+    Plan buildPlan(AStarNode reverse);
+}
@@ -0,0 +1,346 @@
+package net.citizensnpcs.api.astar;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * An incremental A* planner based on Lifelong Planning A* (LPA*), for repeatedly planning towards a goal that moves a
+ * little between searches, such as an entity being followed. The search graph, with the cost from the root to every
+ * explored node, is kept between calls to {@link #plan(AStarGoal, AStarNode, int)}. When the goal moves only the
+ * frontier is re-prioritised, and when nodes are {@link #invalidate(Predicate) invalidated} because their surroundings
+ * changed only the costs that depend on them are repaired.
+ * <p>
+ * The graph is rooted at the start of the first search. While later starts lie on the planned path, such as an agent
+ * following it, the root is kept and the part of the path before the new start is dropped. Otherwise, or once the
+ * graph grows past {@link #setMaxNodes(int)}, the planner starts again from the new start.
+ * <p>
+ * Nodes are retained between searches, so they must not be drawn from a pool that recycles them, and their neighbours
+ * must be generated from current world state.
+ */
+public class IncrementalAStarMachine<N extends AStarNode, P extends Plan> {
+    private AStarGoal<N> goal;
+    private Vertex goalVertex;
+    private int maxNodes = 50000;
+    private PriorityQueue<QueueEntry> open = new PriorityQueue<>();
+    private Vertex root;
+    private final Map<AStarNode, Vertex> vertices = Maps.newHashMapWithExpectedSize(512);
+
+    private void computeShortestPath(int maxIterations) {
+        int iterations = 0;
+        while (true) {
+            QueueEntry top = peek();
+            if (top == null)
+                return;
+            if (goalVertex != null && goalVertex.g == goalVertex.rhs
+                    && compare(top.k1, top.k2, key1(goalVertex), goalVertex.g) >= 0)
+                return;
+            if (maxIterations >= 0 && iterations++ >= maxIterations)
+                return;
+            open.poll();
+            Vertex u = top.vertex;
+            u.queued = false;
+            if (u.g > u.rhs) {
+                u.g = u.rhs;
+                if (isGoalCandidate(u)) {
+                    goalVertex = u;
+                }
+                for (Edge edge : getSuccessors(u)) {
+                    updateVertex(edge.to);
+                }
+            } else {
+                u.g = Float.POSITIVE_INFINITY;
+                updateVertex(u);
+                for (Edge edge : getSuccessors(u)) {
+                    updateVertex(edge.to);
+                }
+            }
+        }
+    }
+
+    private void findGoalVertex() {
+        goalVertex = null;
+        for (Vertex vertex : vertices.values()) {
+            if (vertex.g == vertex.rhs && isGoalCandidate(vertex)) {
+                goalVertex = vertex;
+            }
+        }
+    }
+
+    private float getH(Vertex vertex) {
+        if (vertex.goal != goal) {
+            vertex.h = goal.h(vertex.node);
+            vertex.goal = goal;
+        }
+        return vertex.h;
+    }
+
+    /**
+     * @return The number of nodes currently held in the search graph
+     */
+    public int getNodeCount() {
+        return vertices.size();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Edge> getSuccessors(Vertex vertex) {
+        if (vertex.successors != null)
+            return vertex.successors;
+        List<Edge> successors = Lists.newArrayList();
+        for (AStarNode neighbour : vertex.node.getNeighbours()) {
+            Vertex to = getVertex((N) neighbour);
+            if (to == vertex) {
+                continue;
+            }
+            Edge edge = new Edge(vertex, to, goal.g(vertex.node, to.node));
+            successors.add(edge);
+            to.incoming.add(edge);
+        }
+        vertex.successors = successors;
+        return successors;
+    }
+
+    private Vertex getVertex(N node) {
+        Vertex vertex = vertices.get(node);
+        if (vertex == null) {
+            vertex = new Vertex(node);
+            vertices.put(node, vertex);
+        }
+        return vertex;
+    }
+
+    /**
+     * Marks the nodes matching the predicate as changed, for example because a block around them was modified. Their
+     * outgoing and incoming edges are generated again and the costs that depended on them are repaired by the next
+     * search. Only nodes already in the graph can match, so the predicate should also match the nodes next to a
+     * changed position, which may now lead to positions that were not passable before.
+     *
+     * @param changed
+     *            Matches the nodes whose passability or cost may have changed
+     */
+    public void invalidate(Predicate<N> changed) {
+        List<Vertex> stale = Lists.newArrayList();
+        for (Vertex vertex : vertices.values()) {
+            if (changed.test(vertex.node)) {
+                stale.add(vertex);
+            }
+        }
+        if (stale.isEmpty())
+            return;
+        List<Vertex> regenerate = Lists.newArrayList(stale);
+        for (Vertex vertex : stale) {
+            for (Edge edge : vertex.incoming) {
+                regenerate.add(edge.from);
+            }
+        }
+        List<Vertex> update = Lists.newArrayList();
+        for (Vertex vertex : regenerate) {
+            if (vertex.successors == null) {
+                continue;
+            }
+            for (Edge edge : vertex.successors) {
+                edge.to.incoming.remove(edge);
+                update.add(edge.to);
+            }
+            vertex.successors = null;
+            if (vertex.g != Float.POSITIVE_INFINITY) {
+                for (Edge edge : getSuccessors(vertex)) {
+                    update.add(edge.to);
+                }
+            }
+        }
+        for (Vertex vertex : update) {
+            updateVertex(vertex);
+        }
+        findGoalVertex();
+    }
+
+    private boolean isGoalCandidate(Vertex vertex) {
+        return vertex.g != Float.POSITIVE_INFINITY && goal.isFinished(vertex.node)
+                && (goalVertex == null || goalVertex.g != goalVertex.rhs || vertex.g < goalVertex.g);
+    }
+
+    private float key1(Vertex vertex) {
+        return Math.min(vertex.g, vertex.rhs) + getH(vertex);
+    }
+
+    private QueueEntry peek() {
+        QueueEntry top;
+        while ((top = open.peek()) != null && (!top.vertex.queued || top.stamp != top.vertex.stamp)) {
+            open.poll();
+        }
+        return top;
+    }
+
+    /**
+     * Plans a path from the start to the goal, reusing the search graph of previous calls where possible.
+     *
+     * @param newGoal
+     *            The goal, which may differ from the goal of the previous call
+     * @param start
+     *            The start node
+     * @param maxIterations
+     *            The maximum number of node expansions, or -1 for no limit. If exceeded the search is continued on the
+     *            next call
+     * @return The generated {@link Plan}, or <code>null</code> if not found
+     */
+    @SuppressWarnings("unchecked")
+    public P plan(AStarGoal<N> newGoal, N start, int maxIterations) {
+        Objects.requireNonNull(newGoal);
+        Objects.requireNonNull(start);
+        if (root == null || vertices.size() > maxNodes || !vertices.containsKey(start)) {
+            reset(newGoal, start);
+        } else if (goal != newGoal) {
+            goal = newGoal;
+            requeue();
+            findGoalVertex();
+        }
+        for (int attempt = 0; attempt < 2; attempt++) {
+            computeShortestPath(maxIterations);
+            if (goalVertex == null || goalVertex.g != goalVertex.rhs)
+                return null;
+            List<Vertex> chain = Lists.newArrayList();
+            int startIndex = -1;
+            for (Vertex vertex = goalVertex; vertex != null; vertex = vertex.parent) {
+                if (chain.size() > vertices.size())
+                    break;
+                chain.add(vertex);
+                if (vertex.node.equals(start)) {
+                    startIndex = chain.size() - 1;
+                    break;
+                }
+            }
+            if (startIndex == -1) {
+                // the start has left the planned path, so the graph no longer describes costs from the start
+                reset(newGoal, start);
+                continue;
+            }
+            AStarNode previous = null;
+            for (int i = startIndex; i >= 0; i--) {
+                AStarNode node = chain.get(i).node;
+                node.parent = previous;
+                node.parents = null;
+                previous = node;
+            }
+            return (P) goalVertex.node.buildPlan();
+        }
+        return null;
+    }
+
+    private void requeue() {
+        PriorityQueue<QueueEntry> requeued = new PriorityQueue<>(Math.max(16, open.size()));
+        for (QueueEntry entry : open) {
+            if (entry.vertex.queued && entry.stamp == entry.vertex.stamp) {
+                requeued.add(new QueueEntry(entry.vertex, key1(entry.vertex)));
+            }
+        }
+        open = requeued;
+    }
+
+    /**
+     * Discards the search graph, so that the next search starts from scratch.
+     */
+    public void reset() {
+        vertices.clear();
+        open.clear();
+        root = null;
+        goalVertex = null;
+        goal = null;
+    }
+
+    private void reset(AStarGoal<N> newGoal, N start) {
+        reset();
+        goal = newGoal;
+        root = getVertex(start);
+        root.rhs = 0;
+        start.parent = null;
+        updateVertex(root);
+    }
+
+    /**
+     * Sets the number of nodes the search graph may hold before it is discarded and rebuilt from the next start.
+     */
+    public IncrementalAStarMachine<N, P> setMaxNodes(int maxNodes) {
+        this.maxNodes = maxNodes;
+        return this;
+    }
+
+    private void updateVertex(Vertex vertex) {
+        if (vertex != root) {
+            vertex.rhs = Float.POSITIVE_INFINITY;
+            vertex.parent = null;
+            for (Edge edge : vertex.incoming) {
+                float cost = edge.from.g + edge.cost;
+                if (cost < vertex.rhs) {
+                    vertex.rhs = cost;
+                    vertex.parent = edge.from;
+                }
+            }
+        }
+        if (vertex.g != vertex.rhs) {
+            vertex.queued = true;
+            vertex.stamp++;
+            open.add(new QueueEntry(vertex, key1(vertex)));
+        } else {
+            vertex.queued = false;
+        }
+    }
+
+    private class Edge {
+        private final float cost;
+        private final Vertex from;
+        private final Vertex to;
+
+        private Edge(Vertex from, Vertex to, float cost) {
+            this.from = from;
+            this.to = to;
+            this.cost = cost;
+        }
+    }
+
+    private class QueueEntry implements Comparable<QueueEntry> {
+        private final float k1;
+        private final float k2;
+        private final int stamp;
+        private final Vertex vertex;
+
+        private QueueEntry(Vertex vertex, float k1) {
+            this.vertex = vertex;
+            this.k1 = k1;
+            this.k2 = Math.min(vertex.g, vertex.rhs);
+            this.stamp = vertex.stamp;
+        }
+
+        @Override
+        public int compareTo(QueueEntry other) {
+            return compare(k1, k2, other.k1, other.k2);
+        }
+    }
+
+    private class Vertex {
+        private float g = Float.POSITIVE_INFINITY;
+        private AStarGoal<N> goal;
+        private float h;
+        private final List<Edge> incoming = Lists.newArrayListWithCapacity(4);
+        private final N node;
+        private Vertex parent;
+        private boolean queued;
+        private float rhs = Float.POSITIVE_INFINITY;
+        private int stamp;
+        private List<Edge> successors;
+
+        private Vertex(N node) {
+            this.node = node;
+        }
+    }
+
+    private static int compare(float a1, float a2, float b1, float b2) {
+        int cmp = Float.compare(a1, b1);
+        return cmp != 0 ? cmp : Float.compare(a2, b2);
+    }
+}
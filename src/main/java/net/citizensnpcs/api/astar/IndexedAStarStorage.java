@@ -0,0 +1,72 @@
+package net.citizensnpcs.api.astar;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import com.google.common.collect.Maps;
+
+/**
+ * An {@link AStarStorage} that uses an {@link IndexedNodeHeap} for the frontier. Unlike {@link SimpleAStarStorage},
+ * finding a cheaper route to a node already on the frontier decreases its key in place so stale duplicates are never
+ * enqueued.
+ */
+public class IndexedAStarStorage implements AStarStorage {
+    private boolean[] closed = new boolean[INITIAL_CAPACITY];
+    private float[] g = new float[INITIAL_CAPACITY];
+    private final IndexedNodeHeap heap = new IndexedNodeHeap(INITIAL_CAPACITY);
+    private final Map<AStarNode, Integer> ids = Maps.newHashMapWithExpectedSize(INITIAL_CAPACITY);
+
+    @Override
+    public void close(AStarNode node) {
+        int id = getOrCreateId(node);
+        g[id] = node.g;
+        closed[id] = true;
+    }
+
+    @Override
+    public AStarNode getBestNode() {
+        return heap.peek();
+    }
+
+    private int getOrCreateId(AStarNode node) {
+        Integer id = ids.get(node);
+        if (id != null)
+            return id;
+        int next = ids.size();
+        if (next == g.length) {
+            closed = Arrays.copyOf(closed, next << 1);
+            g = Arrays.copyOf(g, next << 1);
+        }
+        g[next] = Float.POSITIVE_INFINITY;
+        ids.put(node, next);
+        return next;
+    }
+
+    @Override
+    public void open(AStarNode node) {
+        int id = getOrCreateId(node);
+        g[id] = node.g;
+        closed[id] = false;
+        heap.offer(id, node);
+    }
+
+    @Override
+    public AStarNode removeBestNode() {
+        return heap.poll();
+    }
+
+    @Override
+    public boolean shouldExamine(AStarNode neighbour) {
+        Integer id = ids.get(neighbour);
+        return id == null || g[id] > neighbour.g;
+    }
+
+    @Override
+    public String toString() {
+        return "IndexedAStarStorage [visited=" + ids.size() + ", frontier=" + heap.size() + "]";
+    }
+
+    public static final Supplier<AStarStorage> FACTORY = IndexedAStarStorage::new;
+    private static final int INITIAL_CAPACITY = 512;
+}
@@ -0,0 +1,160 @@
+package net.citizensnpcs.api.astar;
+
+import java.util.Arrays;
+
+/**
+ * A binary min-heap of {@link AStarNode}s ordered by <code>g + h</code> where every node is identified by a caller
+ * assigned integer id. Tracks the heap slot of each id so that a node already on the frontier can have its key
+ * decreased in place instead of being offered again.
+ */
+public class IndexedNodeHeap {
+    private int[] heap;
+    private float[] keys;
+    private AStarNode[] nodes;
+    private int size;
+    private int[] slots;
+
+    public IndexedNodeHeap() {
+        this(128);
+    }
+
+    public IndexedNodeHeap(int capacity) {
+        heap = new int[capacity];
+        keys = new float[capacity];
+        nodes = new AStarNode[capacity];
+        slots = new int[capacity];
+        Arrays.fill(slots, -1);
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            slots[heap[i]] = -1;
+            nodes[heap[i]] = null;
+        }
+        size = 0;
+    }
+
+    public boolean contains(int id) {
+        return id < slots.length && slots[id] != -1;
+    }
+
+    private void ensureIdCapacity(int id) {
+        if (id < slots.length)
+            return;
+        int capacity = Math.max(id + 1, slots.length << 1);
+        int old = slots.length;
+        keys = Arrays.copyOf(keys, capacity);
+        nodes = Arrays.copyOf(nodes, capacity);
+        slots = Arrays.copyOf(slots, capacity);
+        Arrays.fill(slots, old, capacity, -1);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Inserts the node under the given id or, if the id is already present, replaces it when the new node has a lower
+     * key.
+     *
+     * @return Whether the frontier changed
+     */
+    public boolean offer(int id, AStarNode node) {
+        float key = node.g + node.h;
+        ensureIdCapacity(id);
+        int slot = slots[id];
+        if (slot != -1) {
+            if (keys[id] <= key)
+                return false;
+            keys[id] = key;
+            nodes[id] = node;
+            siftUp(slot);
+            return true;
+        }
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size << 1);
+        }
+        keys[id] = key;
+        nodes[id] = node;
+        heap[size] = id;
+        slots[id] = size;
+        siftUp(size++);
+        return true;
+    }
+
+    public AStarNode peek() {
+        return size == 0 ? null : nodes[heap[0]];
+    }
+
+    /**
+     * @return The id at the top of the heap, or -1 if empty
+     */
+    public int peekId() {
+        return size == 0 ? -1 : heap[0];
+    }
+
+    public AStarNode poll() {
+        if (size == 0)
+            return null;
+        int id = heap[0];
+        AStarNode node = nodes[id];
+        remove(id);
+        return node;
+    }
+
+    public void remove(int id) {
+        if (!contains(id))
+            return;
+        int slot = slots[id];
+        slots[id] = -1;
+        nodes[id] = null;
+        if (--size == slot)
+            return;
+        int last = heap[size];
+        heap[slot] = last;
+        slots[last] = slot;
+        siftDown(slot);
+        siftUp(slots[last]);
+    }
+
+    private void siftDown(int slot) {
+        int id = heap[slot];
+        float key = keys[id];
+        int half = size >>> 1;
+        while (slot < half) {
+            int child = (slot << 1) + 1;
+            int right = child + 1;
+            if (right < size && keys[heap[right]] < keys[heap[child]]) {
+                child = right;
+            }
+            if (key <= keys[heap[child]]) {
+                break;
+            }
+            heap[slot] = heap[child];
+            slots[heap[slot]] = slot;
+            slot = child;
+        }
+        heap[slot] = id;
+        slots[id] = slot;
+    }
+
+    private void siftUp(int slot) {
+        int id = heap[slot];
+        float key = keys[id];
+        while (slot > 0) {
+            int parent = slot - 1 >>> 1;
+            if (keys[heap[parent]] <= key) {
+                break;
+            }
+            heap[slot] = heap[parent];
+            slots[heap[slot]] = slot;
+            slot = parent;
+        }
+        heap[slot] = id;
+        slots[id] = slot;
+    }
+
+    public int size() {
+        return size;
+    }
+}
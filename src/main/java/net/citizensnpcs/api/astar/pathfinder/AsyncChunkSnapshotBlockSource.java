@@ -9,10 +9,13 @@ import org.bukkit.ChunkSnapshot;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.World;
+import org.bukkit.block.data.BlockData;
 
 import net.citizensnpcs.api.util.BoundingBox;
 
 public class AsyncChunkSnapshotBlockSource extends CachingChunkBlockSource<ChunkSnapshot> {
+    private boolean detached;
+
     public AsyncChunkSnapshotBlockSource(Location location, float radius) {
         super(location, radius);
     }
@@ -21,13 +24,41 @@ public class AsyncChunkSnapshotBlockSource extends CachingChunkBlockSource<Chunk
         super(world, x, z, radius);
     }
 
+    /**
+     * Snapshots the chunks in the given block bounds up front. Must be called from a thread that can access those
+     * chunks.
+     *
+     * @param detached
+     *            Whether the source should never touch the world after construction. Only chunks that are already
+     *            loaded, and on Folia owned by the current region, are then snapshotted, and blocks outside them are
+     *            treated as solid, so the source is safe to use from any thread.
+     */
+    public AsyncChunkSnapshotBlockSource(World world, int minX, int minZ, int maxX, int maxZ, boolean detached) {
+        super(world, minX, minZ, maxX, maxZ, detached);
+        this.detached = detached;
+    }
+
+    @Override
+    protected boolean canAccessWorld() {
+        return !detached;
+    }
+
+    @Override
+    protected BlockData getBlockData(ChunkSnapshot chunk, int x, int y, int z) {
+        return chunk.getBlockData(x & 15, y, z & 15);
+    }
+
     @Override
     protected ChunkSnapshot getChunkObject(int x, int z) {
-        // TODO: pre-load multiple chunks on cache miss
-        Callable<ChunkSnapshot> call = () -> world.getChunkAt(x, z).getChunkSnapshot(false, false, false);
+        Callable<ChunkSnapshot> call = () -> {
+            ChunkSnapshot snapshot = takeSnapshot(x, z);
+            // measure the states now, while on the thread owning the chunk
+            CollisionBoxCache.warm(world, snapshot);
+            return snapshot;
+        };
         try {
             if (!SpigotUtil.isFoliaServer() && !Bukkit.isPrimaryThread()) {
-                return Bukkit.getScheduler().callSyncMethod(null, call).get();
+                return Bukkit.getScheduler().callSyncMethod(CitizensAPI.getPlugin(), call).get();
             }
             return call.call();
 
@@ -37,9 +68,26 @@ public class AsyncChunkSnapshotBlockSource extends CachingChunkBlockSource<Chunk
         return null;
     }
 
+    @Override
+    protected void getChunkObjects(long[] keys, int required, Object[] out) {
+        if (SpigotUtil.isFoliaServer() || Bukkit.isPrimaryThread()) {
+            super.getChunkObjects(keys, required, out);
+            return;
+        }
+        try {
+            Bukkit.getScheduler().callSyncMethod(CitizensAPI.getPlugin(), () -> {
+                super.getChunkObjects(keys, required, out);
+                return null;
+            }).get();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
     @Override
     protected BoundingBox getCollisionBox(ChunkSnapshot chunk, int x, int y, int z) {
-        return null; // TODO
+        return CollisionBoxCache.getCollisionBox(world, chunk.getBlockData(x, y, z), (chunk.getX() << 4) + x, y,
+                (chunk.getZ() << 4) + z, canAccessWorld());
     }
 
     @Override
@@ -47,6 +95,13 @@ public class AsyncChunkSnapshotBlockSource extends CachingChunkBlockSource<Chunk
         return Math.min(15, chunk.getBlockSkyLight(x, y, z) + chunk.getBlockEmittedLight(x, y, z));
     }
 
+    @Override
+    protected boolean isChunkAvailable(int x, int z) {
+        if (SpigotUtil.isFoliaServer() && !Bukkit.isOwnedByCurrentRegion(world, x, z))
+            return false;
+        return super.isChunkAvailable(x, z);
+    }
+
     @Override
     protected Material getType(ChunkSnapshot chunk, int x, int y, int z) {
         return chunk.getBlockType(x & 15, y, z & 15);
@@ -0,0 +1,179 @@
+package net.citizensnpcs.api.astar.pathfinder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+
+import net.citizensnpcs.api.CitizensAPI;
+import net.citizensnpcs.api.astar.AStarMachine;
+import net.citizensnpcs.api.util.SpigotUtil;
+import net.citizensnpcs.api.util.schedulers.SchedulerRunnable;
+
+/**
+ * Runs {@link AStarMachine} searches off the server thread. The loaded chunks covering the start, the destination and a
+ * margin around them are snapshotted in a single hop to the entity's scheduler, the search runs on a worker
+ * {@link Executor} against a detached {@link AsyncChunkSnapshotBlockSource}, and the resulting {@link Path} is handed
+ * back on the entity's scheduler.
+ * <p>
+ * Blocks outside the snapshot are treated as solid, so paths that detour more than 16 blocks beyond the rectangle
+ * spanned by the start and the destination, or that cross unloaded chunks, are not found. The snapshot is also limited
+ * to the blocks within <code>maxIterations</code> (at most 128) of the start, since the search cannot reach further.
+ * On Folia, only the chunks owned by the entity's region are snapshotted, so destinations in other regions are
+ * unreachable.
+ * <p>
+ * The supplied {@link BlockExaminer}s are called from the worker thread and must only query the {@link BlockSource}.
+ */
+public class AsyncPathfinder {
+    private final Executor executor;
+    private FlowFieldCache flowFieldCache;
+    private final AStarMachine<VectorNode, Path> machine;
+    private PathCache pathCache;
+
+    public AsyncPathfinder() {
+        this(ForkJoinPool.commonPool(), AStarMachine.createWithDefaultStorage());
+    }
+
+    public AsyncPathfinder(Executor executor, AStarMachine<VectorNode, Path> machine) {
+        this.executor = executor;
+        this.machine = machine;
+    }
+
+    /**
+     * Finds a path for the entity from its current location to the destination.
+     *
+     * @param entity
+     *            The entity to path for
+     * @param dest
+     *            The destination
+     * @param range
+     *            The distance from the destination at which the search is finished
+     * @param maxIterations
+     *            The maximum number of iterations, or -1 for no limit
+     * @param examiners
+     *            The examiners to use
+     * @return A future completed on the entity's scheduler with the path, or <code>null</code> if not found. The
+     *         future is cancelled if the entity is removed before the path is handed back.
+     */
+    public CompletableFuture<Path> findPath(Entity entity, Location dest, float range, int maxIterations,
+            BlockExaminer... examiners) {
+        CompletableFuture<Path> result = new CompletableFuture<>();
+        Runnable snapshot = () -> {
+            Location start = entity.getLocation();
+            World world = start.getWorld();
+            if (world != dest.getWorld()) {
+                result.complete(null);
+                return;
+            }
+            VectorGoal goal;
+            try {
+                goal = new VectorGoal(dest, range);
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+                return;
+            }
+            PathCache cache = pathCache;
+            int fingerprint = PathCache.fingerprint(examiners);
+            if (flowFieldCache != null) {
+                Path field = flowFieldCache.getPath(start, goal.getGoalVector(), fingerprint);
+                if (field != null) {
+                    result.complete(field);
+                    return;
+                }
+            }
+            if (cache != null) {
+                Path cached = cache.get(world, start.toVector(), goal.getGoalVector(), range, fingerprint);
+                if (cached != null) {
+                    result.complete(cached);
+                    return;
+                }
+            }
+            AsyncChunkSnapshotBlockSource source;
+            try {
+                int margin = SNAPSHOT_MARGIN + (int) Math.ceil(range);
+                int reach = maxIterations < 0 ? MAX_SNAPSHOT_REACH : Math.min(maxIterations, MAX_SNAPSHOT_REACH);
+                int x = start.getBlockX(), z = start.getBlockZ();
+                source = new AsyncChunkSnapshotBlockSource(world,
+                        Math.max(Math.min(x, dest.getBlockX()) - margin, x - reach),
+                        Math.max(Math.min(z, dest.getBlockZ()) - margin, z - reach),
+                        Math.min(Math.max(x, dest.getBlockX()) + margin, x + reach),
+                        Math.min(Math.max(z, dest.getBlockZ()) + margin, z + reach), true);
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+                return;
+            }
+            CompletableFuture.supplyAsync(() -> {
+                try (VectorNodeArena arena = new VectorNodeArena()) {
+                    return machine.runFully(goal, new VectorNode(goal, start, source, arena, examiners),
+                            maxIterations);
+                }
+            }, executor).whenComplete((path, err) -> runOnEntity(entity, result, () -> {
+                if (err != null) {
+                    result.completeExceptionally(err);
+                } else {
+                    if (cache != null && path != null) {
+                        cache.put(world, start.toVector(), goal.getGoalVector(), range, fingerprint, path, source);
+                    }
+                    result.complete(path);
+                }
+            }));
+        };
+        if (!SpigotUtil.isFoliaServer() && Bukkit.isPrimaryThread()) {
+            if (entity.isValid()) {
+                snapshot.run();
+            } else {
+                result.cancel(false);
+            }
+        } else {
+            runOnEntity(entity, result, snapshot);
+        }
+        return result;
+    }
+
+    /**
+     * Sets the {@link FlowFieldCache} whose fields are followed instead of searching when they contain the start, or
+     * <code>null</code> to ignore flow fields. Fields are not computed by this pathfinder.
+     */
+    public AsyncPathfinder setFlowFieldCache(FlowFieldCache cache) {
+        this.flowFieldCache = cache;
+        return this;
+    }
+
+    /**
+     * Sets the {@link PathCache} to look up routes in before searching and to store found paths in, or
+     * <code>null</code> to always search.
+     */
+    public AsyncPathfinder setPathCache(PathCache cache) {
+        this.pathCache = cache;
+        return this;
+    }
+
+    /**
+     * Runs the task on the entity's scheduler, cancelling the result instead if the entity has been removed by then,
+     * since a retired entity's scheduler never runs the task.
+     */
+    private static void runOnEntity(Entity entity, CompletableFuture<Path> result, Runnable task) {
+        SchedulerRunnable runnable = new SchedulerRunnable() {
+            @Override
+            public void run() {
+                if (entity.isValid()) {
+                    task.run();
+                } else {
+                    result.cancel(false);
+                }
+            }
+        };
+        try {
+            runnable.runEntityTask(CitizensAPI.getPlugin(), entity, () -> result.cancel(false));
+        } catch (Throwable t) {
+            result.completeExceptionally(t);
+        }
+    }
+
+    private static final int MAX_SNAPSHOT_REACH = 128;
+    private static final int SNAPSHOT_MARGIN = 16;
+}
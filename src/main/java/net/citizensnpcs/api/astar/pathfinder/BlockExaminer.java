@@ -5,6 +5,16 @@ public interface BlockExaminer {
 
     PassableState isPassable(BlockSource source, PathPoint point);
 
+    /**
+     * Returns whether the results of this examiner at the given point may depend on the point's parent, such as a
+     * check on the height of the step from the parent. Results are only reused for the same block within a search if
+     * every examiner returns false, so examiners that never read {@link PathPoint#getParentPoint()} should override
+     * this to allow it.
+     */
+    default boolean isParentDependent(BlockSource source, PathPoint point) {
+        return true;
+    }
+
     public enum PassableState {
         IGNORE,
         PASSABLE,
@@ -3,9 +3,11 @@ package net.citizensnpcs.api.astar.pathfinder;
 import org.bukkit.Material;
 import org.bukkit.World;
 import org.bukkit.block.Block;
+import org.bukkit.block.data.BlockData;
 import org.bukkit.util.Vector;
 
 import net.citizensnpcs.api.util.BoundingBox;
+import net.citizensnpcs.api.util.SpigotUtil;
 
 public abstract class BlockSource {
     public Block getBlockAt(int x, int y, int z) {
@@ -16,6 +18,20 @@ public abstract class BlockSource {
         return getWorld().getBlockAt(position.getBlockX(), position.getBlockY(), position.getBlockZ());
     }
 
+    /**
+     * Returns the {@link BlockData} at the given position. Unlike {@link #getBlockAt(int, int, int)}, implementations
+     * backed by snapshots can answer this without touching the world.
+     *
+     * @return The block data, or null on versions without {@link BlockData}
+     */
+    public BlockData getBlockDataAt(int x, int y, int z) {
+        return SpigotUtil.isUsing1_13API() ? getWorld().getBlockAt(x, y, z).getBlockData() : null;
+    }
+
+    public BlockData getBlockDataAt(Vector pos) {
+        return getBlockDataAt(pos.getBlockX(), pos.getBlockY(), pos.getBlockZ());
+    }
+
     public abstract BoundingBox getCollisionBox(int x, int y, int z);
 
     public BoundingBox getCollisionBox(Vector pos) {
@@ -29,4 +45,13 @@ public abstract class BlockSource {
     }
 
     public abstract World getWorld();
+
+    /**
+     * Returns whether the blocks this source reads from the given chunk still match the world. Sources backed by
+     * snapshots return false once the chunk has changed since it was snapshotted, and caches shared between searches
+     * should not keep results built from such chunks. Defaults to true for sources reading the live world.
+     */
+    public boolean isCurrent(int chunkX, int chunkZ) {
+        return true;
+    }
 }
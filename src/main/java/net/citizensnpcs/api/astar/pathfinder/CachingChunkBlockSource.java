@@ -1,22 +1,27 @@
 package net.citizensnpcs.api.astar.pathfinder;
 
-import java.util.Map;
+import java.util.Arrays;
 
+import org.bukkit.ChunkSnapshot;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.World;
 import org.bukkit.block.Block;
-
-import com.google.common.collect.Maps;
+import org.bukkit.block.data.BlockData;
 
 import net.citizensnpcs.api.util.BoundingBox;
+import net.citizensnpcs.api.util.LongIntHashMap;
 import net.citizensnpcs.api.util.SpigotUtil;
 
 public abstract class CachingChunkBlockSource<T> extends BlockSource {
-    private final Map<ChunkCoord, ChunkCache> chunkCache = Maps.newHashMap();
+    private final LongIntHashMap chunkIndex = new LongIntHashMap(16, -1);
     private final Object[][] chunks;
     private final int chunkX;
     private final int chunkZ;
+    private byte[] extraHits = new byte[16];
+    private Object[] extraChunks = new Object[16];
+    private int extraCount;
+    private final LongIntHashMap versions = new LongIntHashMap(16, -1);
     protected final World world;
 
     protected CachingChunkBlockSource(Location location, float radius) {
@@ -28,21 +33,74 @@ public abstract class CachingChunkBlockSource<T> extends BlockSource {
     }
 
     protected CachingChunkBlockSource(World world, int minX, int minZ, int maxX, int maxZ) {
+        this(world, minX, minZ, maxX, maxZ, false);
+    }
+
+    /**
+     * @param availableOnly
+     *            Whether to only fetch the chunks in the bounds that are {@link #isChunkAvailable(int, int) available},
+     *            leaving the others empty instead of loading them
+     */
+    protected CachingChunkBlockSource(World world, int minX, int minZ, int maxX, int maxZ, boolean availableOnly) {
         this.world = world;
         this.chunkX = minX >> 4;
         this.chunkZ = minZ >> 4;
         int maxChunkX = maxX >> 4, maxChunkZ = maxZ >> 4;
 
         chunks = new Object[maxChunkX - chunkX + 1][maxChunkZ - chunkZ + 1];
-        for (int x = chunkX; x < maxChunkX; x++) {
-            for (int z = chunkZ; z < maxChunkZ; z++) {
-                chunks[x - chunkX][z - chunkZ] = getChunkObject(x, z);
+        for (int x = chunkX; x <= maxChunkX; x++) {
+            for (int z = chunkZ; z <= maxChunkZ; z++) {
+                if (!availableOnly || isChunkAvailable(x, z)) {
+                    chunks[x - chunkX][z - chunkZ] = getChunkObject(x, z);
+                }
             }
         }
     }
 
+    /**
+     * Returns the {@link BlockData} stored in the cached chunk object. Defaults to reading the live world.
+     */
+    protected BlockData getBlockData(T chunk, int x, int y, int z) {
+        return world.getBlockAt(x, y, z).getBlockData();
+    }
+
+    @Override
+    public BlockData getBlockDataAt(int x, int y, int z) {
+        if (!SpigotUtil.isUsing1_13API())
+            return null;
+        if (!SpigotUtil.checkYSafe(y, world))
+            return Material.AIR.createBlockData();
+        T chunk = getSpecific(x, z);
+        if (chunk != null)
+            return getBlockData(chunk, x, y, z);
+        if (!canAccessWorld())
+            return Material.BARRIER.createBlockData();
+        return world.getBlockAt(x, y, z).getBlockData();
+    }
+
     protected abstract T getChunkObject(int x, int z);
 
+    /**
+     * Fetches several chunk objects at once, so that implementations which must hop to another thread can do so once
+     * per batch. The first <code>required</code> chunks must be fetched, the remaining ones are prefetch candidates and
+     * should be left <code>null</code> if fetching them would load the chunk.
+     *
+     * @param keys
+     *            The chunk keys, see {@link #getChunkKey(int, int)}
+     * @param required
+     *            The number of leading keys that must be fetched
+     * @param out
+     *            The array to store the fetched chunk objects in, in key order
+     */
+    protected void getChunkObjects(long[] keys, int required, Object[] out) {
+        for (int i = 0; i < keys.length; i++) {
+            int x = (int) (keys[i] >> 32), z = (int) keys[i];
+            if (i < required || isChunkAvailable(x, z)) {
+                out[i] = getChunkObject(x, z);
+            }
+        }
+    }
+
     @Override
     public BoundingBox getCollisionBox(int x, int y, int z) {
         if (!SpigotUtil.checkYSafe(y, world))
@@ -50,11 +108,21 @@ public abstract class CachingChunkBlockSource<T> extends BlockSource {
         T chunk = getSpecific(x, z);
         if (chunk != null)
             return getCollisionBox(chunk, x & 15, y, z & 15);
+        if (!canAccessWorld())
+            return BoundingBox.ONE;
         if (!SUPPORT_BOUNDING_BOX)
             return null;
         return BoundingBox.convert(world.getBlockAt(x, y, z).getBoundingBox());
     }
 
+    /**
+     * Returns whether blocks outside of the cached chunks may be read from the live world. Sources used off the main
+     * thread should return false, in which case uncached blocks are reported as solid barriers.
+     */
+    protected boolean canAccessWorld() {
+        return true;
+    }
+
     protected abstract BoundingBox getCollisionBox(T chunk, int x, int y, int z);
 
     protected abstract int getLightLevel(T chunk, int x, int y, int z);
@@ -66,6 +134,8 @@ public abstract class CachingChunkBlockSource<T> extends BlockSource {
         T chunk = getSpecific(x, z);
         if (chunk != null)
             return getType(chunk, x, y, z);
+        if (!canAccessWorld())
+            return Material.BARRIER;
         return SUPPORT_GET_TYPE ? world.getType(x, y, z) : world.getBlockAt(x, y, z).getType();
     }
 
@@ -78,54 +148,120 @@ public abstract class CachingChunkBlockSource<T> extends BlockSource {
             if (zz >= 0 && zz < inner.length)
                 return (T) inner[zz];
         }
-        ChunkCoord key = new ChunkCoord(x >> 4, z >> 4);
-        ChunkCache prev = chunkCache.get(key);
-        if (prev == null) {
-            chunkCache.put(key, prev = new ChunkCache());
-        } else if (prev.obj != null)
-            return prev.obj;
-        else if (++prev.hitCount >= 2)
-            return prev.obj = getChunkObject(x >> 4, z >> 4);
-        return null;
+        if (!canAccessWorld())
+            return null;
+        long key = getChunkKey(x >> 4, z >> 4);
+        int idx = chunkIndex.get(key);
+        if (idx == -1) {
+            store(key, null, 1);
+            return null;
+        }
+        if (extraChunks[idx] != null)
+            return (T) extraChunks[idx];
+        // saturate rather than overflow for chunks that keep being read but cannot be fetched
+        if (extraHits[idx] < 2 && ++extraHits[idx] < 2)
+            return null;
+        return (T) fetch(x >> 4, z >> 4, key);
     }
 
-    protected abstract Material getType(T chunk, int x, int y, int z);
-
     @Override
-    public World getWorld() {
-        return world;
+    public boolean isCurrent(int x, int z) {
+        int version;
+        synchronized (versions) {
+            version = versions.get(getChunkKey(x, z));
+        }
+        return version == -1 || ChunkSnapshotCache.getSharedVersion(world, x, z) == version;
     }
 
-    private class ChunkCache {
-        int hitCount;
-        T obj;
+    private boolean isCached(int x, int z) {
+        int xx = x - chunkX;
+        int zz = z - chunkZ;
+        if (xx >= 0 && xx < chunks.length && zz >= 0 && zz < chunks[xx].length)
+            return true;
+        int idx = chunkIndex.get(getChunkKey(x, z));
+        return idx != -1 && extraChunks[idx] != null;
     }
 
-    private static class ChunkCoord {
-        int x, z;
+    /**
+     * Returns whether the given chunk can be fetched without loading it. Defaults to whether the chunk is loaded.
+     */
+    protected boolean isChunkAvailable(int x, int z) {
+        return world.isChunkLoaded(x, z);
+    }
+
+    /**
+     * @return Whether the real blocks of the given chunk can be read, rather than being reported as barriers
+     */
+    boolean isChunkReadable(int x, int z) {
+        return canAccessWorld() || isCached(x, z);
+    }
 
-        public ChunkCoord(int xx, int zz) {
-            this.x = xx;
-            this.z = zz;
+    private Object fetch(int x, int z, long key) {
+        long[] keys = new long[(2 * PREFETCH_RADIUS + 1) * (2 * PREFETCH_RADIUS + 1)];
+        keys[0] = key;
+        int count = 1;
+        for (int dx = -PREFETCH_RADIUS; dx <= PREFETCH_RADIUS; dx++) {
+            for (int dz = -PREFETCH_RADIUS; dz <= PREFETCH_RADIUS; dz++) {
+                if ((dx != 0 || dz != 0) && !isCached(x + dx, z + dz)) {
+                    keys[count++] = getChunkKey(x + dx, z + dz);
+                }
+            }
         }
+        Object[] fetched = fetchAll(count == keys.length ? keys : Arrays.copyOf(keys, count), 1);
+        return fetched[0];
+    }
 
-        @Override
-        public boolean equals(Object obj) {
-            if (this == obj)
-                return true;
-            if (obj == null)
-                return false;
-            ChunkCoord other = (ChunkCoord) obj;
-            return x == other.x && z == other.z;
+    private Object[] fetchAll(long[] keys, int required) {
+        Object[] out = new Object[keys.length];
+        getChunkObjects(keys, required, out);
+        for (int i = 0; i < keys.length; i++) {
+            int idx = chunkIndex.get(keys[i]);
+            if (idx == -1) {
+                store(keys[i], out[i], 0);
+            } else if (extraChunks[idx] == null) {
+                extraChunks[idx] = out[i];
+            }
         }
+        return out;
+    }
 
-        @Override
-        public int hashCode() {
-            int result = 31 * x;
-            return 31 * result + z;
+    private void store(long key, Object obj, int hits) {
+        if (extraCount == extraChunks.length) {
+            extraChunks = Arrays.copyOf(extraChunks, extraCount * 2);
+            extraHits = Arrays.copyOf(extraHits, extraCount * 2);
         }
+        extraChunks[extraCount] = obj;
+        extraHits[extraCount] = (byte) hits;
+        chunkIndex.put(key, extraCount++);
+    }
+
+    protected abstract Material getType(T chunk, int x, int y, int z);
+
+    /**
+     * Takes a snapshot of the given chunk through {@link ChunkSnapshotCache#takeSnapshot(World, int, int)}, recording
+     * the chunk's version beforehand so that {@link #isCurrent(int, int)} reports the chunk once it changes.
+     */
+    protected ChunkSnapshot takeSnapshot(int x, int z) {
+        int version = ChunkSnapshotCache.getSharedVersion(world, x, z);
+        ChunkSnapshot snapshot = ChunkSnapshotCache.takeSnapshot(world, x, z);
+        if (version != -1) {
+            synchronized (versions) {
+                versions.put(getChunkKey(x, z), version);
+            }
+        }
+        return snapshot;
+    }
+
+    @Override
+    public World getWorld() {
+        return world;
+    }
+
+    protected static long getChunkKey(int x, int z) {
+        return (long) x << 32 | z & 0xFFFFFFFFL;
     }
 
+    private static final int PREFETCH_RADIUS = 1;
     private static boolean SUPPORT_BOUNDING_BOX = true;
     private static boolean SUPPORT_GET_TYPE = true;
     static {
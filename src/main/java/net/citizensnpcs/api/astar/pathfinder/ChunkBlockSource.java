@@ -5,6 +5,7 @@ import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.World;
 import org.bukkit.block.Block;
+import org.bukkit.block.data.BlockData;
 
 import net.citizensnpcs.api.util.BoundingBox;
 
@@ -17,6 +18,11 @@ public class ChunkBlockSource extends CachingChunkBlockSource<Chunk> {
         super(world, x, z, radius);
     }
 
+    @Override
+    protected BlockData getBlockData(Chunk chunk, int x, int y, int z) {
+        return chunk.getBlock(x & 15, y, z & 15).getBlockData();
+    }
+
     @Override
     protected Chunk getChunkObject(int x, int z) {
         return world.getChunkAt(x, z);
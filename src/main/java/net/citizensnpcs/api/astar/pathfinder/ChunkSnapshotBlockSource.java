@@ -4,6 +4,7 @@ import org.bukkit.ChunkSnapshot;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.World;
+import org.bukkit.block.data.BlockData;
 
 import net.citizensnpcs.api.util.BoundingBox;
 
@@ -16,14 +17,20 @@ public class ChunkSnapshotBlockSource extends CachingChunkBlockSource<ChunkSnaps
         super(world, x, z, radius);
     }
 
+    @Override
+    protected BlockData getBlockData(ChunkSnapshot chunk, int x, int y, int z) {
+        return chunk.getBlockData(x & 15, y, z & 15);
+    }
+
     @Override
     protected ChunkSnapshot getChunkObject(int x, int z) {
-        return world.getChunkAt(x, z).getChunkSnapshot(false, false, false);
+        return takeSnapshot(x, z);
     }
 
     @Override
     protected BoundingBox getCollisionBox(ChunkSnapshot chunk, int x, int y, int z) {
-        return null; // TODO
+        return CollisionBoxCache.getCollisionBox(world, chunk.getBlockData(x, y, z), (chunk.getX() << 4) + x, y,
+                (chunk.getZ() << 4) + z, canAccessWorld());
     }
 
     @Override
@@ -0,0 +1,462 @@
+package net.citizensnpcs.api.astar.pathfinder;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockState;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockBurnEvent;
+import org.bukkit.event.block.BlockEvent;
+import org.bukkit.event.block.BlockExplodeEvent;
+import org.bukkit.event.block.BlockFadeEvent;
+import org.bukkit.event.block.BlockFormEvent;
+import org.bukkit.event.block.BlockFromToEvent;
+import org.bukkit.event.block.BlockGrowEvent;
+import org.bukkit.event.block.BlockPhysicsEvent;
+import org.bukkit.event.block.BlockPistonExtendEvent;
+import org.bukkit.event.block.BlockPistonRetractEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.block.BlockSpreadEvent;
+import org.bukkit.event.block.LeavesDecayEvent;
+import org.bukkit.event.entity.EntityChangeBlockEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.StructureGrowEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+import org.bukkit.plugin.Plugin;
+
+import net.citizensnpcs.api.CitizensAPI;
+import net.citizensnpcs.api.util.LongIntHashMap;
+
+/**
+ * Keeps recently used {@link ChunkSnapshot}s so that pathfinding searches close together in time and space share one
+ * snapshot per chunk instead of copying it again. Entries are evicted least-recently-used once the estimated memory
+ * use exceeds the configured cap, once they are older than the maximum age, or as soon as the chunk changes.
+ * <p>
+ * Every chunk has a version that changes on block change and chunk unload events. A snapshot is only cached if the
+ * chunk's version did not change while it was being taken, and only served while the version still matches. Versions
+ * are drawn from one increasing clock, so that the versions of rarely changed chunks can be forgotten by raising the
+ * version of every untracked chunk instead of growing without bound.
+ * Block physics updates are not tracked by default as listening to them forces the server to fire them for every
+ * update; see {@link #trackPhysics(Plugin)}.
+ */
+public class ChunkSnapshotCache implements Listener {
+    private final AtomicInteger clock = new AtomicInteger();
+    private final List<ChunkChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private long maxAgeMillis = 5000;
+    private long maxMemoryBytes = 64L * 1024 * 1024;
+    private boolean trackingPhysics;
+    private final Map<UUID, WorldCache> worlds = new ConcurrentHashMap<>();
+
+    /**
+     * Adds a listener notified whenever a chunk is invalidated, so that other per-chunk caches can share this cache's
+     * event tracking.
+     */
+    public void addListener(ChunkChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Returns a snapshot of the given chunk, reusing a cached snapshot if the chunk has not changed since it was taken.
+     * Must be called from a thread that can access the chunk if it is not cached.
+     */
+    public ChunkSnapshot getSnapshot(World world, int chunkX, int chunkZ) {
+        WorldCache cache = getWorldCache(world);
+        long key = getKey(chunkX, chunkZ);
+        int version;
+        synchronized (cache) {
+            ChunkSnapshot cached = cache.get(key, System.currentTimeMillis() - maxAgeMillis);
+            if (cached != null)
+                return cached;
+            version = cache.getVersion(key);
+        }
+        ChunkSnapshot snapshot = world.getChunkAt(chunkX, chunkZ).getChunkSnapshot(false, false, false);
+        synchronized (cache) {
+            if (cache.getVersion(key) != version)
+                return snapshot;
+            cache.put(key, new CacheEntry(key, snapshot, version, estimateSize(world)));
+        }
+        // outside of the world's lock, as eviction locks every world in turn
+        evict();
+        return snapshot;
+    }
+
+    /**
+     * @return The number of chunk versions tracked in the given world
+     */
+    public int getTrackedChunkCount(World world) {
+        WorldCache cache = worlds.get(world.getUID());
+        if (cache == null)
+            return 0;
+        synchronized (cache) {
+            return cache.versions.size();
+        }
+    }
+
+    /**
+     * Returns the current version of the chunk, which changes whenever a tracked event modifies the chunk. Versions are
+     * never negative and are not reused before the version clock wraps around.
+     */
+    public int getVersion(World world, int chunkX, int chunkZ) {
+        WorldCache cache = getWorldCache(world);
+        synchronized (cache) {
+            return cache.getVersion(getKey(chunkX, chunkZ));
+        }
+    }
+
+    /**
+     * Drops any cached snapshot of the given chunk and bumps its version. Listeners are notified after the version has
+     * moved, so that a listener storing results after checking {@link BlockSource#isCurrent(int, int)} either sees the
+     * new version or is notified after storing.
+     */
+    public void invalidate(World world, int chunkX, int chunkZ) {
+        WorldCache cache = worlds.get(world.getUID());
+        if (cache != null) {
+            synchronized (cache) {
+                cache.invalidate(getKey(chunkX, chunkZ), nextVersion());
+            }
+        }
+        for (ChunkChangeListener listener : listeners) {
+            listener.onChunkChanged(world, chunkX, chunkZ);
+        }
+    }
+
+    private void invalidate(Block block) {
+        invalidate(block.getWorld(), block.getX() >> 4, block.getZ() >> 4);
+    }
+
+    private void invalidate(Iterable<Block> blocks) {
+        for (Block block : blocks) {
+            invalidate(block);
+        }
+    }
+
+    /**
+     * Drops every cached snapshot.
+     */
+    public void invalidateAll() {
+        for (WorldCache cache : worlds.values()) {
+            synchronized (cache) {
+                for (Long key : cache.entries.keySet()) {
+                    cache.versions.put(key, nextVersion());
+                }
+                cache.clear();
+            }
+        }
+    }
+
+    private WorldCache getWorldCache(World world) {
+        return worlds.computeIfAbsent(world.getUID(), uid -> new WorldCache(nextVersion()));
+    }
+
+    private void evict() {
+        long total = 0;
+        for (WorldCache cache : worlds.values()) {
+            total += cache.memory;
+        }
+        if (total <= maxMemoryBytes)
+            return;
+        for (WorldCache cache : worlds.values()) {
+            synchronized (cache) {
+                Iterator<CacheEntry> itr = cache.entries.values().iterator();
+                while (total > maxMemoryBytes && itr.hasNext()) {
+                    CacheEntry entry = itr.next();
+                    total -= entry.size;
+                    cache.memory -= entry.size;
+                    itr.remove();
+                }
+            }
+            if (total <= maxMemoryBytes)
+                return;
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBreak(BlockBreakEvent event) {
+        invalidate(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBurn(BlockBurnEvent event) {
+        invalidate(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockExplode(BlockExplodeEvent event) {
+        invalidate(event.getBlock());
+        invalidate(event.blockList());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockFade(BlockFadeEvent event) {
+        invalidate(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockForm(BlockFormEvent event) {
+        invalidate(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockFromTo(BlockFromToEvent event) {
+        invalidate(event.getToBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockGrow(BlockGrowEvent event) {
+        invalidate(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPistonExtend(BlockPistonExtendEvent event) {
+        invalidate(event.getBlock());
+        for (Block block : event.getBlocks()) {
+            invalidate(block);
+            invalidate(block.getRelative(event.getDirection()));
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPistonRetract(BlockPistonRetractEvent event) {
+        invalidate(event.getBlock());
+        for (Block block : event.getBlocks()) {
+            invalidate(block);
+            invalidate(block.getRelative(event.getDirection()));
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPlace(BlockPlaceEvent event) {
+        invalidate(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockSpread(BlockSpreadEvent event) {
+        invalidate(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        invalidate(event.getWorld(), event.getChunk().getX(), event.getChunk().getZ());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityChangeBlock(EntityChangeBlockEvent event) {
+        invalidate(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityExplode(EntityExplodeEvent event) {
+        invalidate(event.blockList());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onLeavesDecay(LeavesDecayEvent event) {
+        invalidate(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onStructureGrow(StructureGrowEvent event) {
+        for (BlockState state : event.getBlocks()) {
+            invalidate(event.getWorld(), state.getX() >> 4, state.getZ() >> 4);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        worlds.remove(event.getWorld().getUID());
+        for (ChunkChangeListener listener : listeners) {
+            listener.onWorldUnloaded(event.getWorld());
+        }
+    }
+
+    private int nextVersion() {
+        return clock.updateAndGet(version -> version == Integer.MAX_VALUE ? 0 : version + 1);
+    }
+
+    public void removeListener(ChunkChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Sets the maximum age of a cached snapshot, as a safeguard against changes made without firing events.
+     */
+    public ChunkSnapshotCache setMaxAge(long millis) {
+        this.maxAgeMillis = millis;
+        return this;
+    }
+
+    /**
+     * Sets the approximate memory cap for cached snapshots across all worlds.
+     */
+    public ChunkSnapshotCache setMaxMemory(long bytes) {
+        this.maxMemoryBytes = bytes;
+        evict();
+        return this;
+    }
+
+    /**
+     * Additionally invalidates chunks on {@link BlockPhysicsEvent}s. Note that listening to physics events makes the
+     * server fire one for every physics update, which is costly on busy servers.
+     */
+    public void trackPhysics(Plugin plugin) {
+        if (trackingPhysics)
+            return;
+        trackingPhysics = true;
+        plugin.getServer().getPluginManager().registerEvent(BlockPhysicsEvent.class, this, EventPriority.MONITOR,
+                (listener, event) -> {
+                    if (event instanceof BlockPhysicsEvent) {
+                        invalidate(((BlockEvent) event).getBlock());
+                    }
+                }, plugin, true);
+    }
+
+    private static class CacheEntry {
+        private final long key;
+        private final long size;
+        private final ChunkSnapshot snapshot;
+        private final long timestamp = System.currentTimeMillis();
+        private final int version;
+
+        private CacheEntry(long key, ChunkSnapshot snapshot, int version, long size) {
+            this.key = key;
+            this.snapshot = snapshot;
+            this.version = version;
+            this.size = size;
+        }
+    }
+
+    public static interface ChunkChangeListener {
+        /**
+         * Called when blocks in the chunk may have changed or the chunk was unloaded.
+         */
+        void onChunkChanged(World world, int chunkX, int chunkZ);
+
+        default void onWorldUnloaded(World world) {
+        }
+    }
+
+    private static class WorldCache {
+        private final LinkedHashMap<Long, CacheEntry> entries = new LinkedHashMap<>(64, 0.75f, true);
+        private long memory;
+        // the version of every chunk without an entry in versions
+        private int untrackedVersion;
+        private final LongIntHashMap versions = new LongIntHashMap(256, -1);
+
+        private WorldCache(int version) {
+            this.untrackedVersion = version;
+        }
+
+        private void clear() {
+            entries.clear();
+            memory = 0;
+        }
+
+        private ChunkSnapshot get(long key, long minTimestamp) {
+            CacheEntry entry = entries.get(key);
+            if (entry == null)
+                return null;
+            if (entry.version != getVersion(key) || entry.timestamp < minTimestamp) {
+                remove(key);
+                return null;
+            }
+            return entry.snapshot;
+        }
+
+        private int getVersion(long key) {
+            int version = versions.get(key);
+            return version == -1 ? untrackedVersion : version;
+        }
+
+        private void invalidate(long key, int version) {
+            remove(key);
+            if (versions.size() >= MAX_TRACKED_VERSIONS) {
+                untrack(version);
+                return;
+            }
+            versions.put(key, version);
+        }
+
+        private void put(long key, CacheEntry entry) {
+            CacheEntry old = entries.put(key, entry);
+            if (old != null) {
+                memory -= old.size;
+            }
+            memory += entry.size;
+        }
+
+        private void remove(long key) {
+            CacheEntry old = entries.remove(key);
+            if (old != null) {
+                memory -= old.size;
+            }
+        }
+
+        /**
+         * Forgets the version of every chunk without a current snapshot, moving them all to the given new version.
+         */
+        private void untrack(int version) {
+            entries.values().removeIf(entry -> entry.version != getVersion(entry.key));
+            memory = 0;
+            versions.clear();
+            for (CacheEntry entry : entries.values()) {
+                versions.put(entry.key, entry.version);
+                memory += entry.size;
+            }
+            untrackedVersion = version;
+        }
+    }
+
+    private static long estimateSize(World world) {
+        int height;
+        try {
+            height = world.getMaxHeight() - world.getMinHeight();
+        } catch (Throwable t) {
+            height = 256;
+        }
+        return height * 16L * 16L * ESTIMATED_BYTES_PER_BLOCK;
+    }
+
+    /**
+     * Returns the version of the chunk in the shared cache from {@link CitizensAPI#getChunkSnapshotCache()}.
+     *
+     * @return The version, or -1 if no implementation is present to track versions
+     */
+    public static int getSharedVersion(World world, int chunkX, int chunkZ) {
+        if (CitizensAPI.hasImplementation())
+            return CitizensAPI.getChunkSnapshotCache().getVersion(world, chunkX, chunkZ);
+        return -1;
+    }
+
+    /**
+     * Takes a snapshot of the given chunk through the shared cache from {@link CitizensAPI#getChunkSnapshotCache()}
+     * if an implementation is present, otherwise directly from the world.
+     */
+    public static ChunkSnapshot takeSnapshot(World world, int chunkX, int chunkZ) {
+        if (CitizensAPI.hasImplementation())
+            return CitizensAPI.getChunkSnapshotCache().getSnapshot(world, chunkX, chunkZ);
+        return world.getChunkAt(chunkX, chunkZ).getChunkSnapshot(false, false, false);
+    }
+
+    private static long getKey(int chunkX, int chunkZ) {
+        return (long) chunkX << 32 | chunkZ & 0xFFFFFFFFL;
+    }
+
+    /**
+     * A rough estimate of the bytes a snapshot holds per block, including palette and light storage.
+     */
+    private static final int ESTIMATED_BYTES_PER_BLOCK = 2;
+    private static final int MAX_TRACKED_VERSIONS = 4096;
+}
@@ -0,0 +1,63 @@
+package net.citizensnpcs.api.astar.pathfinder;
+
+import org.bukkit.util.Vector;
+
+import net.citizensnpcs.api.CitizensAPI;
+import net.citizensnpcs.api.util.EntityDim;
+
+/**
+ * A {@link WalkabilityExaminer} for entities larger than one block, which additionally rejects positions where the
+ * entity's footprint and height do not fit. The fit is answered by a single {@link ClearanceIndex} lookup per position
+ * instead of probing every block of the entity's bounding box, which is only done where the index cannot cover the
+ * position.
+ * <p>
+ * The footprint is the square of blocks overlapped by an entity of the given width centred on the block, limited to
+ * {@link ClearanceIndex#MAX_RADIUS}.
+ */
+public class ClearanceExaminer extends WalkabilityExaminer {
+    private final ClearanceIndex clearance;
+    private final int height;
+    private final int radius;
+
+    /**
+     * Uses the shared indexes from {@link CitizensAPI#getWalkabilityIndex()} and
+     * {@link CitizensAPI#getClearanceIndex()}.
+     */
+    public ClearanceExaminer(EntityDim dim) {
+        this(CitizensAPI.getWalkabilityIndex(), CitizensAPI.getClearanceIndex(), dim);
+    }
+
+    public ClearanceExaminer(WalkabilityIndex walkability, ClearanceIndex clearance, EntityDim dim) {
+        super(walkability);
+        this.clearance = clearance;
+        this.radius = Math.max(0, Math.min(ClearanceIndex.MAX_RADIUS, (int) Math.ceil(dim.width / 2 - 0.5 - EPSILON)));
+        this.height = Math.max(1, Math.min(ClearanceIndex.MAX_HEIGHT, (int) Math.ceil(dim.height - EPSILON)));
+    }
+
+    private boolean fits(BlockSource source, int x, int y, int z) {
+        for (int dx = -radius; dx <= radius; dx++) {
+            for (int dz = -radius; dz <= radius; dz++) {
+                for (int dy = 0; dy < height; dy++) {
+                    if (!canStandIn(source.getMaterialAt(x + dx, y + dy, z + dz),
+                            source.getBlockDataAt(x + dx, y + dy, z + dz)))
+                        return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public PassableState isPassable(BlockSource source, PathPoint point) {
+        PassableState state = super.isPassable(source, point);
+        if (state == PassableState.UNPASSABLE)
+            return state;
+        Vector pos = point.getVector();
+        int x = pos.getBlockX(), y = pos.getBlockY(), z = pos.getBlockZ();
+        int packed = clearance.getClearance(source, x, y, z);
+        boolean fits = packed == -1 ? fits(source, x, y, z) : ClearanceIndex.getHeight(packed, radius) >= height;
+        return fits ? state : PassableState.UNPASSABLE;
+    }
+
+    private static final double EPSILON = 1.0E-3;
+}
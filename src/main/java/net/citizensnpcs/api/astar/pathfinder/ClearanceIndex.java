@@ -0,0 +1,188 @@
+package net.citizensnpcs.api.astar.pathfinder;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.bukkit.World;
+
+import net.citizensnpcs.api.astar.pathfinder.ChunkSnapshotCache.ChunkChangeListener;
+
+/**
+ * A per-world index of how large an entity fits at each block, derived from the {@link WalkabilityIndex#FEET} bits of
+ * a {@link WalkabilityIndex} and stored per 16x16x16 chunk section. For every block position the index holds the free
+ * height, in blocks, of the tallest entity whose footprint is a square of radius 0 to {@link #MAX_RADIUS} blocks
+ * centred on the block, packed as four 4-bit heights into one <code>char</code>, for 8 KB per populated section.
+ * <p>
+ * Sections are built lazily and dropped, together with those of neighbouring chunks whose footprints reach into them,
+ * whenever the {@link ChunkSnapshotCache} reports a chunk as changed or unloaded. Sections built through a source that
+ * is no longer {@link BlockSource#isCurrent(int, int) current} answer the query but are not kept.
+ */
+public class ClearanceIndex implements ChunkChangeListener {
+    private final WalkabilityIndex walkability;
+    private final Map<UUID, Map<Long, ChunkColumn>> worlds = new ConcurrentHashMap<>();
+
+    public ClearanceIndex(WalkabilityIndex walkability) {
+        this.walkability = walkability;
+    }
+
+    public ClearanceIndex(WalkabilityIndex walkability, ChunkSnapshotCache cache) {
+        this(walkability);
+        cache.addListener(this);
+    }
+
+    private char[] build(BlockSource source, int chunkX, int sectionY, int chunkZ) {
+        int span = 16 + MAX_RADIUS * 2;
+        int baseX = (chunkX << 4) - MAX_RADIUS, baseY = sectionY << 4, baseZ = (chunkZ << 4) - MAX_RADIUS;
+        // the free height of every column of the section and its surrounding footprint margin
+        byte[] heights = new byte[span * span * 16];
+        for (int x = 0; x < span; x++) {
+            for (int z = 0; z < span; z++) {
+                int free = 0;
+                for (int y = 16 + MAX_HEIGHT - 1; y >= 0; y--) {
+                    int flags = walkability.getFlags(source, baseX + x, baseY + y, baseZ + z);
+                    if (flags == -1 && y < 16)
+                        return null;
+                    free = flags != -1 && (flags & WalkabilityIndex.FEET) != 0 ? Math.min(MAX_HEIGHT, free + 1) : 0;
+                    if (y < 16) {
+                        heights[(y * span + z) * span + x] = (byte) free;
+                    }
+                }
+            }
+        }
+        char[] clearance = new char[4096];
+        for (int y = 0; y < 16; y++) {
+            for (int z = 0; z < 16; z++) {
+                for (int x = 0; x < 16; x++) {
+                    int packed = 0;
+                    int min = MAX_HEIGHT;
+                    for (int r = 0; r <= MAX_RADIUS; r++) {
+                        // grow the square by its new outer ring
+                        for (int dx = -r; dx <= r; dx++) {
+                            for (int dz = -r; dz <= r; dz++) {
+                                if (Math.max(Math.abs(dx), Math.abs(dz)) != r) {
+                                    continue;
+                                }
+                                int idx = (y * span + z + MAX_RADIUS + dz) * span + x + MAX_RADIUS + dx;
+                                min = Math.min(min, heights[idx]);
+                            }
+                        }
+                        packed |= min << r * 4;
+                    }
+                    clearance[y << 8 | z << 4 | x] = (char) packed;
+                }
+            }
+        }
+        return clearance;
+    }
+
+    /**
+     * Drops every indexed section.
+     */
+    public void clear() {
+        worlds.clear();
+    }
+
+    /**
+     * Returns the packed clearance of the given block position, building its section if necessary.
+     *
+     * @return The clearance, to be read with {@link #getHeight(int, int)}, or -1 if the position cannot be indexed
+     */
+    public int getClearance(BlockSource source, int x, int y, int z) {
+        int sectionIndex = (y >> 4) + SECTION_OFFSET;
+        if (sectionIndex < 0 || sectionIndex >= MAX_SECTIONS)
+            return -1;
+        Map<Long, ChunkColumn> columns = worlds.computeIfAbsent(source.getWorld().getUID(),
+                uid -> new ConcurrentHashMap<>());
+        ChunkColumn column = columns.computeIfAbsent(getKey(x >> 4, z >> 4), k -> new ChunkColumn());
+        char[] section = column.sections.get(sectionIndex);
+        if (section == null) {
+            section = build(source, x >> 4, y >> 4, z >> 4);
+            if (section == null)
+                return -1;
+            if (!column.invalidated && isCurrent(source, x >> 4, z >> 4)) {
+                column.sections.set(sectionIndex, section);
+            }
+        }
+        return section[(y & 15) << 8 | (z & 15) << 4 | x & 15];
+    }
+
+    /**
+     * Drops the indexed sections of the given chunk and of the chunks around it.
+     */
+    public void invalidate(World world, int chunkX, int chunkZ) {
+        Map<Long, ChunkColumn> columns = worlds.get(world.getUID());
+        if (columns == null)
+            return;
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dz = -1; dz <= 1; dz++) {
+                ChunkColumn column = columns.remove(getKey(chunkX + dx, chunkZ + dz));
+                if (column != null) {
+                    column.invalidated = true;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onChunkChanged(World world, int chunkX, int chunkZ) {
+        invalidate(world, chunkX, chunkZ);
+    }
+
+    @Override
+    public void onWorldUnloaded(World world) {
+        Map<Long, ChunkColumn> columns = worlds.remove(world.getUID());
+        if (columns == null)
+            return;
+        for (ChunkColumn column : columns.values()) {
+            column.invalidated = true;
+        }
+    }
+
+    private static class ChunkColumn {
+        private volatile boolean invalidated;
+        private final AtomicReferenceArray<char[]> sections = new AtomicReferenceArray<>(MAX_SECTIONS);
+    }
+
+    /**
+     * Reads the free height for a footprint from a packed clearance.
+     *
+     * @param clearance
+     *            The packed clearance from {@link #getClearance(BlockSource, int, int, int)}
+     * @param radius
+     *            The footprint radius, from 0 to {@link #MAX_RADIUS}
+     * @return The number of free blocks above every block of the footprint, up to {@link #MAX_HEIGHT}
+     */
+    public static int getHeight(int clearance, int radius) {
+        return clearance >> radius * 4 & 15;
+    }
+
+    private static long getKey(int chunkX, int chunkZ) {
+        return (long) chunkX << 32 | chunkZ & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Returns whether the source is current for the chunk and the neighbouring chunks its footprints reach into.
+     */
+    private static boolean isCurrent(BlockSource source, int chunkX, int chunkZ) {
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dz = -1; dz <= 1; dz++) {
+                if (!source.isCurrent(chunkX + dx, chunkZ + dz))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The largest free height recorded, in blocks.
+     */
+    public static final int MAX_HEIGHT = 15;
+    /**
+     * The largest footprint radius recorded, covering entities up to seven blocks wide.
+     */
+    public static final int MAX_RADIUS = 3;
+    private static final int MAX_SECTIONS = 64;
+    private static final int SECTION_OFFSET = MAX_SECTIONS / 2;
+}
@@ -0,0 +1,114 @@
+package net.citizensnpcs.api.astar.pathfinder;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.data.BlockData;
+
+import net.citizensnpcs.api.util.BoundingBox;
+import net.citizensnpcs.api.util.SpigotUtil;
+
+/**
+ * A shared cache of block collision {@link BoundingBox}es keyed by {@link BlockData}. Each distinct block state is
+ * measured once from a live {@link Block} and the box, relative to the block origin, is then reused by every
+ * snapshot-backed {@link BlockSource} without touching the world again.
+ * <p>
+ * States that have not been measured yet are only measured from the thread owning the block, which is the server thread
+ * or on Folia the thread of the block's region. Elsewhere they are estimated as a full block if solid and empty
+ * otherwise, without caching the estimate. Sources that take snapshots on the owning thread should
+ * {@link #warm(World, ChunkSnapshot) warm} the cache with them, so that later reads from other threads find every
+ * state.
+ */
+public class CollisionBoxCache {
+    private CollisionBoxCache() {
+    }
+
+    /**
+     * Returns the collision box of the block state at the given position, in world coordinates.
+     *
+     * @param world
+     *            The world, used to measure unseen states
+     * @param data
+     *            The block state, typically read from a snapshot
+     * @param canAccessWorld
+     *            Whether the live block may be read to measure an unseen state, which is only done from the thread
+     *            owning the block
+     */
+    public static BoundingBox getCollisionBox(World world, BlockData data, int x, int y, int z,
+            boolean canAccessWorld) {
+        BoundingBox box = CACHE.get(data);
+        if (box == null && canAccessWorld && isOwnedByCurrentThread(world, x, z)) {
+            box = measure(world.getBlockAt(x, y, z), data);
+        }
+        if (box == null) {
+            box = data.getMaterial().isSolid() ? BoundingBox.ONE : BoundingBox.EMPTY;
+        }
+        return box == BoundingBox.EMPTY ? box : box.add(x, y, z);
+    }
+
+    private static boolean isOwnedByCurrentThread(World world, int x, int z) {
+        if (!SpigotUtil.isFoliaServer())
+            return Bukkit.isPrimaryThread();
+        return Bukkit.isOwnedByCurrentRegion(world, x >> 4, z >> 4);
+    }
+
+    /**
+     * Measures and caches every block state in the snapshot that has not been measured yet. Must be called from the
+     * thread owning the snapshotted chunk. Snapshots shared through the {@link ChunkSnapshotCache} are only walked the
+     * first time.
+     */
+    public static void warm(World world, ChunkSnapshot snapshot) {
+        if (!SUPPORT_BOUNDING_BOX || !WARMED.add(snapshot))
+            return;
+        int baseX = snapshot.getX() << 4, baseZ = snapshot.getZ() << 4;
+        int minY = world.getMinHeight(), maxY = world.getMaxHeight();
+        for (int section = 0; minY + (section << 4) < maxY; section++) {
+            if (snapshot.isSectionEmpty(section)) {
+                continue;
+            }
+            int sectionY = minY + (section << 4);
+            for (int y = sectionY; y < Math.min(sectionY + 16, maxY); y++) {
+                for (int x = 0; x < 16; x++) {
+                    for (int z = 0; z < 16; z++) {
+                        BlockData data = snapshot.getBlockData(x, y, z);
+                        if (!CACHE.containsKey(data)) {
+                            measure(world.getBlockAt(baseX + x, y, baseZ + z), data);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static BoundingBox measure(Block block, BlockData expected) {
+        if (!SUPPORT_BOUNDING_BOX)
+            return null;
+        try {
+            if (!block.getBlockData().equals(expected))
+                return null;
+            BoundingBox box = BoundingBox.convert(block.getBoundingBox()).add(-block.getX(), -block.getY(),
+                    -block.getZ());
+            if (box.equals(BoundingBox.EMPTY)) {
+                box = BoundingBox.EMPTY;
+            }
+            CACHE.putIfAbsent(expected.clone(), box);
+            return box;
+        } catch (LinkageError e) {
+            // Block#getBoundingBox is missing on old servers
+            SUPPORT_BOUNDING_BOX = false;
+            return null;
+        }
+    }
+
+    private static final Map<BlockData, BoundingBox> CACHE = new ConcurrentHashMap<>();
+    private static volatile boolean SUPPORT_BOUNDING_BOX = true;
+    private static final Set<ChunkSnapshot> WARMED = Collections
+            .synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+}
@@ -19,6 +19,7 @@ import org.bukkit.event.Cancellable;
 import org.bukkit.event.Event;
 import org.bukkit.material.MaterialData;
 import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.util.Vector;
 
 import net.citizensnpcs.api.CitizensAPI;
 import net.citizensnpcs.api.astar.pathfinder.PathPoint.PathCallback;
@@ -33,15 +34,19 @@ public class DoorExaminer implements BlockExaminer {
         return 0F;
     }
 
+    @Override
+    public boolean isParentDependent(BlockSource source, PathPoint point) {
+        return false;
+    }
+
     @Override
     public PassableState isPassable(BlockSource source, PathPoint point) {
         if (!MinecraftBlockExaminer.canStandOn(source.getMaterialAt(point.getVector().getBlockX(),
                 point.getVector().getBlockY() - 1, point.getVector().getBlockZ())))
             return PassableState.IGNORE;
-        Block in = source.getBlockAt(point.getVector());
-
-        if (MinecraftBlockExaminer.isDoor(in.getType()) && isBottomDoor(in)
-                || MinecraftBlockExaminer.isGate(in.getType())) {
+        Material in = source.getMaterialAt(point.getVector());
+        if (MinecraftBlockExaminer.isDoor(in) && isBottomDoor(source, point.getVector())
+                || MinecraftBlockExaminer.isGate(in)) {
             point.addCallback(new DoorOpener());
             return PassableState.PASSABLE;
         }
@@ -188,6 +193,14 @@ public class DoorExaminer implements BlockExaminer {
         return bottom ? point : point.getRelative(BlockFace.DOWN);
     }
 
+    private static boolean isBottomDoor(BlockSource source, Vector pos) {
+        if (SpigotUtil.isUsing1_13API()) {
+            BlockData bd = source.getBlockDataAt(pos);
+            return bd instanceof Bisected && ((Bisected) bd).getHalf() == Half.BOTTOM;
+        }
+        return isBottomDoor(source.getBlockAt(pos));
+    }
+
     private static boolean isBottomDoor(Block point) {
         if (SpigotUtil.isUsing1_13API()) {
             BlockData bd = point.getBlockData();
@@ -0,0 +1,286 @@
+package net.citizensnpcs.api.astar.pathfinder;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.UUID;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.util.Vector;
+
+import net.citizensnpcs.api.astar.AStarNode;
+import net.citizensnpcs.api.astar.pathfinder.PathPoint.PathCallback;
+import net.citizensnpcs.api.util.LongIntHashMap;
+
+/**
+ * The shortest walking direction towards a single goal block from every block around it. The field is computed by
+ * one reverse Dijkstra search from the goal over {@link VectorNode#getReverseNeighbours()}, bounded by a radius and a
+ * node limit, and stores one step direction and the remaining cost per reached block. Any number of NPCs inside the
+ * field can then read a {@link Path} to the goal with {@link #getPath(Location)} without searching.
+ * <p>
+ * A field is immutable once computed and may be read from any thread.
+ */
+public class FlowField {
+    private List<PathCallback>[] callbacks;
+    private long[] chunks;
+    private float[] costs;
+    private byte[] directions;
+    private final long goal;
+    private final LongIntHashMap index = new LongIntHashMap(1024, -1);
+    private long[] positions;
+    private int size;
+    private final UUID world;
+
+    private FlowField(UUID world, long goal) {
+        this.world = world;
+        this.goal = goal;
+    }
+
+    private int add(long position, byte direction, float cost, List<PathCallback> added) {
+        if (size == costs.length) {
+            int capacity = size * 2;
+            callbacks = Arrays.copyOf(callbacks, capacity);
+            costs = Arrays.copyOf(costs, capacity);
+            directions = Arrays.copyOf(directions, capacity);
+            positions = Arrays.copyOf(positions, capacity);
+        }
+        int idx = size++;
+        index.put(position, idx);
+        positions[idx] = position;
+        set(idx, direction, cost, added);
+        return idx;
+    }
+
+    /**
+     * @return Whether the block is inside the field
+     */
+    public boolean contains(int x, int y, int z) {
+        return index.containsKey(PackedPosition.pack(x, y, z));
+    }
+
+    /**
+     * Returns whether changes to the given chunk may change the field, including chunks bordering a block of the
+     * field.
+     */
+    public boolean coversChunk(int chunkX, int chunkZ) {
+        long key = (long) chunkX << 32 | chunkZ & 0xFFFFFFFFL;
+        return Arrays.binarySearch(chunks, key) >= 0;
+    }
+
+    /**
+     * @return The walking cost from the block to the goal, or {@link Float#NaN} if the block is outside the field
+     */
+    public float getCost(int x, int y, int z) {
+        int idx = index.get(PackedPosition.pack(x, y, z));
+        return idx == -1 ? Float.NaN : costs[idx];
+    }
+
+    /**
+     * Returns the block offset of the next step from the given block towards the goal, which is the zero vector at the
+     * goal itself.
+     *
+     * @return The offset, or <code>null</code> if the block is outside the field
+     */
+    public Vector getDirection(int x, int y, int z) {
+        int idx = index.get(PackedPosition.pack(x, y, z));
+        if (idx == -1)
+            return null;
+        int direction = directions[idx];
+        return new Vector(direction / 9 - 1, direction / 3 % 3 - 1, direction % 3 - 1);
+    }
+
+    /**
+     * @return The goal block
+     */
+    public Vector getGoal() {
+        return PackedPosition.toVector(goal);
+    }
+
+    /**
+     * Follows the field from the given location's block to the goal.
+     *
+     * @return The path, or <code>null</code> if the block is outside the field
+     */
+    @SuppressWarnings("unchecked")
+    public Path getPath(Location from) {
+        if (!from.getWorld().getUID().equals(world))
+            return null;
+        long position = PackedPosition.pack(from.getBlockX(), from.getBlockY(), from.getBlockZ());
+        int idx = index.get(position);
+        if (idx == -1)
+            return null;
+        long[] positions = new long[16];
+        int[] indices = new int[16];
+        List<PathCallback>[] lists = new List[16];
+        int count = 0, callbackCount = 0;
+        while (true) {
+            if (count == positions.length) {
+                positions = Arrays.copyOf(positions, count * 2);
+            }
+            if (callbacks[idx] != null) {
+                if (callbackCount == indices.length) {
+                    indices = Arrays.copyOf(indices, callbackCount * 2);
+                    lists = Arrays.copyOf(lists, callbackCount * 2);
+                }
+                indices[callbackCount] = count;
+                lists[callbackCount++] = callbacks[idx];
+            }
+            positions[count++] = position;
+            if (position == goal || count > size)
+                break;
+            int direction = directions[idx];
+            position = PackedPosition.pack(PackedPosition.unpackX(position) + direction / 9 - 1,
+                    PackedPosition.unpackY(position) + direction / 3 % 3 - 1,
+                    PackedPosition.unpackZ(position) + direction % 3 - 1);
+            idx = index.get(position);
+        }
+        return new Path(Arrays.copyOf(positions, count), Arrays.copyOf(indices, callbackCount),
+                Arrays.copyOf(lists, callbackCount));
+    }
+
+    /**
+     * @return The world of the field
+     */
+    public UUID getWorld() {
+        return world;
+    }
+
+    /**
+     * @return Whether the source is still {@link BlockSource#isCurrent(int, int) current} for every chunk covered by
+     *         the field
+     */
+    boolean isCurrent(BlockSource source) {
+        for (long chunk : chunks) {
+            if (!source.isCurrent((int) (chunk >> 32), (int) chunk))
+                return false;
+        }
+        return true;
+    }
+
+    private void set(int idx, byte direction, float cost, List<PathCallback> added) {
+        directions[idx] = direction;
+        costs[idx] = cost;
+        callbacks[idx] = added == null || added.isEmpty() ? null : added;
+    }
+
+    /**
+     * @return The number of blocks in the field
+     */
+    public int size() {
+        return size;
+    }
+
+    private static class QueueEntry implements Comparable<QueueEntry> {
+        private final float cost;
+        private final int idx;
+        private final VectorNode node;
+
+        private QueueEntry(VectorNode node, int idx, float cost) {
+            this.node = node;
+            this.idx = idx;
+            this.cost = cost;
+        }
+
+        @Override
+        public int compareTo(QueueEntry other) {
+            return Float.compare(cost, other.cost);
+        }
+    }
+
+    /**
+     * Computes the field around a goal.
+     *
+     * @param goal
+     *            The goal, whose range is ignored
+     * @param source
+     *            The block source, which must cover the radius around the goal
+     * @param radius
+     *            The maximum distance of a block in the field from the goal
+     * @param maxNodes
+     *            The maximum number of blocks in the field
+     * @param examiners
+     *            The examiners deciding which moves are possible, as used for a normal search
+     * @return The field
+     */
+    @SuppressWarnings("unchecked")
+    public static FlowField compute(VectorGoal goal, BlockSource source, float radius, int maxNodes,
+            BlockExaminer... examiners) {
+        Vector goalVector = goal.getGoalVector();
+        World world = source.getWorld();
+        FlowField field = new FlowField(world.getUID(), PackedPosition.pack(goalVector));
+        int capacity = Math.max(16, Math.min(maxNodes, 1024));
+        field.callbacks = new List[capacity];
+        field.costs = new float[capacity];
+        field.directions = new byte[capacity];
+        field.positions = new long[capacity];
+        VectorNode.PathInfo info = new VectorNode.PathInfo(source,
+                examiners == null ? new BlockExaminer[0] : examiners, goal, null);
+        VectorNode root = new VectorNode(null, goalVector, info);
+        PriorityQueue<QueueEntry> open = new PriorityQueue<>();
+        open.add(new QueueEntry(root, field.add(field.goal, GOAL_DIRECTION, 0, null), 0));
+        double radiusSquared = (double) radius * radius;
+        while (!open.isEmpty()) {
+            QueueEntry entry = open.poll();
+            if (entry.cost > field.costs[entry.idx]) {
+                // superseded by a cheaper entry
+                continue;
+            }
+            VectorNode node = entry.node;
+            int x = node.location.getBlockX(), y = node.location.getBlockY(), z = node.location.getBlockZ();
+            for (AStarNode neighbour : node.getReverseNeighbours()) {
+                VectorNode from = (VectorNode) neighbour;
+                if (from.location.distanceSquared(goalVector) > radiusSquared) {
+                    continue;
+                }
+                float cost = entry.cost + goal.g(from, node);
+                int fx = from.location.getBlockX(), fy = from.location.getBlockY(), fz = from.location.getBlockZ();
+                byte direction = (byte) ((x - fx + 1) * 9 + (y - fy + 1) * 3 + z - fz + 1);
+                long position = PackedPosition.pack(fx, fy, fz);
+                int idx = field.index.get(position);
+                if (idx == -1) {
+                    if (field.size >= maxNodes) {
+                        continue;
+                    }
+                    idx = field.add(position, direction, cost, from.callbacks);
+                } else if (cost < field.costs[idx]) {
+                    field.set(idx, direction, cost, from.callbacks);
+                } else {
+                    continue;
+                }
+                open.add(new QueueEntry(from, idx, cost));
+            }
+        }
+        field.finish();
+        return field;
+    }
+
+    private void finish() {
+        LongIntHashMap seen = new LongIntHashMap(64, -1);
+        long[] keys = new long[64];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            int x = PackedPosition.unpackX(positions[i]), z = PackedPosition.unpackZ(positions[i]);
+            // blocks next to a chunk border also depend on the neighbouring chunk
+            for (int dx = -1; dx <= 1; dx += 2) {
+                for (int dz = -1; dz <= 1; dz += 2) {
+                    long key = (long) (x + dx >> 4) << 32 | z + dz >> 4 & 0xFFFFFFFFL;
+                    if (seen.put(key, 1) == -1) {
+                        if (count == keys.length) {
+                            keys = Arrays.copyOf(keys, count * 2);
+                        }
+                        keys[count++] = key;
+                    }
+                }
+            }
+        }
+        chunks = Arrays.copyOf(keys, count);
+        Arrays.sort(chunks);
+        callbacks = Arrays.copyOf(callbacks, size);
+        costs = Arrays.copyOf(costs, size);
+        directions = Arrays.copyOf(directions, size);
+        positions = null;
+    }
+
+    private static final byte GOAL_DIRECTION = 13;
+}
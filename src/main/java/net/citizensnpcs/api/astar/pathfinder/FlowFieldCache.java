@@ -0,0 +1,217 @@
+package net.citizensnpcs.api.astar.pathfinder;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.util.Vector;
+
+import com.google.common.collect.Maps;
+
+import net.citizensnpcs.api.astar.pathfinder.ChunkSnapshotCache.ChunkChangeListener;
+
+/**
+ * A small least recently used cache of {@link FlowField}s keyed by world, goal block and a
+ * {@link PathCache#fingerprint(BlockExaminer...) fingerprint} of the examiners used to compute them, so that every NPC
+ * heading to the same destination shares one field. Fields are dropped when the {@link ChunkSnapshotCache} reports a
+ * change in any chunk they cover, and fields computed through a {@link BlockSource} that is no longer
+ * {@link BlockSource#isCurrent(int, int) current} for those chunks are not cached. The cache is thread-safe.
+ */
+public class FlowFieldCache implements ChunkChangeListener {
+    private final Map<Key, CompletableFuture<FlowField>> computing = Maps.newHashMap();
+    private final LinkedHashMap<Key, FlowField> fields = new LinkedHashMap<>(16, 0.75F, true);
+    private int maxNodes = 20000;
+    private int maxSize = 16;
+    private float radius = 48;
+
+    public FlowFieldCache() {
+    }
+
+    public FlowFieldCache(ChunkSnapshotCache cache) {
+        cache.addListener(this);
+    }
+
+    /**
+     * Removes every cached field.
+     */
+    public synchronized void clear() {
+        fields.clear();
+    }
+
+    private synchronized CompletableFuture<FlowField> finish(Key key) {
+        return computing.remove(key);
+    }
+
+    /**
+     * Returns the field cached for the given goal.
+     *
+     * @param world
+     *            The world
+     * @param goal
+     *            The goal position, compared by block
+     * @param fingerprint
+     *            The examiner fingerprint
+     * @return The field, or <code>null</code> if none is cached
+     */
+    public synchronized FlowField get(World world, Vector goal, int fingerprint) {
+        return fields.get(new Key(world.getUID(), PackedPosition.pack(goal), fingerprint));
+    }
+
+    /**
+     * Returns the field cached for the goal, computing and caching it first if needed. The field is computed on the
+     * calling thread, so the block source must be usable from it. Callers asking for a field that another thread is
+     * already computing wait for that computation instead of starting their own.
+     *
+     * @param goal
+     *            The goal
+     * @param source
+     *            The block source, which must cover the {@link #setRadius(float) radius} around the goal
+     * @param examiners
+     *            The examiners to compute the field with
+     * @return The field
+     */
+    public FlowField getOrCompute(VectorGoal goal, BlockSource source, BlockExaminer... examiners) {
+        int fingerprint = PathCache.fingerprint(examiners);
+        Key key = new Key(source.getWorld().getUID(), PackedPosition.pack(goal.getGoalVector()), fingerprint);
+        CompletableFuture<FlowField> pending;
+        float fieldRadius;
+        int fieldNodes;
+        synchronized (this) {
+            FlowField field = fields.get(key);
+            if (field != null)
+                return field;
+            pending = computing.get(key);
+            if (pending == null) {
+                computing.put(key, new CompletableFuture<>());
+            }
+            fieldRadius = radius;
+            fieldNodes = maxNodes;
+        }
+        if (pending != null)
+            return pending.join();
+        FlowField field;
+        try {
+            field = FlowField.compute(goal, source, fieldRadius, fieldNodes, examiners);
+            put(field, fingerprint, source);
+        } catch (RuntimeException | Error e) {
+            finish(key).completeExceptionally(e);
+            throw e;
+        }
+        finish(key).complete(field);
+        return field;
+    }
+
+    /**
+     * Returns a path to the goal from a cached field containing the start block.
+     *
+     * @param start
+     *            The start location
+     * @param goal
+     *            The goal position, compared by block
+     * @param fingerprint
+     *            The examiner fingerprint
+     * @return The path, or <code>null</code> if no cached field contains the start
+     */
+    public Path getPath(Location start, Vector goal, int fingerprint) {
+        FlowField field = get(start.getWorld(), goal, fingerprint);
+        return field == null ? null : field.getPath(start);
+    }
+
+    @Override
+    public synchronized void onChunkChanged(World world, int chunkX, int chunkZ) {
+        fields.entrySet().removeIf(
+                entry -> entry.getKey().world.equals(world.getUID()) && entry.getValue().coversChunk(chunkX, chunkZ));
+    }
+
+    @Override
+    public synchronized void onWorldUnloaded(World world) {
+        fields.keySet().removeIf(key -> key.world.equals(world.getUID()));
+    }
+
+    /**
+     * Caches a computed field, unless a chunk it covers has changed since the source read it, as that change has
+     * already been reported.
+     *
+     * @param source
+     *            The block source the field was computed with
+     * @see #get(World, Vector, int)
+     */
+    public synchronized void put(FlowField field, int fingerprint, BlockSource source) {
+        if (maxSize <= 0 || !field.isCurrent(source))
+            return;
+        fields.put(new Key(field.getWorld(), PackedPosition.pack(field.getGoal()), fingerprint), field);
+        trim();
+    }
+
+    /**
+     * Sets the maximum number of blocks in fields computed by {@link #getOrCompute(VectorGoal, BlockSource,
+     * BlockExaminer...)}.
+     */
+    public synchronized FlowFieldCache setMaxNodes(int nodes) {
+        this.maxNodes = nodes;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of cached fields, evicting the least recently used fields beyond it.
+     */
+    public synchronized FlowFieldCache setMaxSize(int size) {
+        this.maxSize = size;
+        trim();
+        return this;
+    }
+
+    /**
+     * Sets the maximum distance from the goal of blocks in fields computed by
+     * {@link #getOrCompute(VectorGoal, BlockSource, BlockExaminer...)}.
+     */
+    public synchronized FlowFieldCache setRadius(float radius) {
+        this.radius = radius;
+        return this;
+    }
+
+    /**
+     * @return The number of cached fields
+     */
+    public synchronized int size() {
+        return fields.size();
+    }
+
+    private void trim() {
+        while (fields.size() > Math.max(0, maxSize)) {
+            fields.remove(fields.keySet().iterator().next());
+        }
+    }
+
+    private static class Key {
+        private final int fingerprint;
+        private final long goal;
+        private final UUID world;
+
+        private Key(UUID world, long goal, int fingerprint) {
+            this.world = world;
+            this.goal = goal;
+            this.fingerprint = fingerprint;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (obj == null || getClass() != obj.getClass())
+                return false;
+            Key other = (Key) obj;
+            return fingerprint == other.fingerprint && goal == other.goal && world.equals(other.world);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = 31 + fingerprint;
+            result = 31 * result + Long.hashCode(goal);
+            return 31 * result + world.hashCode();
+        }
+    }
+}
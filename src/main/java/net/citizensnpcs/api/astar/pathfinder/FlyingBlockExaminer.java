@@ -3,7 +3,6 @@ package net.citizensnpcs.api.astar.pathfinder;
 import java.util.List;
 
 import org.bukkit.Material;
-import org.bukkit.block.Block;
 import org.bukkit.util.Vector;
 
 import com.google.common.collect.Lists;
@@ -41,15 +40,23 @@ public class FlyingBlockExaminer implements NeighbourGeneratorBlockExaminer {
         return neighbours;
     }
 
+    @Override
+    public boolean isParentDependent(BlockSource source, PathPoint point) {
+        return false;
+    }
+
     @Override
     public PassableState isPassable(BlockSource source, PathPoint point) {
         Vector pos = point.getVector();
-        Block above = source.getBlockAt(pos.clone().add(UP));
-        Block in = source.getBlockAt(pos);
-        if (MinecraftBlockExaminer.isLiquid(above.getType(), in.getType()))
+        int x = pos.getBlockX(), y = pos.getBlockY(), z = pos.getBlockZ();
+        Material above = source.getMaterialAt(x, y + 1, z);
+        Material in = source.getMaterialAt(x, y, z);
+        if (MinecraftBlockExaminer.isLiquid(above, in))
             return PassableState.UNPASSABLE;
 
-        return MinecraftBlockExaminer.canStandIn(above, in) ? PassableState.PASSABLE : PassableState.UNPASSABLE;
+        return MinecraftBlockExaminer.canStandIn(above, source.getBlockDataAt(x, y + 1, z))
+                && MinecraftBlockExaminer.canStandIn(in, source.getBlockDataAt(x, y, z)) ? PassableState.PASSABLE
+                        : PassableState.UNPASSABLE;
     }
 
     private static final Vector UP = new Vector(0, 1, 0);
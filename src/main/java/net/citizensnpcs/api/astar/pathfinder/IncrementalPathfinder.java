@@ -0,0 +1,99 @@
+package net.citizensnpcs.api.astar.pathfinder;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.util.Vector;
+
+import net.citizensnpcs.api.astar.IncrementalAStarMachine;
+import net.citizensnpcs.api.astar.pathfinder.ChunkSnapshotCache.ChunkChangeListener;
+
+/**
+ * Repeatedly plans paths for one NPC following a moving target, such as an entity target updated every
+ * {@link net.citizensnpcs.api.ai.NavigatorParameters#updatePathRate()} ticks, using an
+ * {@link IncrementalAStarMachine}. Each update only repairs the search graph of the previous update for the target's
+ * new position and for chunks reported as changed, instead of searching from scratch.
+ * <p>
+ * The {@link BlockSource} must read live blocks, since it is used across updates. Register the pathfinder with
+ * {@link ChunkSnapshotCache#addListener(ChunkChangeListener)} so that block changes are repaired, and remove it once
+ * the NPC stops following the target. {@link NeighbourGeneratorBlockExaminer}s whose neighbours depend on the parent
+ * node, such as {@link JumpPointExaminer}, should not be used.
+ */
+public class IncrementalPathfinder implements ChunkChangeListener {
+    private VectorGoal goal;
+    private Vector goalBlock;
+    private float goalRange;
+    private final VectorNode.PathInfo info;
+    private final IncrementalAStarMachine<VectorNode, Path> machine = new IncrementalAStarMachine<>();
+    private final World world;
+
+    public IncrementalPathfinder(BlockSource source, BlockExaminer... examiners) {
+        this.world = source.getWorld();
+        this.info = new VectorNode.PathInfo(source, examiners == null ? new BlockExaminer[0] : examiners, null, null);
+    }
+
+    /**
+     * @return The number of nodes kept from previous updates
+     */
+    public int getNodeCount() {
+        return machine.getNodeCount();
+    }
+
+    @Override
+    public void onChunkChanged(World changed, int chunkX, int chunkZ) {
+        if (changed != world)
+            return;
+        // nodes beside the chunk may step into it
+        int minX = (chunkX << 4) - 1, minZ = (chunkZ << 4) - 1, maxX = minX + 17, maxZ = minZ + 17;
+        machine.invalidate(node -> {
+            int x = node.location.getBlockX(), z = node.location.getBlockZ();
+            return x >= minX && x <= maxX && z >= minZ && z <= maxZ;
+        });
+    }
+
+    @Override
+    public void onWorldUnloaded(World unloaded) {
+        if (unloaded == world) {
+            reset();
+        }
+    }
+
+    /**
+     * Discards the kept search graph.
+     */
+    public void reset() {
+        machine.reset();
+    }
+
+    /**
+     * Sets the number of nodes kept between updates before the search graph is rebuilt.
+     */
+    public IncrementalPathfinder setMaxNodes(int nodes) {
+        machine.setMaxNodes(nodes);
+        return this;
+    }
+
+    /**
+     * Plans a path from the NPC's current location to the target's current location.
+     *
+     * @param from
+     *            The NPC's location
+     * @param target
+     *            The target's location
+     * @param range
+     *            The distance from the target at which the path is finished
+     * @param maxIterations
+     *            The maximum number of node expansions for this update, or -1 for no limit
+     * @return The path, or <code>null</code> if not found within the iteration limit
+     */
+    public Path update(Location from, Location target, float range, int maxIterations) {
+        Vector block = new Vector(target.getBlockX(), target.getBlockY(), target.getBlockZ());
+        if (goal == null || range != goalRange || !block.equals(goalBlock)) {
+            goal = new VectorGoal(target, range);
+            goalBlock = block;
+            goalRange = range;
+            info.setGoal(goal);
+        }
+        return machine.plan(goal, new VectorNode(null, from.getBlockX(), from.getBlockY(), from.getBlockZ(), info),
+                maxIterations);
+    }
+}
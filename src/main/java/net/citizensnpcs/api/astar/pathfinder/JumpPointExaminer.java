@@ -0,0 +1,365 @@
+package net.citizensnpcs.api.astar.pathfinder;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.bukkit.Material;
+import org.bukkit.util.Vector;
+
+import com.google.common.collect.Lists;
+
+import net.citizensnpcs.api.util.LongIntHashMap;
+import net.citizensnpcs.api.util.SpigotUtil;
+
+/**
+ * A {@link NeighbourGeneratorBlockExaminer} implementing Jump Point Search over flat, uniform ground. Where a node
+ * and every block around it are <em>open</em> (solid walkable floor, empty feet and head space, zero cost and no
+ * callbacks), the search jumps along straight and diagonal runs and only emits the points where the run meets an
+ * obstacle corner, irregular terrain or the goal, instead of every intermediate block. Everywhere else, including any
+ * change of height, the default 26-neighbour expansion of {@link VectorNode} is used, so jumping, dropping, climbing
+ * and swimming behave as before.
+ * <p>
+ * The intermediate blocks of a run are attached to the emitted point as path vectors, so the resulting {@link Path}
+ * still contains every block. The examiners passed to the constructor decide passability and cost during the jumps
+ * and should be the same examiners used for the search, for example:
+ *
+ * <pre>
+ * BlockExaminer walker = new MinecraftBlockExaminer();
+ * new VectorNode(goal, start, source, new JumpPointExaminer(walker), walker);
+ * </pre>
+ */
+public class JumpPointExaminer implements NeighbourGeneratorBlockExaminer {
+    private final BlockExaminer[] examiners;
+    private float goalRadius = 2;
+    private final AtomicReference<Search> idle = new AtomicReference<>();
+    private int maxJumpLength = 64;
+
+    public JumpPointExaminer(BlockExaminer... examiners) {
+        this.examiners = examiners;
+    }
+
+    @Override
+    public float getCost(BlockSource source, PathPoint point) {
+        return 0;
+    }
+
+    @Override
+    public List<PathPoint> getNeighbours(BlockSource source, PathPoint point) {
+        PathPoint parent = point.getParentPoint();
+        Vector pos = point.getVector();
+        int x = pos.getBlockX(), y = pos.getBlockY(), z = pos.getBlockZ();
+        if (parent == null) {
+            // a new search, so forget the blocks classified by the last one
+            idle.set(null);
+            return expandFully(source, point);
+        }
+        int dx = Integer.signum(x - parent.getVector().getBlockX());
+        int dz = Integer.signum(z - parent.getVector().getBlockZ());
+        if (parent.getVector().getBlockY() != y || dx == 0 && dz == 0)
+            return expandFully(source, point);
+        Search search = obtainSearch(source, point.getGoal(), y);
+        try {
+            if (search.classify(x, z) != OPEN || search.hasSpecialNeighbour(x, z))
+                return expandFully(source, point);
+            return getJumpPoints(point, search, x, z, dx, dz);
+        } finally {
+            idle.set(search);
+        }
+    }
+
+    private List<PathPoint> getJumpPoints(PathPoint point, Search search, int x, int z, int dx, int dz) {
+        List<PathPoint> neighbours = Lists.newArrayList();
+        if (dx != 0 && dz != 0) {
+            boolean openX = search.isOpen(x + dx, z), openZ = search.isOpen(x, z + dz);
+            if (openZ) {
+                addJumpPoint(neighbours, point, search, x, z, 0, dz);
+            }
+            if (openX) {
+                addJumpPoint(neighbours, point, search, x, z, dx, 0);
+            }
+            if (openX && openZ) {
+                addJumpPoint(neighbours, point, search, x, z, dx, dz);
+            }
+        } else {
+            // perpendicular offsets for a straight move
+            int px = dz != 0 ? 1 : 0, pz = dx != 0 ? 1 : 0;
+            boolean next = search.isOpen(x + dx, z + dz);
+            boolean left = search.isOpen(x + px, z + pz), right = search.isOpen(x - px, z - pz);
+            if (next) {
+                addJumpPoint(neighbours, point, search, x, z, dx, dz);
+                if (left) {
+                    addJumpPoint(neighbours, point, search, x, z, dx + px, dz + pz);
+                }
+                if (right) {
+                    addJumpPoint(neighbours, point, search, x, z, dx - px, dz - pz);
+                }
+            }
+            if (left) {
+                addJumpPoint(neighbours, point, search, x, z, px, pz);
+            }
+            if (right) {
+                addJumpPoint(neighbours, point, search, x, z, -px, -pz);
+            }
+        }
+        return neighbours;
+    }
+
+    @Override
+    public boolean isParentDependent(BlockSource source, PathPoint point) {
+        return false;
+    }
+
+    @Override
+    public PassableState isPassable(BlockSource source, PathPoint point) {
+        return PassableState.IGNORE;
+    }
+
+    /**
+     * Sets the distance from the goal within which runs stop at every block, which should be at least the goal's
+     * range so that the search can finish.
+     */
+    public JumpPointExaminer setGoalRadius(float radius) {
+        this.goalRadius = radius;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of blocks skipped by a single jump.
+     */
+    public JumpPointExaminer setMaxJumpLength(int length) {
+        this.maxJumpLength = Math.max(1, length);
+        return this;
+    }
+
+    private void addJumpPoint(List<PathPoint> neighbours, PathPoint from, Search search, int x, int z, int dx,
+            int dz) {
+        int length = search.jump(x, z, dx, dz);
+        if (length == -1)
+            return;
+        List<Vector> vectors = Lists.newArrayListWithCapacity(length);
+        for (int i = 1; i <= length; i++) {
+            vectors.add(new Vector(x + dx * i, search.y, z + dz * i));
+        }
+        PathPoint jumpPoint = from.createAtOffset(vectors.get(length - 1));
+        if (length > 1) {
+            jumpPoint.setPathVectors(vectors);
+        }
+        neighbours.add(jumpPoint);
+    }
+
+    /**
+     * Returns the {@link Search} of the current search, keeping the blocks it has already classified, or a new one if
+     * the source has changed or another thread is using it.
+     */
+    private Search obtainSearch(BlockSource source, Vector goal, int y) {
+        Search search = idle.getAndSet(null);
+        if (search == null || search.source != source) {
+            search = new Search(source);
+        }
+        search.goal = goal;
+        search.y = y;
+        return search;
+    }
+
+    private static List<PathPoint> expandFully(BlockSource source, PathPoint point) {
+        if (point instanceof VectorNode)
+            return ((VectorNode) point).getNeighbours(source, point);
+        List<PathPoint> neighbours = Lists.newArrayList();
+        Vector pos = point.getVector();
+        for (int x = -1; x <= 1; x++) {
+            for (int y = -1; y <= 1; y++) {
+                for (int z = -1; z <= 1; z++) {
+                    if ((x != 0 || y != 0 || z != 0)
+                            && SpigotUtil.checkYSafe(pos.getBlockY() + y, source.getWorld())) {
+                        neighbours.add(point.createAtOffset(pos.clone().add(new Vector(x, y, z))));
+                    }
+                }
+            }
+        }
+        return neighbours;
+    }
+
+    private static class ProbePoint implements PathPoint {
+        private boolean calledBack;
+        private ProbePoint parent;
+        private final Vector vector = new Vector();
+
+        @Override
+        public void addCallback(PathCallback callback) {
+            calledBack = true;
+        }
+
+        @Override
+        public PathPoint createAtOffset(Vector vector) {
+            ProbePoint point = new ProbePoint();
+            point.parent = this;
+            point.vector.copy(vector);
+            return point;
+        }
+
+        @Override
+        public Vector getGoal() {
+            return null;
+        }
+
+        @Override
+        public PathPoint getParentPoint() {
+            return parent;
+        }
+
+        @Override
+        public List<Vector> getPathVectors() {
+            return null;
+        }
+
+        @Override
+        public Vector getVector() {
+            return vector;
+        }
+
+        private ProbePoint set(int x, int y, int z) {
+            vector.setX(x).setY(y).setZ(z);
+            calledBack = false;
+            return this;
+        }
+
+        @Override
+        public void setPathVectors(List<Vector> vectors) {
+        }
+
+        @Override
+        public void setVector(Vector vector) {
+            this.vector.copy(vector);
+        }
+    }
+
+    /**
+     * The state of the jumps made while expanding a node on the height level {@code y}. The block classes are keyed by
+     * their full position, so they stay valid across expansions of the same search.
+     */
+    private class Search {
+        private final LongIntHashMap classes = new LongIntHashMap(64, -1);
+        private Vector goal;
+        private final ProbePoint parentProbe = new ProbePoint();
+        private final ProbePoint probe = new ProbePoint();
+        private final BlockSource source;
+        private int y;
+
+        private Search(BlockSource source) {
+            this.source = source;
+            probe.parent = parentProbe;
+        }
+
+        private int classify(int x, int z) {
+            long key = PackedPosition.pack(x, y, z);
+            int cls = classes.get(key);
+            if (cls == -1) {
+                cls = computeClass(x, z);
+                classes.put(key, cls);
+            }
+            return cls;
+        }
+
+        private int computeClass(int x, int z) {
+            if (isUniform(x, z))
+                return OPEN;
+            // a block that cannot be entered at any height from a neighbour on this level acts as a wall
+            for (int dy = -1; dy <= 1; dy++) {
+                if (!SpigotUtil.checkYSafe(y + dy, source.getWorld())) {
+                    continue;
+                }
+                parentProbe.set(x + 1, y, z);
+                if (isPassable(probe.set(x, y + dy, z)))
+                    return SPECIAL;
+            }
+            return BLOCKED;
+        }
+
+        private boolean hasSpecialNeighbour(int x, int z) {
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dz = -1; dz <= 1; dz++) {
+                    if ((dx != 0 || dz != 0) && classify(x + dx, z + dz) == SPECIAL)
+                        return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean isNearGoal(int x, int z) {
+            if (goal == null)
+                return false;
+            double ddx = x - goal.getX(), ddy = y - goal.getY(), ddz = z - goal.getZ();
+            return ddx * ddx + ddy * ddy + ddz * ddz <= goalRadius * goalRadius;
+        }
+
+        private boolean isOpen(int x, int z) {
+            return classify(x, z) == OPEN;
+        }
+
+        private boolean isPassable(ProbePoint point) {
+            boolean passable = false;
+            for (BlockExaminer examiner : examiners) {
+                PassableState state = examiner.isPassable(source, point);
+                if (state == PassableState.IGNORE) {
+                    continue;
+                }
+                passable = state == PassableState.PASSABLE;
+            }
+            return passable;
+        }
+
+        private boolean isUniform(int x, int z) {
+            if (!SpigotUtil.checkYSafe(y + 1, source.getWorld()) || !SpigotUtil.checkYSafe(y - 1, source.getWorld()))
+                return false;
+            Material below = source.getMaterialAt(x, y - 1, z);
+            if (!MaterialTraits.isWalkable(below) || MaterialTraits.isClimbable(below))
+                return false;
+            if (!isEmptySpace(source.getMaterialAt(x, y, z)) || !isEmptySpace(source.getMaterialAt(x, y + 1, z)))
+                return false;
+            parentProbe.set(x + 1, y, z);
+            probe.set(x, y, z);
+            if (!isPassable(probe) || probe.calledBack)
+                return false;
+            for (BlockExaminer examiner : examiners) {
+                if (examiner.getCost(source, probe) != 0)
+                    return false;
+            }
+            return true;
+        }
+
+        /**
+         * Follows a run from the given block in the given direction.
+         *
+         * @return The number of blocks to the jump point, or -1 if the run ends without one
+         */
+        private int jump(int x, int z, int dx, int dz) {
+            boolean diagonal = dx != 0 && dz != 0;
+            for (int length = 1; length <= maxJumpLength; length++) {
+                if (!isOpen(x + dx, z + dz) || diagonal && (!isOpen(x + dx, z) || !isOpen(x, z + dz)))
+                    return -1;
+                x += dx;
+                z += dz;
+                if (length == maxJumpLength || isNearGoal(x, z) || hasSpecialNeighbour(x, z))
+                    return length;
+                if (diagonal) {
+                    if (jump(x, z, dx, 0) != -1 || jump(x, z, 0, dz) != -1)
+                        return length;
+                } else if (dx != 0) {
+                    if (isOpen(x, z - 1) && !isOpen(x - dx, z - 1) || isOpen(x, z + 1) && !isOpen(x - dx, z + 1))
+                        return length;
+                } else if (isOpen(x - 1, z) && !isOpen(x - 1, z - dz) || isOpen(x + 1, z) && !isOpen(x + 1, z - dz))
+                    return length;
+            }
+            return -1;
+        }
+    }
+
+    private static boolean isEmptySpace(Material mat) {
+        return !MaterialTraits.isSolid(mat) && !MaterialTraits.isPartial(mat) && !MaterialTraits.isLiquid(mat)
+                && !MaterialTraits.isClimbable(mat);
+    }
+
+    private static final int BLOCKED = 1;
+    private static final int OPEN = 0;
+    private static final int SPECIAL = 2;
+}
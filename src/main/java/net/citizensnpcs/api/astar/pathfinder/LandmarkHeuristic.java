@@ -0,0 +1,380 @@
+package net.citizensnpcs.api.astar.pathfinder;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.bukkit.util.Vector;
+
+import net.citizensnpcs.api.astar.AStarNode;
+import net.citizensnpcs.api.util.LongIntHashMap;
+
+/**
+ * An ALT (A*, landmarks and triangle inequality) heuristic for a static region. The walking distance from every
+ * reachable block in the region to each of a few landmark blocks is precomputed by reverse Dijkstra searches, after
+ * which the distance from a block <code>n</code> to a goal is bounded below by <code>d(n, L) - d(goal, L)</code> for
+ * every landmark <code>L</code>. In maze-like regions this bound is far tighter than the straight line distance, so
+ * searches using {@link VectorGoal#setLandmarks(LandmarkHeuristic)} expand far fewer nodes.
+ * <p>
+ * Distances are measured within the region only, so the bound is admissible for routes that stay inside it. They are
+ * stored in sixteenths of a block as one <code>char</code> per block and landmark, and can be persisted with
+ * {@link #save(OutputStream)} since the precomputation is expensive. The heuristic must be recomputed if the blocks
+ * of the region change.
+ */
+public class LandmarkHeuristic {
+    private final char[][] distances;
+    private final int fingerprint;
+    private final LongIntHashMap index;
+    private final long[] landmarks;
+    private final int[] max;
+    private final int[] min;
+    private final long[] positions;
+    private final UUID world;
+
+    private LandmarkHeuristic(UUID world, int fingerprint, int[] min, int[] max, long[] landmarks, long[] positions,
+            char[][] distances) {
+        this.world = world;
+        this.fingerprint = fingerprint;
+        this.min = min;
+        this.max = max;
+        this.landmarks = landmarks;
+        this.positions = positions;
+        this.distances = distances;
+        this.index = new LongIntHashMap(Math.max(16, positions.length), -1);
+        for (int i = 0; i < positions.length; i++) {
+            index.put(positions[i], i);
+        }
+    }
+
+    /**
+     * Returns a lower bound on the walking distance from a block to the goal.
+     *
+     * @param x
+     *            The block x
+     * @param y
+     *            The block y
+     * @param z
+     *            The block z
+     * @param goalDistances
+     *            The goal's landmark distances from {@link #getDistances(Vector)}
+     * @return The bound, which is 0 if nothing is known about the block
+     */
+    public float estimate(int x, int y, int z, float[] goalDistances) {
+        if (goalDistances == null)
+            return 0;
+        int idx = index.get(PackedPosition.pack(x, y, z));
+        if (idx == -1)
+            return 0;
+        float best = 0;
+        for (int i = 0; i < landmarks.length; i++) {
+            char distance = distances[i][idx];
+            if (distance == UNREACHABLE || Float.isNaN(goalDistances[i])) {
+                continue;
+            }
+            best = Math.max(best, distance / SCALE - goalDistances[i]);
+        }
+        // each stored distance is rounded down by less than one unit
+        return Math.max(0, best - 1 / SCALE);
+    }
+
+    /**
+     * Returns the distances from a block to every landmark, for use as the goal distances of
+     * {@link #estimate(int, int, int, float[])}.
+     *
+     * @return The distances, with {@link Float#NaN} for unreachable landmarks, or <code>null</code> if the block was
+     *         not reached by the precomputation
+     */
+    public float[] getDistances(Vector block) {
+        int idx = index.get(PackedPosition.pack(block));
+        if (idx == -1)
+            return null;
+        float[] result = new float[landmarks.length];
+        for (int i = 0; i < landmarks.length; i++) {
+            char distance = distances[i][idx];
+            result[i] = distance == UNREACHABLE ? Float.NaN : distance / SCALE;
+        }
+        return result;
+    }
+
+    /**
+     * @return The examiner fingerprint the distances were computed with, see
+     *         {@link PathCache#fingerprint(BlockExaminer...)}
+     */
+    public int getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * @return The landmark blocks
+     */
+    public Vector[] getLandmarks() {
+        Vector[] result = new Vector[landmarks.length];
+        for (int i = 0; i < landmarks.length; i++) {
+            result[i] = PackedPosition.toVector(landmarks[i]);
+        }
+        return result;
+    }
+
+    /**
+     * @return The world of the region
+     */
+    public UUID getWorld() {
+        return world;
+    }
+
+    /**
+     * @return Whether the block lies inside the region
+     */
+    public boolean isInRegion(int x, int y, int z) {
+        return x >= min[0] && y >= min[1] && z >= min[2] && x <= max[0] && y <= max[1] && z <= max[2];
+    }
+
+    /**
+     * Writes the heuristic to a compressed stream, which is left open.
+     *
+     * @see #load(InputStream)
+     */
+    public void save(OutputStream stream) throws IOException {
+        GZIPOutputStream gzip = new GZIPOutputStream(stream);
+        DataOutputStream out = new DataOutputStream(gzip);
+        out.writeInt(MAGIC);
+        out.writeLong(world.getMostSignificantBits());
+        out.writeLong(world.getLeastSignificantBits());
+        out.writeInt(fingerprint);
+        for (int i = 0; i < 3; i++) {
+            out.writeInt(min[i]);
+            out.writeInt(max[i]);
+        }
+        out.writeInt(landmarks.length);
+        for (long landmark : landmarks) {
+            out.writeLong(landmark);
+        }
+        out.writeInt(positions.length);
+        for (long position : positions) {
+            out.writeLong(position);
+        }
+        for (char[] table : distances) {
+            for (char distance : table) {
+                out.writeChar(distance);
+            }
+        }
+        out.flush();
+        gzip.finish();
+    }
+
+    /**
+     * @return The number of blocks with precomputed distances
+     */
+    public int size() {
+        return positions.length;
+    }
+
+    /**
+     * The shared block numbering and search state of a precomputation.
+     */
+    private static class Builder {
+        private final LongIntHashMap index = new LongIntHashMap(1024, -1);
+        private final VectorNode.PathInfo info;
+        private final int[] max;
+        private final int[] min;
+        private long[] positions = new long[1024];
+        private int size;
+
+        private Builder(VectorNode.PathInfo info, int[] min, int[] max) {
+            this.info = info;
+            this.min = min;
+            this.max = max;
+        }
+
+        private int indexOf(long position) {
+            int idx = index.get(position);
+            if (idx != -1)
+                return idx;
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+            }
+            idx = size++;
+            positions[idx] = position;
+            index.put(position, idx);
+            return idx;
+        }
+
+        private boolean isInRegion(Vector vector) {
+            int x = vector.getBlockX(), y = vector.getBlockY(), z = vector.getBlockZ();
+            return x >= min[0] && y >= min[1] && z >= min[2] && x <= max[0] && y <= max[1] && z <= max[2];
+        }
+
+        /**
+         * Runs a reverse Dijkstra search to the given block over the region.
+         *
+         * @return The quantised distance to the block, indexed by block number
+         */
+        private char[] search(long target) {
+            float[] costs = new float[Math.max(16, size)];
+            Arrays.fill(costs, Float.POSITIVE_INFINITY);
+            PriorityQueue<QueueEntry> open = new PriorityQueue<>();
+            int root = indexOf(target);
+            costs = ensureCapacity(costs, root);
+            costs[root] = 0;
+            open.add(new QueueEntry(new VectorNode(null, PackedPosition.toVector(target), info), root, 0));
+            while (!open.isEmpty()) {
+                QueueEntry entry = open.poll();
+                if (entry.cost > costs[entry.idx]) {
+                    continue;
+                }
+                for (AStarNode neighbour : entry.node.getReverseNeighbours()) {
+                    VectorNode from = (VectorNode) neighbour;
+                    if (!isInRegion(from.location)) {
+                        continue;
+                    }
+                    int idx = indexOf(PackedPosition.pack(from.location));
+                    costs = ensureCapacity(costs, idx);
+                    float cost = entry.cost + from.distance(entry.node);
+                    if (cost < costs[idx]) {
+                        costs[idx] = cost;
+                        open.add(new QueueEntry(from, idx, cost));
+                    }
+                }
+            }
+            char[] table = new char[size];
+            for (int i = 0; i < size; i++) {
+                table[i] = quantise(i < costs.length ? costs[i] : Float.POSITIVE_INFINITY);
+            }
+            return table;
+        }
+    }
+
+    private static class QueueEntry implements Comparable<QueueEntry> {
+        private final float cost;
+        private final int idx;
+        private final VectorNode node;
+
+        private QueueEntry(VectorNode node, int idx, float cost) {
+            this.node = node;
+            this.idx = idx;
+            this.cost = cost;
+        }
+
+        @Override
+        public int compareTo(QueueEntry other) {
+            return Float.compare(cost, other.cost);
+        }
+    }
+
+    /**
+     * Precomputes the heuristic for a region. Landmarks are chosen by farthest point selection: the first is the
+     * block farthest from the seed, and each further landmark is the block farthest from every landmark so far, which
+     * places them around the edges of the region where they give the tightest bounds. The searches read every block
+     * of the region, so a large region should be precomputed off the server thread from an
+     * {@link AsyncChunkSnapshotBlockSource}.
+     *
+     * @param source
+     *            The block source covering the region
+     * @param min
+     *            The minimum corner of the region
+     * @param max
+     *            The maximum corner of the region
+     * @param seed
+     *            A walkable block inside the region from which the rest is reachable
+     * @param count
+     *            The number of landmarks
+     * @param examiners
+     *            The examiners used for searches, which must not depend on the goal
+     * @return The heuristic
+     */
+    public static LandmarkHeuristic compute(BlockSource source, Vector min, Vector max, Vector seed, int count,
+            BlockExaminer... examiners) {
+        BlockExaminer[] used = examiners == null ? new BlockExaminer[0] : examiners;
+        int[] lo = { Math.min(min.getBlockX(), max.getBlockX()), Math.min(min.getBlockY(), max.getBlockY()),
+                Math.min(min.getBlockZ(), max.getBlockZ()) };
+        int[] hi = { Math.max(min.getBlockX(), max.getBlockX()), Math.max(min.getBlockY(), max.getBlockY()),
+                Math.max(min.getBlockZ(), max.getBlockZ()) };
+        Builder builder = new Builder(new VectorNode.PathInfo(source, used, null, null), lo, hi);
+        char[] nearest = builder.search(PackedPosition.pack(seed));
+        long[] chosen = new long[Math.max(1, count)];
+        char[][] tables = new char[chosen.length][];
+        for (int i = 0; i < chosen.length; i++) {
+            int farthest = 0;
+            for (int idx = 1; idx < nearest.length; idx++) {
+                if (nearest[idx] != UNREACHABLE
+                        && (nearest[farthest] == UNREACHABLE || nearest[idx] > nearest[farthest])) {
+                    farthest = idx;
+                }
+            }
+            chosen[i] = builder.positions[farthest];
+            tables[i] = builder.search(chosen[i]);
+            char[] merged = new char[builder.size];
+            for (int idx = 0; idx < merged.length; idx++) {
+                char distance = idx < nearest.length ? nearest[idx] : UNREACHABLE;
+                merged[idx] = i == 0 ? tables[i][idx] : (char) Math.min(distance, tables[i][idx]);
+            }
+            nearest = merged;
+        }
+        for (int i = 0; i < tables.length; i++) {
+            int length = tables[i].length;
+            tables[i] = Arrays.copyOf(tables[i], builder.size);
+            Arrays.fill(tables[i], length, builder.size, UNREACHABLE);
+        }
+        return new LandmarkHeuristic(source.getWorld().getUID(), PathCache.fingerprint(used), lo, hi, chosen,
+                Arrays.copyOf(builder.positions, builder.size), tables);
+    }
+
+    private static float[] ensureCapacity(float[] costs, int idx) {
+        if (idx < costs.length)
+            return costs;
+        int length = costs.length;
+        float[] grown = Arrays.copyOf(costs, Math.max(idx + 1, length * 2));
+        Arrays.fill(grown, length, grown.length, Float.POSITIVE_INFINITY);
+        return grown;
+    }
+
+    /**
+     * Reads a heuristic written by {@link #save(OutputStream)}. The stream is left open.
+     *
+     * @throws IOException
+     *             If the stream could not be read or does not contain a heuristic
+     */
+    public static LandmarkHeuristic load(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new GZIPInputStream(stream));
+        if (in.readInt() != MAGIC)
+            throw new IOException("not a landmark heuristic");
+        UUID world = new UUID(in.readLong(), in.readLong());
+        int fingerprint = in.readInt();
+        int[] min = new int[3], max = new int[3];
+        for (int i = 0; i < 3; i++) {
+            min[i] = in.readInt();
+            max[i] = in.readInt();
+        }
+        long[] landmarks = new long[in.readInt()];
+        for (int i = 0; i < landmarks.length; i++) {
+            landmarks[i] = in.readLong();
+        }
+        long[] positions = new long[in.readInt()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = in.readLong();
+        }
+        char[][] distances = new char[landmarks.length][positions.length];
+        for (char[] table : distances) {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = in.readChar();
+            }
+        }
+        return new LandmarkHeuristic(world, fingerprint, min, max, landmarks, positions, distances);
+    }
+
+    private static char quantise(float cost) {
+        double units = Math.floor(cost * SCALE);
+        return units >= UNREACHABLE ? UNREACHABLE : (char) units;
+    }
+
+    private static final int MAGIC = 0x414C5401;
+    private static final float SCALE = 16;
+    private static final char UNREACHABLE = Character.MAX_VALUE;
+}
@@ -0,0 +1,235 @@
+package net.citizensnpcs.api.astar.pathfinder;
+
+import org.bukkit.Material;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.block.data.Waterlogged;
+import org.bukkit.block.data.type.Slab;
+import org.bukkit.block.data.type.TrapDoor;
+
+import net.citizensnpcs.api.util.SpigotUtil;
+
+/**
+ * Precomputed pathfinding properties of every {@link Material}, stored in arrays indexed by
+ * {@link Material#ordinal()}. Built once when the class is loaded so that {@link BlockExaminer}s can answer material
+ * checks without consulting sets or scanning material names.
+ */
+public class MaterialTraits {
+    private MaterialTraits() {
+    }
+
+    /**
+     * @return Whether the material can be climbed like a ladder
+     */
+    public static boolean isClimbable(Material mat) {
+        return has(mat, CLIMBABLE);
+    }
+
+    /**
+     * @return Whether the material is a door, excluding trapdoors
+     */
+    public static boolean isDoor(Material mat) {
+        return has(mat, DOOR);
+    }
+
+    /**
+     * @return Whether the material is a fence gate
+     */
+    public static boolean isGate(Material mat) {
+        return has(mat, GATE);
+    }
+
+    /**
+     * @return Whether the material is lava
+     */
+    public static boolean isLava(Material mat) {
+        return has(mat, LAVA);
+    }
+
+    /**
+     * @return Whether the material is water or lava
+     */
+    public static boolean isLiquid(Material mat) {
+        return has(mat, LIQUID);
+    }
+
+    /**
+     * @return Whether the material is too tall to be jumped onto, such as fences and walls
+     */
+    public static boolean isNotJumpable(Material mat) {
+        return has(mat, NOT_JUMPABLE);
+    }
+
+    /**
+     * @return Whether an entity's passability through the material depends on its {@link BlockData}, such as slabs and
+     *         trapdoors
+     */
+    public static boolean isPartial(Material mat) {
+        return has(mat, PARTIAL);
+    }
+
+    /**
+     * @return Whether the material is scaffolding
+     */
+    public static boolean isScaffolding(Material mat) {
+        return has(mat, SCAFFOLDING);
+    }
+
+    /**
+     * @return Whether the material slows down movement through it, such as cobwebs
+     */
+    public static boolean isSlowing(Material mat) {
+        return has(mat, SLOWING);
+    }
+
+    /**
+     * @return Whether the material slows down or destabilises movement on top of it, such as soul sand and ice
+     */
+    public static boolean isSlowSurface(Material mat) {
+        return has(mat, SLOW_SURFACE);
+    }
+
+    /**
+     * @return Whether the material is solid
+     */
+    public static boolean isSolid(Material mat) {
+        return has(mat, SOLID);
+    }
+
+    /**
+     * @return Whether the material is solid and safe to stand on
+     */
+    public static boolean isWalkable(Material mat) {
+        return has(mat, WALKABLE);
+    }
+
+    /**
+     * @return Whether the material can be waterlogged, so that its {@link BlockData} must be checked for water
+     */
+    public static boolean isWaterloggable(Material mat) {
+        return has(mat, WATERLOGGABLE);
+    }
+
+    /**
+     * @return The additional cost of moving through the material, such as through liquids
+     */
+    public static float getCost(Material mat) {
+        return COSTS[mat.ordinal()];
+    }
+
+    private static void add(String name, int flag) {
+        try {
+            FLAGS[Material.valueOf(name).ordinal()] |= flag;
+        } catch (IllegalArgumentException e) {
+            // not present in this version
+        }
+    }
+
+    private static boolean has(Material mat, int flag) {
+        return (FLAGS[mat.ordinal()] & flag) != 0;
+    }
+
+    private static void setCost(String name, float cost) {
+        try {
+            COSTS[Material.valueOf(name).ordinal()] = cost;
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    private static final int CLIMBABLE = 1 << 0;
+    private static final int DOOR = 1 << 1;
+    private static final int GATE = 1 << 2;
+    private static final int LAVA = 1 << 3;
+    private static final int LIQUID = 1 << 4;
+    private static final int NOT_JUMPABLE = 1 << 5;
+    private static final int PARTIAL = 1 << 6;
+    private static final int SCAFFOLDING = 1 << 7;
+    private static final int SLOW_SURFACE = 1 << 8;
+    private static final int SLOWING = 1 << 9;
+    private static final int SOLID = 1 << 10;
+    private static final int UNWALKABLE = 1 << 11;
+    private static final int WALKABLE = 1 << 12;
+    private static final int WATERLOGGABLE = 1 << 13;
+    private static final float[] COSTS = new float[Material.values().length];
+    private static final int[] FLAGS = new int[Material.values().length];
+
+    static {
+        boolean supportBlockData = SpigotUtil.isUsing1_13API();
+        for (Material mat : Material.values()) {
+            String name = mat.name();
+            int flags = 0;
+            try {
+                if (mat.isSolid()) {
+                    flags |= SOLID;
+                }
+            } catch (Throwable t) {
+            }
+            if (name.contains("DOOR") && !name.contains("TRAPDOOR")) {
+                flags |= DOOR;
+            }
+            if (name.contains("GATE") && !name.contains("GATEWAY")) {
+                flags |= GATE;
+            }
+            if (name.contains("SCAFFOLDING")) {
+                flags |= SCAFFOLDING;
+            }
+            if (supportBlockData && mat.isBlock() && !name.startsWith("LEGACY_")) {
+                try {
+                    BlockData data = mat.createBlockData();
+                    if (data instanceof Waterlogged) {
+                        flags |= WATERLOGGABLE;
+                    }
+                    if (data instanceof Slab || data instanceof TrapDoor) {
+                        flags |= PARTIAL;
+                    }
+                } catch (Throwable t) {
+                    supportBlockData = false;
+                }
+            }
+            FLAGS[mat.ordinal()] = flags;
+        }
+        if (SpigotUtil.isUsing1_13API() && !supportBlockData) {
+            // could not inspect block data, so assume any block may need its data checked
+            for (Material mat : Material.values()) {
+                if (mat.isBlock()) {
+                    FLAGS[mat.ordinal()] |= PARTIAL | WATERLOGGABLE;
+                }
+            }
+        }
+        add("LADDER", CLIMBABLE);
+        add("VINE", CLIMBABLE);
+        add("SCAFFOLDING", CLIMBABLE);
+        add("WATER", LIQUID);
+        add("LAVA", LIQUID | LAVA);
+        add("AIR", UNWALKABLE);
+        add("CACTUS", UNWALKABLE);
+        add(SpigotUtil.isUsing1_13API() ? "COBWEB" : "WEB", SLOWING);
+        add("SOUL_SAND", SLOW_SURFACE);
+        add("ICE", SLOW_SURFACE);
+        for (String fence : new String[] { "SPRUCE_FENCE", "BIRCH_FENCE", "JUNGLE_FENCE", "ACACIA_FENCE",
+                "DARK_OAK_FENCE" }) {
+            add(fence, NOT_JUMPABLE);
+        }
+        if (!SpigotUtil.isUsing1_13API()) {
+            add("STATIONARY_LAVA", LIQUID | LAVA | UNWALKABLE);
+            add("STATIONARY_WATER", LIQUID);
+            for (String fence : new String[] { "FENCE", "IRON_FENCE", "NETHER_FENCE", "COBBLE_WALL" }) {
+                add(fence, NOT_JUMPABLE);
+            }
+        } else {
+            add("CAMPFIRE", UNWALKABLE);
+            for (String fence : new String[] { "OAK_FENCE", "NETHER_BRICK_FENCE", "COBBLESTONE_WALL",
+                    "MANGROVE_FENCE", "CHERRY_FENCE" }) {
+                add(fence, NOT_JUMPABLE);
+            }
+        }
+        for (int i = 0; i < FLAGS.length; i++) {
+            if ((FLAGS[i] & SOLID) != 0 && (FLAGS[i] & UNWALKABLE) == 0) {
+                FLAGS[i] |= WALKABLE;
+            }
+        }
+        setCost("WATER", 2F);
+        setCost("STATIONARY_WATER", 2F);
+        setCost("LAVA", 4F);
+        setCost("STATIONARY_LAVA", 4F);
+    }
+}
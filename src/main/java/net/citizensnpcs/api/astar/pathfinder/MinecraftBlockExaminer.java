@@ -1,9 +1,7 @@
 package net.citizensnpcs.api.astar.pathfinder;
 
-import java.util.EnumSet;
 import java.util.List;
 import java.util.Random;
-import java.util.Set;
 import java.util.function.Function;
 
 import org.bukkit.Location;
@@ -16,8 +14,6 @@ import org.bukkit.block.data.type.Slab;
 import org.bukkit.block.data.type.TrapDoor;
 import org.bukkit.util.Vector;
 
-import com.google.common.collect.Lists;
-
 import net.citizensnpcs.api.astar.pathfinder.PathPoint.PathCallback;
 import net.citizensnpcs.api.npc.NPC;
 import net.citizensnpcs.api.util.SpigotUtil;
@@ -29,36 +25,36 @@ public class MinecraftBlockExaminer implements BlockExaminer {
         Material above = source.getMaterialAt(pos.getBlockX(), pos.getBlockY() + 1, pos.getBlockZ());
         Material below = source.getMaterialAt(pos.getBlockX(), pos.getBlockY() - 1, pos.getBlockZ());
         Material in = source.getMaterialAt(pos);
-        if (above == WEB || in == WEB || below == Material.SOUL_SAND || below == Material.ICE)
+        if (MaterialTraits.isSlowing(above) || MaterialTraits.isSlowing(in) || MaterialTraits.isSlowSurface(below))
             return 2F;
-        if (isLiquidOrInLiquid(source.getWorld().getBlockAt(pos.getBlockX(), pos.getBlockY(), pos.getBlockZ()))) {
-            if (in == Material.LAVA)
-                return 4F;
+        if (MaterialTraits.isLiquid(in))
+            return MaterialTraits.getCost(in);
+        if (MaterialTraits.isWaterloggable(in) && isLiquidOrInLiquid(in, source.getBlockDataAt(pos)))
             return 2F;
-        }
         return 0F; // TODO: add light level-specific costs?
     }
 
     private boolean isClimbable(Material mat) {
-        return CLIMBABLE.contains(mat);
+        return MaterialTraits.isClimbable(mat);
     }
 
     @Override
     public PassableState isPassable(BlockSource source, PathPoint point) {
         Vector pos = point.getVector();
-        if (!SpigotUtil.checkYSafe(pos.getBlockY(), source.getWorld()))
+        int x = pos.getBlockX(), y = pos.getBlockY(), z = pos.getBlockZ();
+        if (!SpigotUtil.checkYSafe(y, source.getWorld()))
             return PassableState.UNPASSABLE;
 
-        Block above = source.getBlockAt(pos.getBlockX(), pos.getBlockY() + 1, pos.getBlockZ());
-        Material below = source.getMaterialAt(pos.getBlockX(), pos.getBlockY() - 1, pos.getBlockZ());
-        Block in = source.getBlockAt(pos);
-        boolean canStand = canStandOn(below) || isLiquid(in.getType(), below) || isClimbable(below);
+        Material above = source.getMaterialAt(x, y + 1, z);
+        Material below = source.getMaterialAt(x, y - 1, z);
+        Material in = source.getMaterialAt(x, y, z);
+        boolean canStand = canStandOn(below) || isLiquid(in, below) || isClimbable(below);
         if (!canStand)
             return PassableState.UNPASSABLE;
 
-        if (isClimbable(in.getType()) && (isClimbable(above.getType()) || isClimbable(below))) {
+        if (isClimbable(in) && (isClimbable(above) || isClimbable(below))) {
             point.addCallback(new LadderClimber());
-        } else if (!canStandIn(above) || !canStandIn(in))
+        } else if (!canStandIn(source, above, x, y + 1, z) || !canStandIn(source, in, x, y, z))
             return PassableState.UNPASSABLE;
         if (!canJumpOn(below)) {
             if (point.getParentPoint() == null)
@@ -72,6 +68,12 @@ public class MinecraftBlockExaminer implements BlockExaminer {
         return PassableState.PASSABLE;
     }
 
+    @Override
+    public boolean isParentDependent(BlockSource source, PathPoint point) {
+        Vector pos = point.getVector();
+        return !canJumpOn(source.getMaterialAt(pos.getBlockX(), pos.getBlockY() - 1, pos.getBlockZ()));
+    }
+
     private class LadderClimber implements PathCallback {
         boolean added = false;
 
@@ -86,7 +88,7 @@ public class MinecraftBlockExaminer implements BlockExaminer {
                 boolean sneakingForScaffolding;
 
                 private boolean isScaffolding(Material type) {
-                    return type.name().contains("SCAFFOLDING");
+                    return MaterialTraits.isScaffolding(type);
                 }
 
                 @Override
@@ -124,33 +126,47 @@ public class MinecraftBlockExaminer implements BlockExaminer {
         }
     }
 
-    private static boolean canJumpOn(Material mat) {
-        return !NOT_JUMPABLE.contains(mat);
+    static boolean canJumpOn(Material mat) {
+        return !MaterialTraits.isNotJumpable(mat);
+    }
+
+    static boolean canStandIn(BlockSource source, Material type, int x, int y, int z) {
+        if (MaterialTraits.isSolid(type))
+            return false;
+        if (!MaterialTraits.isPartial(type))
+            return true;
+        return canStandIn(type, source.getBlockDataAt(x, y, z));
     }
 
     public static boolean canStandIn(Block... blocks) {
         boolean passable = true;
         for (Block block : blocks) {
-            passable &= !block.getType().isSolid();
-            if (SpigotUtil.isUsing1_13API()) {
-                if (block.getBlockData() instanceof Slab) {
-                    Slab slab = (Slab) block.getBlockData();
-                    if (slab.getType() != Slab.Type.BOTTOM) {
-                        passable = false;
-                    }
-                } else if (block.getBlockData() instanceof TrapDoor) {
-                    TrapDoor trapdoor = (TrapDoor) block.getBlockData();
-                    passable &= trapdoor.isOpen();
-                }
-            }
+            passable &= canStandIn(block.getType(), SpigotUtil.isUsing1_13API() ? block.getBlockData() : null);
         }
         return passable;
     }
 
+    /**
+     * Checks whether an entity can stand inside a block using only its {@link Material} and {@link BlockData}, so that
+     * snapshot-backed {@link BlockSource}s can answer without touching the world.
+     *
+     * @param data
+     *            The block data, may be null on versions without {@link BlockData}
+     */
+    public static boolean canStandIn(Material type, BlockData data) {
+        if (MaterialTraits.isSolid(type))
+            return false;
+        if (data instanceof Slab)
+            return ((Slab) data).getType() == Slab.Type.BOTTOM;
+        if (data instanceof TrapDoor)
+            return ((TrapDoor) data).isOpen();
+        return true;
+    }
+
     public static boolean canStandIn(Material... mat) {
         boolean passable = true;
         for (Material m : mat) {
-            passable &= !m.isSolid();
+            passable &= !MaterialTraits.isSolid(m);
         }
         return passable;
     }
@@ -166,7 +182,7 @@ public class MinecraftBlockExaminer implements BlockExaminer {
     }
 
     public static boolean canStandOn(Material mat) {
-        return !UNWALKABLE.contains(mat) && mat.isSolid();
+        return MaterialTraits.isWalkable(mat);
     }
 
     public static Location findRandomValidLocation(Location base, int xrange, int yrange) {
@@ -240,16 +256,16 @@ public class MinecraftBlockExaminer implements BlockExaminer {
     }
 
     public static boolean isDoor(Material in) {
-        return in.name().contains("DOOR") && !in.name().contains("TRAPDOOR");
+        return MaterialTraits.isDoor(in);
     }
 
     public static boolean isGate(Material in) {
-        return in.name().contains("GATE") && !in.name().contains("GATEWAY");
+        return MaterialTraits.isGate(in);
     }
 
     public static boolean isLiquid(Material... materials) {
         for (Material mat : materials) {
-            if (LIQUIDS.contains(mat))
+            if (MaterialTraits.isLiquid(mat))
                 return true;
         }
         return false;
@@ -261,49 +277,34 @@ public class MinecraftBlockExaminer implements BlockExaminer {
         if (!SUPPORT_WATERLOGGED)
             return false;
         try {
-            BlockData data = block.getBlockData();
-            return data instanceof Waterlogged && ((Waterlogged) data).isWaterlogged();
+            return isWaterlogged(block.getBlockData());
         } catch (Throwable t) {
             SUPPORT_WATERLOGGED = false;
             return false;
         }
     }
 
-    private static final Set<Material> CLIMBABLE = EnumSet.of(Material.LADDER, Material.VINE);
-    private static final Set<Material> LIQUIDS = EnumSet.of(Material.WATER, Material.LAVA);
-    private static final Set<Material> NOT_JUMPABLE = EnumSet.of(Material.SPRUCE_FENCE, Material.BIRCH_FENCE,
-            Material.JUNGLE_FENCE, Material.ACACIA_FENCE, Material.DARK_OAK_FENCE);
-    private static boolean SUPPORT_WATERLOGGED = true;
-    private static final Set<Material> UNWALKABLE = EnumSet.of(Material.AIR, Material.CACTUS);
-    private static Material WEB = SpigotUtil.isUsing1_13API() ? Material.COBWEB : Material.valueOf("WEB");
-
-    static {
-        if (!SpigotUtil.isUsing1_13API()) {
-            LIQUIDS.add(Material.valueOf("STATIONARY_LAVA"));
-            LIQUIDS.add(Material.valueOf("STATIONARY_WATER"));
-            UNWALKABLE.add(Material.valueOf("STATIONARY_LAVA"));
-            NOT_JUMPABLE.addAll(Lists.newArrayList(Material.valueOf("FENCE"), Material.valueOf("IRON_FENCE"),
-                    Material.valueOf("NETHER_FENCE"), Material.valueOf("COBBLE_WALL")));
-        } else {
-            try {
-                UNWALKABLE.add(Material.valueOf("CAMPFIRE"));
-            } catch (IllegalArgumentException e) {
-                // 1.13
-            }
-            try {
-                CLIMBABLE.add(Material.valueOf("SCAFFOLDING"));
-            } catch (IllegalArgumentException e) {
-            }
-            NOT_JUMPABLE.addAll(Lists.newArrayList(Material.valueOf("OAK_FENCE"),
-                    Material.valueOf("NETHER_BRICK_FENCE"), Material.valueOf("COBBLESTONE_WALL")));
-            try {
-                NOT_JUMPABLE.add(Material.valueOf("MANGROVE_FENCE"));
-            } catch (IllegalArgumentException e) {
-            }
-            try {
-                NOT_JUMPABLE.add(Material.valueOf("CHERRY_FENCE"));
-            } catch (IllegalArgumentException e) {
-            }
+    /**
+     * @see #isLiquidOrInLiquid(Block)
+     * @param data
+     *            The block data, may be null on versions without {@link BlockData}
+     */
+    public static boolean isLiquidOrInLiquid(Material type, BlockData data) {
+        if (isLiquid(type))
+            return true;
+        if (!SUPPORT_WATERLOGGED || data == null || !MaterialTraits.isWaterloggable(type))
+            return false;
+        try {
+            return isWaterlogged(data);
+        } catch (Throwable t) {
+            SUPPORT_WATERLOGGED = false;
+            return false;
         }
     }
+
+    private static boolean isWaterlogged(BlockData data) {
+        return data instanceof Waterlogged && ((Waterlogged) data).isWaterlogged();
+    }
+
+    private static boolean SUPPORT_WATERLOGGED = true;
 }
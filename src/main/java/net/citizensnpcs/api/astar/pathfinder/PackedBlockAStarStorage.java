@@ -0,0 +1,123 @@
+package net.citizensnpcs.api.astar.pathfinder;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+import net.citizensnpcs.api.astar.AStarMachine;
+import net.citizensnpcs.api.astar.AStarNode;
+import net.citizensnpcs.api.astar.AStarStorage;
+import net.citizensnpcs.api.astar.IndexedNodeHeap;
+import net.citizensnpcs.api.astar.SimpleAStarStorage;
+import net.citizensnpcs.api.util.LongIntHashMap;
+
+/**
+ * An {@link AStarStorage} for block-based {@link PathPoint} nodes that keys the open and closed sets by
+ * {@link PackedPosition} in primitive open-addressing tables instead of a {@link java.util.HashMap} of nodes. Each
+ * distinct block gets an entry holding its best g-score, its parent's entry index and whether it is closed. The
+ * frontier is an {@link IndexedNodeHeap} keyed by entry index, so cheaper routes decrease keys in place.
+ *
+ * Use with {@link AStarMachine#createWithStorage(Supplier)} and {@link #FACTORY}.
+ *
+ * @see SimpleAStarStorage
+ */
+public class PackedBlockAStarStorage implements AStarStorage {
+    private boolean[] closed = new boolean[INITIAL_CAPACITY];
+    private final LongIntHashMap entries = new LongIntHashMap(INITIAL_CAPACITY, -1);
+    private float[] g = new float[INITIAL_CAPACITY];
+    private final IndexedNodeHeap heap = new IndexedNodeHeap(INITIAL_CAPACITY);
+    private int[] parents = new int[INITIAL_CAPACITY];
+    private long[] positions = new long[INITIAL_CAPACITY];
+    private int size;
+
+    @Override
+    public void close(AStarNode node) {
+        int entry = getOrCreateEntry(getPosition(node));
+        g[entry] = node.getG();
+        closed[entry] = true;
+    }
+
+    private void ensureCapacity() {
+        if (size < g.length)
+            return;
+        int capacity = g.length << 1;
+        closed = Arrays.copyOf(closed, capacity);
+        g = Arrays.copyOf(g, capacity);
+        positions = Arrays.copyOf(positions, capacity);
+        parents = Arrays.copyOf(parents, capacity);
+    }
+
+    @Override
+    public AStarNode getBestNode() {
+        return heap.peek();
+    }
+
+    private int getOrCreateEntry(long position) {
+        int entry = entries.get(position);
+        if (entry != -1)
+            return entry;
+        ensureCapacity();
+        entry = size++;
+        positions[entry] = position;
+        parents[entry] = -1;
+        closed[entry] = false;
+        g[entry] = Float.POSITIVE_INFINITY;
+        entries.put(position, entry);
+        return entry;
+    }
+
+    /**
+     * Returns the packed position of the parent recorded for the given block, or {@link Long#MIN_VALUE} if the block
+     * has not been seen or has no parent. Allows walking the search tree without retaining the node objects.
+     */
+    public long getParent(long position) {
+        int entry = entries.get(position);
+        if (entry == -1 || parents[entry] == -1)
+            return Long.MIN_VALUE;
+        return positions[parents[entry]];
+    }
+
+    /**
+     * @return The number of distinct blocks that have been opened or closed
+     */
+    public int getVisitedCount() {
+        return size;
+    }
+
+    @Override
+    public void open(AStarNode node) {
+        int entry = getOrCreateEntry(getPosition(node));
+        g[entry] = node.getG();
+        closed[entry] = false;
+        AStarNode parent = getParentNode(node);
+        parents[entry] = parent == null ? -1 : entries.get(getPosition(parent));
+        heap.offer(entry, node);
+    }
+
+    @Override
+    public AStarNode removeBestNode() {
+        return heap.poll();
+    }
+
+    @Override
+    public boolean shouldExamine(AStarNode neighbour) {
+        int entry = entries.get(getPosition(neighbour));
+        return entry == -1 || g[entry] > neighbour.getG();
+    }
+
+    @Override
+    public String toString() {
+        return "PackedBlockAStarStorage [visited=" + size + ", frontier=" + heap.size() + "]";
+    }
+
+    private static AStarNode getParentNode(AStarNode node) {
+        PathPoint parent = ((PathPoint) node).getParentPoint();
+        return parent instanceof AStarNode ? (AStarNode) parent : null;
+    }
+
+    private static long getPosition(AStarNode node) {
+        return PackedPosition.pack(((PathPoint) node).getVector());
+    }
+
+    public static final Supplier<AStarStorage> FACTORY = PackedBlockAStarStorage::new;
+    private static final int INITIAL_CAPACITY = 512;
+}
@@ -0,0 +1,43 @@
+package net.citizensnpcs.api.astar.pathfinder;
+
+import org.bukkit.util.Vector;
+
+/**
+ * Packs block coordinates into a single <code>long</code> using the same layout as Minecraft's block positions: 26
+ * bits of x, 26 bits of z and 12 bits of y.
+ */
+public class PackedPosition {
+    private PackedPosition() {
+    }
+
+    public static long pack(int x, int y, int z) {
+        return (x & XZ_MASK) << X_SHIFT | (z & XZ_MASK) << Z_SHIFT | y & Y_MASK;
+    }
+
+    public static long pack(Vector vector) {
+        return pack(vector.getBlockX(), vector.getBlockY(), vector.getBlockZ());
+    }
+
+    public static Vector toVector(long packed) {
+        return new Vector(unpackX(packed), unpackY(packed), unpackZ(packed));
+    }
+
+    public static int unpackX(long packed) {
+        return (int) (packed >> X_SHIFT);
+    }
+
+    public static int unpackY(long packed) {
+        return (int) (packed << 64 - Y_BITS >> 64 - Y_BITS);
+    }
+
+    public static int unpackZ(long packed) {
+        return (int) (packed << 64 - Z_SHIFT - XZ_BITS >> 64 - XZ_BITS);
+    }
+
+    private static final int XZ_BITS = 26;
+    private static final long XZ_MASK = (1L << XZ_BITS) - 1;
+    private static final int Y_BITS = 12;
+    private static final long Y_MASK = (1L << Y_BITS) - 1;
+    private static final int X_SHIFT = Y_BITS + XZ_BITS;
+    private static final int Z_SHIFT = Y_BITS;
+}
@@ -0,0 +1,146 @@
+package net.citizensnpcs.api.astar.pathfinder;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+
+import net.citizensnpcs.api.astar.pathfinder.BlockExaminer.PassableState;
+import net.citizensnpcs.api.astar.pathfinder.PathPoint.PathCallback;
+import net.citizensnpcs.api.util.LongIntHashMap;
+
+/**
+ * Remembers the combined {@link BlockExaminer} passability and cost of each block position within a single search,
+ * keyed by {@link PackedPosition}. Results are reused for any parent unless one of the examiners reports itself as
+ * {@link BlockExaminer#isParentDependent(BlockSource, PathPoint) parent dependent} at that position, in which case
+ * they are only reused for the same parent. Callbacks added during the original examination are added again to every
+ * point that reuses the result.
+ */
+class PassabilityMemo {
+    private List<PathCallback>[] callbacks = newCallbackArray(INITIAL_CAPACITY);
+    private float[] costs = new float[INITIAL_CAPACITY];
+    private final LongIntHashMap index = new LongIntHashMap(INITIAL_CAPACITY, -1);
+    private long[] parents = new long[INITIAL_CAPACITY];
+    private int size;
+    private byte[] states = new byte[INITIAL_CAPACITY];
+
+    void clear() {
+        index.clear();
+        if (size > 0) {
+            Arrays.fill(callbacks, 0, size, null);
+        }
+        size = 0;
+    }
+
+    private int entry(long key) {
+        int idx = index.get(key);
+        if (idx != -1)
+            return idx;
+        if (size == states.length) {
+            int capacity = size * 2;
+            callbacks = Arrays.copyOf(callbacks, capacity);
+            costs = Arrays.copyOf(costs, capacity);
+            parents = Arrays.copyOf(parents, capacity);
+            states = Arrays.copyOf(states, capacity);
+        }
+        idx = size++;
+        states[idx] = UNKNOWN;
+        costs[idx] = Float.NaN;
+        parents[idx] = UNRESOLVED;
+        callbacks[idx] = null;
+        index.put(key, idx);
+        return idx;
+    }
+
+    float getCost(VectorNode point, BlockSource source, BlockExaminer[] examiners) {
+        int idx = entry(PackedPosition.pack(point.location));
+        long parent = getParentKey(point);
+        if (!Float.isNaN(costs[idx]) && matches(idx, parent))
+            return costs[idx];
+        float cost = 0;
+        for (BlockExaminer examiner : examiners) {
+            cost += examiner.getCost(source, point);
+        }
+        if (!matches(idx, parent)) {
+            resolve(idx, point, parent, source, examiners);
+        }
+        costs[idx] = cost;
+        return cost;
+    }
+
+    /**
+     * @return The number of positions memoised in the current search
+     */
+    int getSize() {
+        return size;
+    }
+
+    boolean isPassable(VectorNode point, BlockSource source, BlockExaminer[] examiners) {
+        int idx = entry(PackedPosition.pack(point.location));
+        long parent = getParentKey(point);
+        if (states[idx] != UNKNOWN && matches(idx, parent)) {
+            List<PathCallback> added = callbacks[idx];
+            if (added != null) {
+                for (int i = 0; i < added.size(); i++) {
+                    point.addCallback(added.get(i));
+                }
+            }
+            return states[idx] == PASSABLE;
+        }
+        int before = point.callbacks == null ? 0 : point.callbacks.size();
+        boolean passable = false;
+        for (BlockExaminer examiner : examiners) {
+            PassableState state = examiner.isPassable(source, point);
+            if (state == PassableState.IGNORE) {
+                continue;
+            }
+            passable = state == PassableState.PASSABLE;
+        }
+        if (!matches(idx, parent)) {
+            resolve(idx, point, parent, source, examiners);
+        }
+        states[idx] = passable ? PASSABLE : UNPASSABLE;
+        callbacks[idx] = point.callbacks == null || point.callbacks.size() == before ? null
+                : ImmutableList.copyOf(point.callbacks.subList(before, point.callbacks.size()));
+        return passable;
+    }
+
+    private boolean matches(int idx, long parent) {
+        return parents[idx] == INDEPENDENT || parents[idx] == parent;
+    }
+
+    private void resolve(int idx, VectorNode point, long parent, BlockSource source, BlockExaminer[] examiners) {
+        boolean dependent = false;
+        for (BlockExaminer examiner : examiners) {
+            if (examiner.isParentDependent(source, point)) {
+                dependent = true;
+                break;
+            }
+        }
+        if (parents[idx] != UNRESOLVED) {
+            // the other cached result belonged to a different parent
+            states[idx] = UNKNOWN;
+            costs[idx] = Float.NaN;
+            callbacks[idx] = null;
+        }
+        parents[idx] = dependent ? parent : INDEPENDENT;
+    }
+
+    private static long getParentKey(VectorNode point) {
+        PathPoint parent = point.getParentPoint();
+        return parent == null ? NO_PARENT : PackedPosition.pack(parent.getVector());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<PathCallback>[] newCallbackArray(int size) {
+        return new List[size];
+    }
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final long INDEPENDENT = Long.MIN_VALUE;
+    private static final long NO_PARENT = Long.MIN_VALUE + 1;
+    private static final byte PASSABLE = 1;
+    private static final long UNRESOLVED = Long.MIN_VALUE + 2;
+    private static final byte UNKNOWN = 0;
+    private static final byte UNPASSABLE = 2;
+}
@@ -1,129 +1,418 @@
 package net.citizensnpcs.api.astar.pathfinder;
 
+import java.util.AbstractList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.NoSuchElementException;
 
+import org.bukkit.Material;
 import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.util.Vector;
 
-import com.google.common.collect.Iterables;
-import com.google.common.collect.Lists;
-
 import net.citizensnpcs.api.astar.Agent;
 import net.citizensnpcs.api.astar.Plan;
 import net.citizensnpcs.api.astar.pathfinder.PathPoint.PathCallback;
 import net.citizensnpcs.api.npc.NPC;
+import net.citizensnpcs.api.util.LongIntHashMap;
 
+/**
+ * A sequence of block positions to walk through. Positions are stored packed as {@link PackedPosition}s, with the
+ * fractional part of each coordinate stored only for paths built from non block-aligned vectors, and
+ * {@link PathCallback}s are indexed sparsely by position. {@link Vector} and {@link Block} objects are only created
+ * by the accessors that return them.
+ */
 public class Path implements Plan {
     private List<Block> blockList;
+    private final int[] callbackIndices;
+    private final List<PathCallback>[] callbacks;
+    private Vector current;
+    private int currentIndex = -1;
     private int index = 0;
-    private final PathEntry[] path;
+    private final float[] offsets;
+    private final long[] positions;
 
+    @SuppressWarnings("unchecked")
     public Path(Collection<Vector> vector) {
-        this.path = Iterables.toArray(
-                Iterables.transform(vector, input -> new PathEntry(input, Collections.<PathCallback> emptyList())),
-                PathEntry.class);
+        positions = new long[vector.size()];
+        float[] fractions = null;
+        int i = 0;
+        for (Vector point : vector) {
+            fractions = store(i++, point, fractions);
+        }
+        offsets = fractions;
+        callbackIndices = new int[0];
+        callbacks = new List[0];
     }
 
+    /**
+     * Creates a path through the positions of the given nodes, ending at the goal. The goal replaces the last entry if
+     * it lies in the same block and is appended otherwise, inheriting the callbacks of the last entry.
+     *
+     * @param goal
+     *            The goal, or <code>null</code> to end the path at the last node
+     */
+    @SuppressWarnings("unchecked")
     Path(Iterable<VectorNode> unfiltered, Vector goal) {
         // possibly expose cullability in an API
-        List<PathEntry> path = Lists.newArrayList();
+        int size = 0, withCallbacks = 0;
+        for (VectorNode node : unfiltered) {
+            int count = node.getPathVectors().size();
+            size += count;
+            if (node.callbacks != null && !node.callbacks.isEmpty()) {
+                withCallbacks += count;
+            }
+        }
+        List<PathCallback> lastCallbacks = null;
+        long[] packed = new long[size + 1];
+        int[] indices = new int[withCallbacks + 1];
+        List<PathCallback>[] lists = new List[withCallbacks + 1];
+        int count = 0, callbackCount = 0;
         for (VectorNode node : unfiltered) {
+            boolean hasCallbacks = node.callbacks != null && !node.callbacks.isEmpty();
             for (Vector vector : node.getPathVectors()) {
-                path.add(new PathEntry(vector, node.callbacks));
+                if (hasCallbacks) {
+                    indices[callbackCount] = count;
+                    lists[callbackCount++] = node.callbacks;
+                }
+                packed[count++] = PackedPosition.pack(vector);
+            }
+            lastCallbacks = node.callbacks;
+        }
+        if (goal == null) {
+            this.positions = Arrays.copyOf(packed, count);
+            this.offsets = null;
+            this.callbackIndices = Arrays.copyOf(indices, callbackCount);
+            this.callbacks = Arrays.copyOf(lists, callbackCount);
+            return;
+        }
+        long goalPosition = PackedPosition.pack(goal);
+        if (packed[count - 1] == goalPosition) {
+            count--;
+            if (callbackCount > 0 && indices[callbackCount - 1] == count) {
+                callbackCount--;
+            }
+        }
+        // the goal entry inherits the callbacks of the last entry
+        if (lastCallbacks != null && !lastCallbacks.isEmpty()) {
+            indices[callbackCount] = count;
+            lists[callbackCount++] = lastCallbacks;
+        }
+        packed[count++] = goalPosition;
+        this.positions = count == packed.length ? packed : Arrays.copyOf(packed, count);
+        this.offsets = store(count - 1, goal, null);
+        this.callbackIndices = Arrays.copyOf(indices, callbackCount);
+        this.callbacks = Arrays.copyOf(lists, callbackCount);
+    }
+
+    /**
+     * Creates a path of block-aligned packed positions, with callbacks for the entries at the given ascending indices.
+     */
+    Path(long[] positions, int[] callbackIndices, List<PathCallback>[] callbacks) {
+        this.positions = positions;
+        this.offsets = null;
+        this.callbackIndices = callbackIndices;
+        this.callbacks = callbacks;
+    }
+
+    /**
+     * Creates an unstarted copy of a path sharing its immutable position and callback storage.
+     */
+    Path(Path other) {
+        positions = other.positions;
+        offsets = other.offsets;
+        callbackIndices = other.callbackIndices;
+        callbacks = other.callbacks;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Path(Path source, int[] kept, int count) {
+        positions = new long[count];
+        float[] fractions = source.offsets == null ? null : new float[count * 3];
+        int[] indices = new int[count];
+        List<PathCallback>[] lists = new List[count];
+        int callbackCount = 0;
+        for (int i = 0; i < count; i++) {
+            int from = kept[i];
+            positions[i] = source.positions[from];
+            if (fractions != null) {
+                System.arraycopy(source.offsets, from * 3, fractions, i * 3, 3);
+            }
+            List<PathCallback> list = source.getCallbacks(from);
+            if (list != null) {
+                indices[callbackCount] = i;
+                lists[callbackCount++] = list;
             }
         }
-        PathEntry goalEntry = new PathEntry(goal, path.get(path.size() - 1).callbacks);
-        Vector last = path.get(path.size() - 1).vector;
-        if (last.getBlockX() == goal.getBlockX() && last.getBlockY() == goal.getBlockY()
-                && last.getBlockZ() == goal.getBlockZ()) {
-            path.set(path.size() - 1, goalEntry);
-        } else {
-            path.add(goalEntry);
+        offsets = fractions;
+        callbackIndices = Arrays.copyOf(indices, callbackCount);
+        callbacks = Arrays.copyOf(lists, callbackCount);
+    }
+
+    private boolean canSkipTo(BlockPredicate walkable, LongIntHashMap cache, int from, int to) {
+        int y = getBlockY(from);
+        for (int i = from + 1; i <= to; i++) {
+            if (getBlockY(i) != y)
+                return false;
+            // callbacks must stay anchored to their blocks
+            if (i < to && getCallbacks(i) != null)
+                return false;
         }
-        this.path = path.toArray(new PathEntry[path.size()]);
+        double x = getBlockX(from) + 0.5, z = getBlockZ(from) + 0.5;
+        double dx = getBlockX(to) + 0.5 - x, dz = getBlockZ(to) + 0.5 - z;
+        int steps = (int) Math.ceil(Math.sqrt(dx * dx + dz * dz) / SMOOTHING_STEP);
+        for (int i = 1; i < steps; i++) {
+            double px = x + dx * i / steps, pz = z + dz * i / steps;
+            for (int corner = 0; corner < 4; corner++) {
+                double cx = px + ((corner & 1) == 0 ? -SMOOTHING_HALF_WIDTH : SMOOTHING_HALF_WIDTH);
+                double cz = pz + ((corner & 2) == 0 ? -SMOOTHING_HALF_WIDTH : SMOOTHING_HALF_WIDTH);
+                if (!isWalkable(walkable, cache, (int) Math.floor(cx), y, (int) Math.floor(cz)))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private Block getBlock(World world, int i) {
+        return world.getBlockAt(getBlockX(i), getBlockY(i), getBlockZ(i));
     }
 
+    /**
+     * Returns a view of the path as blocks, created when each element is accessed.
+     */
     public List<Block> getBlocks(World world) {
-        return Arrays.asList(path).stream()
-                .map(p -> world.getBlockAt(p.vector.getBlockX(), p.vector.getBlockY(), p.vector.getBlockZ()))
-                .collect(Collectors.toList());
+        return new AbstractList<Block>() {
+            @Override
+            public Block get(int i) {
+                return getBlock(world, i);
+            }
+
+            @Override
+            public int size() {
+                return positions.length;
+            }
+        };
+    }
+
+    public int getBlockX(int i) {
+        return PackedPosition.unpackX(positions[i]);
+    }
+
+    public int getBlockY(int i) {
+        return PackedPosition.unpackY(positions[i]);
+    }
+
+    public int getBlockZ(int i) {
+        return PackedPosition.unpackZ(positions[i]);
     }
 
+    List<PathCallback> getCallbacks(int i) {
+        int idx = Arrays.binarySearch(callbackIndices, i);
+        return idx < 0 ? null : callbacks[idx];
+    }
+
+    /**
+     * Returns the current destination. The same instance is returned until the path advances.
+     */
     public Vector getCurrentVector() {
-        return path[index].vector;
+        if (currentIndex != index) {
+            current = getVector(index);
+            currentIndex = index;
+        }
+        return current;
+    }
+
+    /**
+     * @return The index of the current destination
+     */
+    public int getIndex() {
+        return index;
     }
 
+    /**
+     * @return The {@link PackedPosition} of the block at the given index
+     */
+    public long getPackedPosition(int i) {
+        return positions[i];
+    }
+
+    /**
+     * Returns the destinations of the path, creating a {@link Vector} for each element as it is iterated.
+     */
     public Iterable<Vector> getPath() {
-        return Iterables.transform(Arrays.asList(path), input -> input.vector);
+        return () -> new Iterator<Vector>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < positions.length;
+            }
+
+            @Override
+            public Vector next() {
+                if (next >= positions.length)
+                    throw new NoSuchElementException();
+                return getVector(next++);
+            }
+        };
+    }
+
+    /**
+     * Creates the destination at the given index.
+     */
+    public Vector getVector(int i) {
+        long packed = positions[i];
+        Vector vector = new Vector(PackedPosition.unpackX(packed), PackedPosition.unpackY(packed),
+                PackedPosition.unpackZ(packed));
+        if (offsets != null) {
+            vector.setX(vector.getX() + offsets[i * 3]).setY(vector.getY() + offsets[i * 3 + 1])
+                    .setZ(vector.getZ() + offsets[i * 3 + 2]);
+        }
+        return vector;
     }
 
     @Override
     public boolean isComplete() {
-        return index >= path.length;
+        return index >= positions.length;
     }
 
     public boolean isFinalEntry() {
-        return index == path.length - 1;
+        return index == positions.length - 1;
     }
 
     public void run(NPC npc) {
-        path[index].run(npc);
+        List<PathCallback> list = getCallbacks(index);
+        if (list == null)
+            return;
+        World world = npc.getEntity().getWorld();
+        Block block = getBlock(world, index);
+        if (blockList == null) {
+            blockList = getBlocks(world);
+        }
+        for (PathCallback callback : list) {
+            callback.run(npc, block, blockList, index);
+        }
+    }
+
+    /**
+     * @return The number of destinations in the path
+     */
+    public int size() {
+        return positions.length;
+    }
+
+    /**
+     * Returns a copy of this path with straight runs collapsed into single waypoints by string pulling. A waypoint is
+     * skipped only if the entity can walk in a straight line past it on the same level, checked against the blocks of
+     * the {@link BlockSource}: every block brushed by an entity-wide corridor between the remaining waypoints must have
+     * solid floor and free feet and head space without liquids, climbable or slowing blocks. Waypoints with
+     * {@link PathCallback}s, such as doors and ladders, and every change of height are always kept.
+     *
+     * @param source
+     *            The block source to check line of sight against
+     * @return The smoothed path, or this path if nothing could be skipped
+     */
+    public Path smooth(BlockSource source) {
+        return smooth((x, y, z) -> isWalkable(source, x, y, z));
+    }
+
+    /**
+     * Smooths the path as {@link #smooth(BlockSource)} does, using the given test of whether a block position can be
+     * walked through in place of the materials of a {@link BlockSource}.
+     */
+    Path smooth(BlockPredicate walkable) {
+        if (positions.length < 3)
+            return this;
+        LongIntHashMap cache = new LongIntHashMap(64, -1);
+        int[] kept = new int[positions.length];
+        int count = 0;
+        kept[count++] = 0;
+        int anchor = 0;
+        while (anchor < positions.length - 1) {
+            int next = anchor + 1;
+            while (next + 1 < positions.length && canSkipTo(walkable, cache, anchor, next + 1)) {
+                next++;
+            }
+            kept[count++] = next;
+            anchor = next;
+        }
+        return count == positions.length ? this : new Path(this, kept, count);
+    }
+
+    private float[] store(int i, Vector vector, float[] fractions) {
+        int x = vector.getBlockX(), y = vector.getBlockY(), z = vector.getBlockZ();
+        positions[i] = PackedPosition.pack(x, y, z);
+        float fx = (float) (vector.getX() - x), fy = (float) (vector.getY() - y), fz = (float) (vector.getZ() - z);
+        if (fractions == null && (fx != 0 || fy != 0 || fz != 0)) {
+            fractions = new float[positions.length * 3];
+        }
+        if (fractions != null) {
+            fractions[i * 3] = fx;
+            fractions[i * 3 + 1] = fy;
+            fractions[i * 3 + 2] = fz;
+        }
+        return fractions;
     }
 
     @Override
     public String toString() {
-        return Arrays.toString(path);
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < positions.length; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(getVector(i));
+        }
+        return builder.append(']').toString();
     }
 
     @Override
     public void update(Agent agent) {
         if (isComplete())
             return;
-        path[index].onComplete((NPC) agent);
+        List<PathCallback> list = getCallbacks(index);
+        if (list != null) {
+            Block block = getBlock(((NPC) agent).getEntity().getWorld(), index);
+            for (PathCallback callback : list) {
+                callback.onReached((NPC) agent, block);
+            }
+        }
         ++index;
     }
 
-    private class PathEntry {
-        final List<PathCallback> callbacks;
-        final Vector vector;
-
-        private PathEntry(Vector vector, List<PathCallback> callbacks) {
-            this.vector = vector;
-            this.callbacks = callbacks;
-        }
+    /**
+     * Tests a block position, see {@link Path#smooth(BlockPredicate)}.
+     */
+    interface BlockPredicate {
+        boolean test(int x, int y, int z);
+    }
 
-        public void onComplete(NPC npc) {
-            if (callbacks == null)
-                return;
-            Block current = npc.getEntity().getWorld().getBlockAt(vector.getBlockX(), vector.getBlockY(),
-                    vector.getBlockZ());
-            for (PathCallback callback : callbacks) {
-                callback.onReached(npc, current);
-            }
-        }
+    private static boolean isOpen(BlockSource source, Material mat, int x, int y, int z) {
+        return !MaterialTraits.isLiquid(mat) && !MaterialTraits.isClimbable(mat) && !MaterialTraits.isSlowing(mat)
+                && !MaterialTraits.isDoor(mat) && !MaterialTraits.isGate(mat)
+                && MinecraftBlockExaminer.canStandIn(source, mat, x, y, z);
+    }
 
-        public void run(final NPC npc) {
-            if (callbacks == null)
-                return;
-            Block current = npc.getEntity().getWorld().getBlockAt(vector.getBlockX(), vector.getBlockY(),
-                    vector.getBlockZ());
-            for (PathCallback callback : callbacks) {
-                if (blockList == null) {
-                    blockList = Lists.transform(Arrays.asList(path), input -> npc.getEntity().getWorld()
-                            .getBlockAt(input.vector.getBlockX(), input.vector.getBlockY(), input.vector.getBlockZ()));
-                }
-                callback.run(npc, current, blockList, index);
-            }
-        }
+    private static boolean isWalkable(BlockPredicate walkable, LongIntHashMap cache, int x, int y, int z) {
+        long key = PackedPosition.pack(x, y, z);
+        int cached = cache.get(key);
+        if (cached != -1)
+            return cached == 1;
+        boolean result = walkable.test(x, y, z);
+        cache.put(key, result ? 1 : 0);
+        return result;
+    }
 
-        @Override
-        public String toString() {
-            return vector.toString();
-        }
+    private static boolean isWalkable(BlockSource source, int x, int y, int z) {
+        Material below = source.getMaterialAt(x, y - 1, z);
+        Material in = source.getMaterialAt(x, y, z);
+        Material above = source.getMaterialAt(x, y + 1, z);
+        return MaterialTraits.isWalkable(below) && !MaterialTraits.isClimbable(below) && isOpen(source, in, x, y, z)
+                && isOpen(source, above, x, y + 1, z);
     }
-}
\ No newline at end of file
+
+    private static final double SMOOTHING_HALF_WIDTH = 0.3;
+    private static final double SMOOTHING_STEP = 0.25;
+}
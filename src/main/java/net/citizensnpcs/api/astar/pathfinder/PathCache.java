@@ -0,0 +1,263 @@
+package net.citizensnpcs.api.astar.pathfinder;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.bukkit.World;
+import org.bukkit.util.Vector;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import net.citizensnpcs.api.ai.NavigatorParameters;
+import net.citizensnpcs.api.astar.pathfinder.ChunkSnapshotCache.ChunkChangeListener;
+
+/**
+ * A bounded least recently used cache of finished {@link Path}s, keyed by world, start block, goal block, goal range
+ * and a fingerprint of the {@link BlockExaminer}s used to find them, so that repeated requests for the same route can
+ * skip the search. Entries are dropped when the {@link ChunkSnapshotCache} reports a change in any chunk the path
+ * crosses, and paths found through a {@link BlockSource} that is no longer {@link BlockSource#isCurrent(int, int)
+ * current} for those chunks are not cached.
+ * <p>
+ * Every lookup returns a fresh copy of the cached path which can be walked independently. The cache is thread-safe.
+ */
+public class PathCache implements ChunkChangeListener {
+    private final Map<UUID, Map<Long, Set<Key>>> chunkIndex = Maps.newHashMap();
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(64, 0.75F, true);
+    private long hits;
+    private int maxSize = 1024;
+    private long misses;
+
+    public PathCache() {
+    }
+
+    public PathCache(ChunkSnapshotCache cache) {
+        cache.addListener(this);
+    }
+
+    /**
+     * Removes every cached path.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        chunkIndex.clear();
+    }
+
+    /**
+     * Returns a copy of the path cached for the given route.
+     *
+     * @param world
+     *            The world
+     * @param start
+     *            The start position, compared by block
+     * @param goal
+     *            The goal position, compared by block
+     * @param range
+     *            The distance from the goal at which the search was finished
+     * @param fingerprint
+     *            The examiner fingerprint, see {@link #fingerprint(BlockExaminer...)}
+     * @return The path, or <code>null</code> if none is cached
+     */
+    public synchronized Path get(World world, Vector start, Vector goal, float range, int fingerprint) {
+        Entry entry = entries.get(new Key(world.getUID(), start, goal, range, fingerprint));
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return new Path(entry.path);
+    }
+
+    /**
+     * @return The number of lookups that returned a cached path
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return The number of lookups that found no cached path
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    @Override
+    public synchronized void onChunkChanged(World world, int chunkX, int chunkZ) {
+        Map<Long, Set<Key>> chunks = chunkIndex.get(world.getUID());
+        if (chunks == null)
+            return;
+        Set<Key> keys = chunks.remove(getChunkKey(chunkX, chunkZ));
+        if (keys == null)
+            return;
+        for (Key key : keys) {
+            remove(key);
+        }
+    }
+
+    @Override
+    public synchronized void onWorldUnloaded(World world) {
+        Map<Long, Set<Key>> chunks = chunkIndex.remove(world.getUID());
+        if (chunks == null)
+            return;
+        entries.keySet().removeIf(key -> key.world.equals(world.getUID()));
+    }
+
+    /**
+     * Caches a finished path for the given route. The cache keeps its own copy, so the path may be walked afterwards.
+     * The path is not cached if a chunk it depends on has changed since the source read it, as that change has already
+     * been reported.
+     *
+     * @param source
+     *            The block source the path was found with
+     * @see #get(World, Vector, Vector, float, int)
+     */
+    public synchronized void put(World world, Vector start, Vector goal, float range, int fingerprint, Path path,
+            BlockSource source) {
+        if (maxSize <= 0 || path.size() == 0)
+            return;
+        Key key = new Key(world.getUID(), start, goal, range, fingerprint);
+        Entry entry = new Entry(new Path(path));
+        // blocks next to a chunk border also depend on the neighbouring chunk
+        for (int i = 0; i < path.size(); i++) {
+            int x = path.getBlockX(i), z = path.getBlockZ(i);
+            for (int dx = -1; dx <= 1; dx += 2) {
+                for (int dz = -1; dz <= 1; dz += 2) {
+                    long chunk = getChunkKey(x + dx >> 4, z + dz >> 4);
+                    if (!contains(entry.chunks, chunk)) {
+                        entry.chunks = append(entry.chunks, chunk);
+                    }
+                }
+            }
+        }
+        for (long chunk : entry.chunks) {
+            if (!source.isCurrent((int) (chunk >> 32), (int) chunk))
+                return;
+        }
+        remove(key);
+        Map<Long, Set<Key>> chunks = chunkIndex.computeIfAbsent(key.world, uid -> Maps.newHashMap());
+        for (long chunk : entry.chunks) {
+            chunks.computeIfAbsent(chunk, c -> Sets.newHashSet()).add(key);
+        }
+        entries.put(key, entry);
+        trim();
+    }
+
+    private void remove(Key key) {
+        Entry entry = entries.remove(key);
+        if (entry == null)
+            return;
+        Map<Long, Set<Key>> chunks = chunkIndex.get(key.world);
+        if (chunks == null)
+            return;
+        for (long chunk : entry.chunks) {
+            Set<Key> keys = chunks.get(chunk);
+            if (keys != null && keys.remove(key) && keys.isEmpty()) {
+                chunks.remove(chunk);
+            }
+        }
+    }
+
+    /**
+     * Sets the maximum number of cached paths, evicting the least recently used paths beyond it.
+     */
+    public synchronized PathCache setMaxSize(int size) {
+        this.maxSize = size;
+        trim();
+        return this;
+    }
+
+    /**
+     * @return The number of cached paths
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void trim() {
+        while (entries.size() > Math.max(0, maxSize)) {
+            remove(entries.keySet().iterator().next());
+        }
+    }
+
+    private static class Entry {
+        private long[] chunks = new long[0];
+        private final Path path;
+
+        private Entry(Path path) {
+            this.path = path;
+        }
+    }
+
+    private static class Key {
+        private final int fingerprint;
+        private final long goal;
+        private final int range;
+        private final long start;
+        private final UUID world;
+
+        private Key(UUID world, Vector start, Vector goal, float range, int fingerprint) {
+            this.world = world;
+            this.start = PackedPosition.pack(start);
+            this.goal = PackedPosition.pack(goal);
+            this.range = Float.floatToIntBits(range);
+            this.fingerprint = fingerprint;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (obj == null || getClass() != obj.getClass())
+                return false;
+            Key other = (Key) obj;
+            return fingerprint == other.fingerprint && goal == other.goal && range == other.range
+                    && start == other.start && world.equals(other.world);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = 31 + fingerprint;
+            result = 31 * result + Long.hashCode(goal);
+            result = 31 * result + range;
+            result = 31 * result + Long.hashCode(start);
+            return 31 * result + world.hashCode();
+        }
+    }
+
+    private static long[] append(long[] array, long value) {
+        long[] copy = new long[array.length + 1];
+        System.arraycopy(array, 0, copy, 0, array.length);
+        copy[array.length] = value;
+        return copy;
+    }
+
+    private static boolean contains(long[] array, long value) {
+        for (long element : array) {
+            if (element == value)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Computes a fingerprint of an ordered list of examiners, such as {@link NavigatorParameters#examiners()}, from
+     * their classes so that paths found with one set of examiners are not returned for requests using another.
+     * Requests whose examiners differ only in configuration should mix that configuration into the fingerprint.
+     *
+     * @return The fingerprint
+     */
+    public static int fingerprint(BlockExaminer... examiners) {
+        int result = 1;
+        for (BlockExaminer examiner : examiners) {
+            result = 31 * result + examiner.getClass().getName().hashCode();
+        }
+        return result;
+    }
+
+    private static long getChunkKey(int chunkX, int chunkZ) {
+        return (long) chunkX << 32 | chunkZ & 0xFFFFFFFFL;
+    }
+}
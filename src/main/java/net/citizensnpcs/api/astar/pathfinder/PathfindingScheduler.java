@@ -0,0 +1,294 @@
+package net.citizensnpcs.api.astar.pathfinder;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import net.citizensnpcs.api.CitizensAPI;
+import net.citizensnpcs.api.astar.AStarMachine;
+import net.citizensnpcs.api.astar.AStarMachine.AStarState;
+import net.citizensnpcs.api.astar.AStarMachine.AnytimeState;
+import net.citizensnpcs.api.astar.AStarStorage;
+import net.citizensnpcs.api.util.schedulers.SchedulerRunnable;
+
+/**
+ * Spreads {@link AStarMachine} searches for many NPCs over multiple ticks. Submitted searches keep their
+ * {@link AStarState} between ticks and each tick a configurable time and iteration budget is spent across them, either
+ * round-robin or highest priority first. Completed searches complete their {@link CompletableFuture} with the found
+ * {@link Path}, or <code>null</code> if no path could be found within the request's iteration limit.
+ * <p>
+ * Anytime searches submitted with {@link #submitAnytime(VectorGoal, VectorNode, int, float, int, Consumer)} publish
+ * each improved path as soon as it is found and keep refining it for a limited number of further iterations.
+ * <p>
+ * The shared instance is available from {@link CitizensAPI#getPathfindingScheduler()} and runs every tick on the main
+ * thread, so the {@link BlockSource}s used by requests must be safe to read from it. On Folia it runs on the global
+ * region thread instead, which owns no chunks, so requests there must use snapshot or detached sources such as
+ * {@link ChunkSnapshotBlockSource} rather than live ones such as {@link ChunkBlockSource}.
+ */
+public class PathfindingScheduler extends SchedulerRunnable {
+    private final Queue<PathRequest> incoming = new ConcurrentLinkedQueue<>();
+    private int iterationsPerTick = 20000;
+    private final AStarMachine<VectorNode, Path> machine;
+    private SchedulingMode mode = SchedulingMode.ROUND_ROBIN;
+    private Queue<PathRequest> pending = new ArrayDeque<>();
+    private long sequence;
+    private int sliceIterations = 100;
+    private long tickBudgetNanos = TimeUnit.MILLISECONDS.toNanos(5);
+
+    public PathfindingScheduler() {
+        this(AStarMachine.createWithDefaultStorage());
+    }
+
+    public PathfindingScheduler(AStarMachine<VectorNode, Path> machine) {
+        this.machine = machine;
+    }
+
+    /**
+     * Cancels all pending searches, completing their futures exceptionally.
+     */
+    public void cancelAll() {
+        drainIncoming();
+        for (PathRequest request : pending) {
+            request.future.cancel(false);
+        }
+        pending.clear();
+    }
+
+    private void drainIncoming() {
+        PathRequest request;
+        while ((request = incoming.poll()) != null) {
+            request.sequence = sequence++;
+            pending.add(request);
+        }
+    }
+
+    /**
+     * @return The number of searches that have not yet completed
+     */
+    public int getPendingCount() {
+        return pending.size() + incoming.size();
+    }
+
+    /**
+     * Creates a resumable search state using this scheduler's {@link AStarMachine}.
+     *
+     * @see #submit(AStarMachine.AStarState, int, int, boolean)
+     */
+    public AStarMachine<VectorNode, Path>.AStarState getStateFor(VectorGoal goal, VectorNode start) {
+        return machine.getStateFor(goal, start);
+    }
+
+    @Override
+    public void run() {
+        drainIncoming();
+        long deadline = System.nanoTime() + tickBudgetNanos;
+        int remaining = iterationsPerTick;
+        while (remaining > 0 && !pending.isEmpty()) {
+            PathRequest request = pending.poll();
+            if (request.future.isDone()) {
+                continue;
+            }
+            int slice = Math.max(1,
+                    Math.min(Math.min(sliceIterations, remaining), request.getRemainingIterations()));
+            Path plan;
+            try {
+                // run performs one more expansion than the passed limit
+                plan = request.anytime != null ? machine.runAnytime(request.anytime, slice - 1)
+                        : machine.run(request.state, slice - 1);
+            } catch (Throwable t) {
+                request.future.completeExceptionally(t);
+                continue;
+            }
+            request.iterations += slice;
+            remaining -= slice;
+            if (request.anytime != null) {
+                if (plan != null) {
+                    if (request.firstPlanIterations == -1) {
+                        request.firstPlanIterations = request.iterations;
+                    }
+                    request.improved.accept(plan);
+                }
+                if (request.anytime.isComplete() || request.getRemainingIterations() <= 0) {
+                    request.future.complete(request.anytime.getBestPlan());
+                } else {
+                    pending.add(request);
+                }
+            } else if (plan != null) {
+                request.future.complete(plan);
+            } else if (request.state.isEmpty() || request.iterations >= request.maxIterations) {
+                request.future.complete(request.partial ? request.state.getPartialPlan() : null);
+            } else {
+                pending.add(request);
+            }
+            if (System.nanoTime() >= deadline) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Sets the maximum number of A* iterations spent across all searches each tick.
+     */
+    public PathfindingScheduler setIterationsPerTick(int iterations) {
+        this.iterationsPerTick = iterations;
+        return this;
+    }
+
+    /**
+     * Sets how the tick budget is shared between pending searches.
+     */
+    public PathfindingScheduler setSchedulingMode(SchedulingMode mode) {
+        if (this.mode == mode)
+            return this;
+        Queue<PathRequest> old = pending;
+        pending = mode == SchedulingMode.PRIORITY ? new PriorityQueue<>(REQUEST_PRIORITY) : new ArrayDeque<>();
+        pending.addAll(old);
+        this.mode = mode;
+        return this;
+    }
+
+    /**
+     * Sets the number of iterations a single search may run before the budget moves on to the next search.
+     */
+    public PathfindingScheduler setSliceIterations(int iterations) {
+        this.sliceIterations = Math.max(1, iterations);
+        return this;
+    }
+
+    /**
+     * Sets the wall-clock time budget spent searching each tick, in microseconds.
+     */
+    public PathfindingScheduler setTickBudget(long micros) {
+        this.tickBudgetNanos = TimeUnit.MICROSECONDS.toNanos(micros);
+        return this;
+    }
+
+    /**
+     * @see #submit(VectorGoal, VectorNode, int, int)
+     */
+    public CompletableFuture<Path> submit(VectorGoal goal, VectorNode start, int maxIterations) {
+        return submit(goal, start, maxIterations, 0);
+    }
+
+    /**
+     * Queues a search to be run over the following ticks. The search uses the {@link AStarStorage} supplier of this
+     * scheduler's {@link AStarMachine}.
+     *
+     * @param goal
+     *            The goal
+     * @param start
+     *            The start node
+     * @param maxIterations
+     *            The maximum total number of iterations before the search is abandoned
+     * @param priority
+     *            The priority of the search when using {@link SchedulingMode#PRIORITY}, higher runs first
+     * @return A future completed with the path, or <code>null</code> if not found
+     */
+    public CompletableFuture<Path> submit(VectorGoal goal, VectorNode start, int maxIterations, int priority) {
+        PathRequest request = new PathRequest(machine.getStateFor(goal, start), maxIterations, priority);
+        incoming.add(request);
+        return request.future;
+    }
+
+    /**
+     * Queues a search continuing from an existing {@link AStarState}, for example one kept from an earlier request that
+     * ran out of iterations so that the search resumes where it stopped instead of starting again. The nodes of the
+     * state, including any {@link VectorNodeArena} they were drawn from, must remain valid until the search is
+     * finished.
+     *
+     * @param state
+     *            The state to continue, see {@link #getStateFor(VectorGoal, VectorNode)}
+     * @param maxIterations
+     *            The maximum number of iterations for this request
+     * @param priority
+     *            The priority of the search when using {@link SchedulingMode#PRIORITY}, higher runs first
+     * @param partial
+     *            Whether to complete with the path to the node closest to the goal, rather than <code>null</code>, if
+     *            the goal is not reached within the iteration limit or is unreachable
+     * @return A future completed with the path, see {@link AStarState#isGoalReached()} to check whether it is partial
+     */
+    public CompletableFuture<Path> submit(AStarMachine<VectorNode, Path>.AStarState state, int maxIterations,
+            int priority, boolean partial) {
+        PathRequest request = new PathRequest(state, maxIterations, priority);
+        request.partial = partial;
+        incoming.add(request);
+        return request.future;
+    }
+
+    /**
+     * Queues an anytime search, see {@link AStarMachine#runAnytime(AnytimeState, int)}. A path within
+     * <code>epsilon</code> times the optimal cost is published to <code>improved</code> as soon as it is found, so that
+     * the NPC can start moving, and each cheaper path found afterwards is published in turn.
+     *
+     * @param goal
+     *            The goal
+     * @param start
+     *            The start node
+     * @param maxIterations
+     *            The maximum total number of iterations before the first path is found
+     * @param epsilon
+     *            The initial heuristic weight, 1 for an optimal search
+     * @param refinementIterations
+     *            The maximum number of iterations spent refining once the first path is found
+     * @param improved
+     *            Called on the scheduler thread with each improved path
+     * @return A future completed with the best path found, or <code>null</code> if not found
+     */
+    public CompletableFuture<Path> submitAnytime(VectorGoal goal, VectorNode start, int maxIterations, float epsilon,
+            int refinementIterations, Consumer<Path> improved) {
+        PathRequest request = new PathRequest(null, maxIterations, 0);
+        request.anytime = machine.getAnytimeStateFor(goal, start, epsilon, ANYTIME_DECREMENT);
+        request.improved = improved;
+        request.refinementIterations = Math.max(0, refinementIterations);
+        incoming.add(request);
+        return request.future;
+    }
+
+    private class PathRequest {
+        private AStarMachine<VectorNode, Path>.AnytimeState anytime;
+        private int firstPlanIterations = -1;
+        private final CompletableFuture<Path> future = new CompletableFuture<>();
+        private Consumer<Path> improved;
+        private int iterations;
+        private final int maxIterations;
+        private boolean partial;
+        private final int priority;
+        private int refinementIterations;
+        private long sequence;
+        private final AStarMachine<VectorNode, Path>.AStarState state;
+
+        private PathRequest(AStarMachine<VectorNode, Path>.AStarState state, int maxIterations, int priority) {
+            this.state = state;
+            this.maxIterations = maxIterations < 0 ? Integer.MAX_VALUE : maxIterations;
+            this.priority = priority;
+        }
+
+        private int getRemainingIterations() {
+            if (firstPlanIterations == -1)
+                return maxIterations - iterations;
+            return refinementIterations - (iterations - firstPlanIterations);
+        }
+    }
+
+    public enum SchedulingMode {
+        /**
+         * Spends the budget on the highest priority searches first, in submission order for equal priorities.
+         */
+        PRIORITY,
+        /**
+         * Runs each search for a slice of iterations in turn.
+         */
+        ROUND_ROBIN;
+    }
+
+    private static final float ANYTIME_DECREMENT = 0.5F;
+    private static final Comparator<PathfindingScheduler.PathRequest> REQUEST_PRIORITY = (a, b) -> {
+        int cmp = Integer.compare(b.priority, a.priority);
+        return cmp != 0 ? cmp : Long.compare(a.sequence, b.sequence);
+    };
+}
@@ -0,0 +1,267 @@
+package net.citizensnpcs.api.astar.pathfinder;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+
+import org.bukkit.World;
+import org.bukkit.util.Vector;
+
+import com.google.common.collect.Maps;
+
+import net.citizensnpcs.api.astar.pathfinder.ChunkSnapshotCache.ChunkChangeListener;
+import net.citizensnpcs.api.util.LongIntHashMap;
+
+/**
+ * Labels connected components of walkable blocks so that destinations which cannot be reached, such as a player on an
+ * island or behind a wall, can be rejected before any search runs. Components are found lazily by flood filling the
+ * {@link WalkabilityIndex} from a queried block. A flood that runs out of blocks before
+ * {@link #setMaxComponentSize(int)} has found a complete, <em>enclosed</em> component; a larger flood is remembered as
+ * an <em>open</em> component whose extent is unknown. Two blocks are only reported unreachable when one of them lies
+ * in an enclosed component that does not contain the other, so the answer never rejects a reachable destination.
+ * <p>
+ * Movement is approximated by steps to any of the 26 neighbouring blocks in either direction, with doors and gates
+ * treated as open, which over-connects but never under-connects {@link MinecraftBlockExaminer} walking. The index must
+ * not be used for NPCs with examiners that allow other movement, such as {@link FlyingBlockExaminer}. Components are
+ * dropped when the {@link ChunkSnapshotCache} reports a change in a chunk they touch, and are not kept if the source
+ * they were found with is no longer {@link BlockSource#isCurrent(int, int) current}. The index is thread-safe.
+ */
+public class ReachabilityIndex implements ChunkChangeListener {
+    private int maxComponentSize = 16384;
+    private int nextId;
+    private final WalkabilityIndex walkability;
+    private final Map<UUID, WorldComponents> worlds = Maps.newHashMap();
+
+    public ReachabilityIndex(WalkabilityIndex walkability) {
+        this.walkability = walkability;
+    }
+
+    public ReachabilityIndex(WalkabilityIndex walkability, ChunkSnapshotCache cache) {
+        this(walkability);
+        cache.addListener(this);
+    }
+
+    /**
+     * Drops every labelled component.
+     */
+    public synchronized void clear() {
+        worlds.clear();
+    }
+
+    private Component flood(WorldComponents components, BlockSource source, long start) {
+        LongIntHashMap visited = new LongIntHashMap(256, -1);
+        long[] queue = new long[256];
+        int head = 0, tail = 0;
+        queue[tail++] = start;
+        visited.put(start, 1);
+        boolean open = false;
+        while (head < tail) {
+            long position = queue[head++];
+            int x = PackedPosition.unpackX(position), y = PackedPosition.unpackY(position),
+                    z = PackedPosition.unpackZ(position);
+            for (int dx = -1; dx <= 1 && !open; dx++) {
+                for (int dy = -1; dy <= 1 && !open; dy++) {
+                    for (int dz = -1; dz <= 1; dz++) {
+                        if (dx == 0 && dy == 0 && dz == 0) {
+                            continue;
+                        }
+                        long next = PackedPosition.pack(x + dx, y + dy, z + dz);
+                        if (visited.containsKey(next)) {
+                            continue;
+                        }
+                        int node = walkability.getWalkableState(source, x + dx, y + dy, z + dz);
+                        visited.put(next, 1);
+                        if (node == NOT_WALKABLE) {
+                            continue;
+                        }
+                        if (node == UNKNOWN || tail >= maxComponentSize) {
+                            // the component continues somewhere the index cannot follow
+                            open = true;
+                            break;
+                        }
+                        if (tail == queue.length) {
+                            queue = Arrays.copyOf(queue, tail * 2);
+                        }
+                        queue[tail++] = next;
+                    }
+                }
+            }
+            if (open) {
+                break;
+            }
+        }
+        Component component = new Component(nextId++, !open, Arrays.copyOf(queue, tail));
+        for (long chunk : component.chunks) {
+            // a component flooded through a stale snapshot answers this query but is not kept
+            if (!source.isCurrent((int) (chunk >> 32), (int) chunk))
+                return component;
+        }
+        components.add(component);
+        return component;
+    }
+
+    /**
+     * @return The number of components labelled in the given world
+     */
+    public synchronized int getComponentCount(World world) {
+        WorldComponents components = worlds.get(world.getUID());
+        return components == null ? 0 : components.byId.size();
+    }
+
+    private Component getComponent(BlockSource source, int x, int y, int z) {
+        if (walkability.getWalkableState(source, x, y, z) != WALKABLE)
+            return null;
+        WorldComponents components = worlds.computeIfAbsent(source.getWorld().getUID(), uid -> new WorldComponents());
+        long position = PackedPosition.pack(x, y, z);
+        Component component = components.byId.get(components.labels.get(position));
+        return component != null ? component : flood(components, source, position);
+    }
+
+    /**
+     * Returns whether a block might be reachable from another by walking.
+     *
+     * @param source
+     *            The block source, which must cover both blocks
+     * @param from
+     *            The start block
+     * @param to
+     *            The destination block
+     * @param range
+     *            The distance from the destination at which it counts as reached
+     * @return <code>false</code> only if no walkable block within range of the destination is connected to the start
+     */
+    public synchronized boolean isReachable(BlockSource source, Vector from, Vector to, float range) {
+        Component start = getComponent(source, from.getBlockX(), from.getBlockY(), from.getBlockZ());
+        if (start == null)
+            return true;
+        int radius = (int) Math.floor(range);
+        if (radius > MAX_RANGE)
+            return true;
+        boolean anyWalkable = false;
+        int tx = to.getBlockX(), ty = to.getBlockY(), tz = to.getBlockZ();
+        for (int dx = -radius; dx <= radius; dx++) {
+            for (int dy = -radius; dy <= radius; dy++) {
+                for (int dz = -radius; dz <= radius; dz++) {
+                    if (dx * dx + dy * dy + dz * dz > range * range) {
+                        continue;
+                    }
+                    Component target = getComponent(source, tx + dx, ty + dy, tz + dz);
+                    if (target == null) {
+                        if (walkability.getWalkableState(source, tx + dx, ty + dy, tz + dz) == UNKNOWN)
+                            return true;
+                        continue;
+                    }
+                    anyWalkable = true;
+                    if (target == start || !target.enclosed && !start.enclosed)
+                        return true;
+                }
+            }
+        }
+        // a destination with no walkable block nearby may still be approached, for example when flying
+        return !anyWalkable;
+    }
+
+    @Override
+    public synchronized void onChunkChanged(World world, int chunkX, int chunkZ) {
+        WorldComponents components = worlds.get(world.getUID());
+        if (components != null) {
+            components.invalidate((long) chunkX << 32 | chunkZ & 0xFFFFFFFFL);
+        }
+    }
+
+    @Override
+    public synchronized void onWorldUnloaded(World world) {
+        worlds.remove(world.getUID());
+    }
+
+    /**
+     * Sets the number of blocks a flood fill visits before its component is considered open.
+     */
+    public synchronized ReachabilityIndex setMaxComponentSize(int size) {
+        this.maxComponentSize = size;
+        return this;
+    }
+
+    private static class Component {
+        private final long[] blocks;
+        private final long[] chunks;
+        private final boolean enclosed;
+        private final int id;
+
+        private Component(int id, boolean enclosed, long[] blocks) {
+            this.id = id;
+            this.enclosed = enclosed;
+            this.blocks = blocks;
+            LongIntHashMap seen = new LongIntHashMap(16, -1);
+            long[] keys = new long[16];
+            int count = 0;
+            for (long block : blocks) {
+                int x = PackedPosition.unpackX(block), z = PackedPosition.unpackZ(block);
+                // a change beside the component may connect it to another
+                for (int dx = -1; dx <= 1; dx += 2) {
+                    for (int dz = -1; dz <= 1; dz += 2) {
+                        long key = (long) (x + dx >> 4) << 32 | z + dz >> 4 & 0xFFFFFFFFL;
+                        if (seen.put(key, 1) == -1) {
+                            if (count == keys.length) {
+                                keys = Arrays.copyOf(keys, count * 2);
+                            }
+                            keys[count++] = key;
+                        }
+                    }
+                }
+            }
+            this.chunks = Arrays.copyOf(keys, count);
+        }
+    }
+
+    private static class WorldComponents {
+        private final Map<Integer, Component> byId = Maps.newHashMap();
+        private final Map<Long, Map<Integer, Component>> byChunk = Maps.newHashMap();
+        private final LongIntHashMap labels = new LongIntHashMap(1024, -1);
+        private int liveBlocks;
+        private int staleBlocks;
+
+        private void add(Component component) {
+            byId.put(component.id, component);
+            for (long chunk : component.chunks) {
+                byChunk.computeIfAbsent(chunk, c -> Maps.newHashMap()).put(component.id, component);
+            }
+            for (long block : component.blocks) {
+                labels.put(block, component.id);
+            }
+            liveBlocks += component.blocks.length;
+        }
+
+        private void invalidate(long chunk) {
+            Map<Integer, Component> touching = byChunk.remove(chunk);
+            if (touching == null)
+                return;
+            for (Component component : touching.values()) {
+                byId.remove(component.id);
+                for (long other : component.chunks) {
+                    Map<Integer, Component> components = byChunk.get(other);
+                    if (components != null && components.remove(component.id) != null && components.isEmpty()) {
+                        byChunk.remove(other);
+                    }
+                }
+                liveBlocks -= component.blocks.length;
+                staleBlocks += component.blocks.length;
+            }
+            // labels of dropped components are ignored, but are discarded once they outnumber the live labels
+            if (staleBlocks > liveBlocks + 4096) {
+                labels.clear();
+                for (Component component : byId.values()) {
+                    for (long block : component.blocks) {
+                        labels.put(block, component.id);
+                    }
+                }
+                staleBlocks = 0;
+            }
+        }
+    }
+
+    private static final int MAX_RANGE = 3;
+    private static final int NOT_WALKABLE = 0;
+    private static final int UNKNOWN = -1;
+    private static final int WALKABLE = 1;
+}
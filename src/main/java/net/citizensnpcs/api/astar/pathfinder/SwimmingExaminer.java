@@ -1,7 +1,6 @@
 package net.citizensnpcs.api.astar.pathfinder;
 
 import org.bukkit.Material;
-import org.bukkit.block.Block;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.Squid;
 import org.bukkit.entity.WaterMob;
@@ -25,33 +24,38 @@ public class SwimmingExaminer implements BlockExaminer {
     @Override
     public float getCost(BlockSource source, PathPoint point) {
         // penalise non water blocks for fish
-        if (isWaterMob(npc.getEntity())
-                && !MinecraftBlockExaminer.isLiquidOrInLiquid(source.getBlockAt(point.getVector())))
+        Vector pos = point.getVector();
+        if (isWaterMob(npc.getEntity()) && !MinecraftBlockExaminer.isLiquidOrInLiquid(source.getMaterialAt(pos),
+                source.getBlockDataAt(pos)))
             return 1F;
         return 0;
     }
 
+    @Override
+    public boolean isParentDependent(BlockSource source, PathPoint point) {
+        return false;
+    }
+
     @Override
     public PassableState isPassable(BlockSource source, PathPoint point) {
         Vector vector = point.getVector();
-        if (!MinecraftBlockExaminer.isLiquidOrInLiquid(
-                source.getWorld().getBlockAt(vector.getBlockX(), vector.getBlockY(), vector.getBlockZ())))
+        int x = vector.getBlockX(), y = vector.getBlockY(), z = vector.getBlockZ();
+        if (!MinecraftBlockExaminer.isLiquidOrInLiquid(source.getMaterialAt(x, y, z), source.getBlockDataAt(x, y, z)))
             return PassableState.IGNORE;
 
         if (isWaterMob(npc.getEntity()))
             return PassableState.PASSABLE;
 
-        Block block = source.getBlockAt(vector.clone().add(UP));
-        return isSwimmableLiquid(block.getType()) || MinecraftBlockExaminer.canStandIn(block) ? PassableState.PASSABLE
+        Material above = source.getMaterialAt(x, y + 1, z);
+        return isSwimmableLiquid(above) || MinecraftBlockExaminer.canStandIn(above, source.getBlockDataAt(x, y + 1, z))
+                ? PassableState.PASSABLE
                 : PassableState.UNPASSABLE;
     }
 
     private boolean isSwimmableLiquid(Material material) {
-        if (material == Material.LAVA
-                || !SpigotUtil.isUsing1_13API() && material == Material.valueOf("STATIONARY_LAVA"))
+        if (MaterialTraits.isLava(material))
             return canSwimInLava();
-        return material == Material.WATER
-                || !SpigotUtil.isUsing1_13API() && material == Material.valueOf("STATIONARY_WATER");
+        return MaterialTraits.isLiquid(material);
     }
 
     public void setCanSwimInLava(boolean canSwimInLava) {
@@ -66,6 +70,4 @@ public class SwimmingExaminer implements BlockExaminer {
         return entity instanceof WaterMob || entity.getType().name().equals("TURTLE")
                 || entity.getType().name().equals("FROG") || entity.getType().name().equals("AXOLOTL");
     }
-
-    private static final Vector UP = new Vector(0, 1, 0);
 }
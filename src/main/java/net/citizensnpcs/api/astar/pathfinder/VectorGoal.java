@@ -1,12 +1,15 @@
 package net.citizensnpcs.api.astar.pathfinder;
 
 import org.bukkit.Location;
+import org.bukkit.World;
 import org.bukkit.util.Vector;
 
 import net.citizensnpcs.api.astar.AStarGoal;
 
 public class VectorGoal implements AStarGoal<VectorNode> {
     private final Vector goal;
+    private float[] goalDistances;
+    private LandmarkHeuristic landmarks;
     private final float leeway;
 
     public VectorGoal(Location dest, float range) {
@@ -18,6 +21,14 @@ public class VectorGoal implements AStarGoal<VectorNode> {
         goal.setX(goal.getBlockX()).setY(goal.getBlockY()).setZ(goal.getBlockZ());
     }
 
+    /**
+     * Creates a goal at the block of the given vector without searching for a standable block above it.
+     */
+    VectorGoal(Vector goal, float range) {
+        this.leeway = range;
+        this.goal = new Vector(goal.getBlockX(), goal.getBlockY(), goal.getBlockZ());
+    }
+
     @Override
     public float g(VectorNode from, VectorNode to) {
         return from.distance(to);
@@ -34,7 +45,11 @@ public class VectorGoal implements AStarGoal<VectorNode> {
 
     @Override
     public float h(VectorNode from) {
-        return from.heuristicDistance(goal);
+        if (goalDistances == null)
+            return from.heuristicDistance(goal);
+        Vector location = from.location;
+        return from.heuristicDistance(goal,
+                landmarks.estimate(location.getBlockX(), location.getBlockY(), location.getBlockZ(), goalDistances));
     }
 
     @Override
@@ -42,4 +57,32 @@ public class VectorGoal implements AStarGoal<VectorNode> {
         double distance = node.location.distance(goal);
         return goal.equals(node.location) || distance <= leeway;
     }
+
+    /**
+     * Tightens the heuristic using precomputed landmark distances in the goal's world, which has no effect if the goal
+     * lies outside the blocks reached by the precomputation. The heuristic is ignored if it was computed for another
+     * world or with other examiners, since its distances would then no longer be admissible.
+     *
+     * @param landmarks
+     *            The landmark heuristic, or <code>null</code> to use the straight line distance only
+     * @param world
+     *            The world being searched
+     * @param examiners
+     *            The examiners used by the search, see {@link PathCache#fingerprint(BlockExaminer...)}
+     */
+    public VectorGoal setLandmarks(LandmarkHeuristic landmarks, World world, BlockExaminer... examiners) {
+        if (landmarks != null && !isCompatible(landmarks, world, examiners)) {
+            landmarks = null;
+        }
+        this.landmarks = landmarks;
+        this.goalDistances = landmarks == null ? null : landmarks.getDistances(goal);
+        return this;
+    }
+
+    private static boolean isCompatible(LandmarkHeuristic landmarks, World world, BlockExaminer... examiners) {
+        if (world == null || !landmarks.getWorld().equals(world.getUID()))
+            return false;
+        BlockExaminer[] used = examiners == null ? new BlockExaminer[0] : examiners;
+        return landmarks.getFingerprint() == PathCache.fingerprint(used);
+    }
 }
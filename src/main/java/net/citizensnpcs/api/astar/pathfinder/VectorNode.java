@@ -10,14 +10,15 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 
 import net.citizensnpcs.api.astar.AStarNode;
+import net.citizensnpcs.api.astar.BidirectionalNode;
 import net.citizensnpcs.api.astar.Plan;
 import net.citizensnpcs.api.astar.pathfinder.BlockExaminer.PassableState;
 import net.citizensnpcs.api.util.SpigotUtil;
 
-public class VectorNode extends AStarNode implements PathPoint {
+public class VectorNode extends AStarNode implements BidirectionalNode, PathPoint {
     private float blockCost = -1;
     List<PathCallback> callbacks;
-    private final PathInfo info;
+    private PathInfo info;
     Vector location;
     Vector locationCache;
     List<Vector> pathVectors;
@@ -26,6 +27,22 @@ public class VectorNode extends AStarNode implements PathPoint {
         this(null, goal, location.toVector(), source, examiners);
     }
 
+    /**
+     * Creates a start node whose descendants are drawn from the given {@link VectorNodeArena}. The arena should be
+     * closed once the search has finished.
+     */
+    public VectorNode(VectorGoal goal, Location location, BlockSource source, VectorNodeArena arena,
+            BlockExaminer... examiners) {
+        this(null, location.getBlockX(), location.getBlockY(), location.getBlockZ(),
+                new PathInfo(source, examiners == null ? EMPTY_BLOCK_EXAMINER : examiners, goal, arena));
+    }
+
+    VectorNode(VectorNode parent, int x, int y, int z, PathInfo info) {
+        super(parent);
+        this.location = new Vector(x, y, z);
+        this.info = info;
+    }
+
     public VectorNode(VectorNode parent, Vector location, PathInfo info) {
         super(parent);
         this.location = new Vector(location.getBlockX(), location.getBlockY(), location.getBlockZ());
@@ -34,7 +51,8 @@ public class VectorNode extends AStarNode implements PathPoint {
 
     public VectorNode(VectorNode parent, VectorGoal goal, Vector location, BlockSource source,
             BlockExaminer... examiners) {
-        this(parent, location, new PathInfo(source, examiners == null ? EMPTY_BLOCK_EXAMINER : examiners, goal));
+        this(parent, location,
+                new PathInfo(source, examiners == null ? EMPTY_BLOCK_EXAMINER : examiners, goal, null));
     }
 
     @Override
@@ -45,13 +63,38 @@ public class VectorNode extends AStarNode implements PathPoint {
         callbacks.add(callback);
     }
 
+    /**
+     * Builds a {@link Path} that ends at this node's block, without the goal entry appended by {@link #buildPlan()}.
+     */
+    @Override
+    protected Plan buildPartialPlan() {
+        return new Path(orderedPath(), null);
+    }
+
     @Override
     public Plan buildPlan() {
         return new Path(orderedPath(), info.goal.getGoalVector());
     }
 
+    /**
+     * Builds a {@link Path} from the start through this node, continuing along the parent chain of the node reached by
+     * the backward search to its end node.
+     */
+    @Override
+    public Plan buildPlan(AStarNode reverse) {
+        List<VectorNode> nodes = Lists.newArrayList(this.<VectorNode> orderedPath());
+        PathPoint next = ((VectorNode) reverse).getParentPoint();
+        while (next != null) {
+            nodes.add((VectorNode) next);
+            next = next.getParentPoint();
+        }
+        return new Path(nodes, info.goal.getGoalVector());
+    }
+
     @Override
     public VectorNode createAtOffset(Vector mod) {
+        if (info.arena != null)
+            return info.arena.obtain(this, mod.getBlockX(), mod.getBlockY(), mod.getBlockZ(), info);
         return new VectorNode(this, mod, info);
     }
 
@@ -72,7 +115,9 @@ public class VectorNode extends AStarNode implements PathPoint {
     }
 
     private float getBlockCost() {
-        if (blockCost == -1) {
+        if (blockCost == -1 && info.arena != null) {
+            blockCost = info.arena.memo.getCost(this, info.blockSource, info.examiners);
+        } else if (blockCost == -1) {
             blockCost = 0;
             for (BlockExaminer examiner : info.examiners) {
                 blockCost += examiner.getCost(info.blockSource, this);
@@ -96,6 +141,8 @@ public class VectorNode extends AStarNode implements PathPoint {
             }
         }
         if (neighbours == null) {
+            if (info.arena != null)
+                return getArenaNeighbours();
             neighbours = getNeighbours(info.blockSource, this);
         }
         List<AStarNode> nodes = Lists.newArrayList();
@@ -108,6 +155,37 @@ public class VectorNode extends AStarNode implements PathPoint {
         return nodes;
     }
 
+    private List<AStarNode> getArenaNeighbours() {
+        List<AStarNode> nodes = info.arena.neighbourList();
+        int bx = location.getBlockX(), by = location.getBlockY(), bz = location.getBlockZ();
+        for (int x = -1; x <= 1; x++) {
+            for (int y = -1; y <= 1; y++) {
+                for (int z = -1; z <= 1; z++) {
+                    if (x == 0 && y == 0 && z == 0) {
+                        continue;
+                    }
+                    int modY = by + y;
+                    if (!SpigotUtil.checkYSafe(modY, info.blockSource.getWorld())) {
+                        continue;
+                    }
+                    if (x != 0 && z != 0) {
+                        if (!isPassable(info.arena.probe(this, bx + x, modY, bz, info))
+                                || !isPassable(info.arena.probe(this, bx, modY, bz + z, info))) {
+                            continue;
+                        }
+                    }
+                    VectorNode neighbour = info.arena.obtain(this, bx + x, modY, bz + z, info);
+                    if (!isPassable(neighbour)) {
+                        info.arena.releaseLast();
+                        continue;
+                    }
+                    nodes.add(neighbour);
+                }
+            }
+        }
+        return nodes;
+    }
+
     public List<PathPoint> getNeighbours(BlockSource source, PathPoint point) {
         return getNeighbours(source, point, true);
     }
@@ -147,6 +225,46 @@ public class VectorNode extends AStarNode implements PathPoint {
         return (PathPoint) getParent();
     }
 
+    /**
+     * Generates the blocks from which this node can be entered, for the backward half of a bidirectional search
+     * started from the destination with a {@link VectorGoal} towards the start. A block is kept if it is passable when
+     * reached from this node, and this node is passable when entered from it, including the blocks beside a diagonal
+     * move. {@link NeighbourGeneratorBlockExaminer}s are not consulted.
+     */
+    @Override
+    public Iterable<AStarNode> getReverseNeighbours() {
+        List<AStarNode> nodes = Lists.newArrayList();
+        int bx = location.getBlockX(), by = location.getBlockY(), bz = location.getBlockZ();
+        for (int x = -1; x <= 1; x++) {
+            for (int y = -1; y <= 1; y++) {
+                for (int z = -1; z <= 1; z++) {
+                    if (x == 0 && y == 0 && z == 0) {
+                        continue;
+                    }
+                    int fromY = by - y;
+                    if (!SpigotUtil.checkYSafe(fromY, info.blockSource.getWorld())) {
+                        continue;
+                    }
+                    VectorNode from = info.arena != null
+                            ? info.arena.obtain(this, bx - x, fromY, bz - z, info)
+                            : new VectorNode(this, bx - x, fromY, bz - z, info);
+                    boolean passable = isPassable(from) && isPassable(probe(from, bx, by, bz));
+                    if (passable && x != 0 && z != 0) {
+                        passable = isPassable(probe(from, bx, by, bz - z)) && isPassable(probe(from, bx - x, by, bz));
+                    }
+                    if (!passable) {
+                        if (info.arena != null) {
+                            info.arena.releaseLast();
+                        }
+                        continue;
+                    }
+                    nodes.add(from);
+                }
+            }
+        }
+        return nodes;
+    }
+
     @Override
     public List<Vector> getPathVectors() {
         return pathVectors != null ? pathVectors : ImmutableList.of(location);
@@ -169,7 +287,17 @@ public class VectorNode extends AStarNode implements PathPoint {
         return (float) (location.distance(goal) + getBlockCost()) * TIEBREAKER;
     }
 
+    /**
+     * Estimates the distance to the goal as with {@link #heuristicDistance(Vector)}, using a known lower bound on the
+     * walking distance where it exceeds the straight line distance.
+     */
+    float heuristicDistance(Vector goal, float lowerBound) {
+        return (float) (Math.max(location.distance(goal), lowerBound) + getBlockCost()) * TIEBREAKER;
+    }
+
     private boolean isPassable(PathPoint mod) {
+        if (info.arena != null && mod instanceof VectorNode)
+            return info.arena.memo.isPassable((VectorNode) mod, info.blockSource, info.examiners);
         boolean passable = false;
         for (BlockExaminer examiner : info.examiners) {
             PassableState state = examiner.isPassable(info.blockSource, mod);
@@ -181,6 +309,19 @@ public class VectorNode extends AStarNode implements PathPoint {
         return passable;
     }
 
+    private VectorNode probe(VectorNode parent, int x, int y, int z) {
+        return info.arena != null ? info.arena.probe(parent, x, y, z, info) : new VectorNode(parent, x, y, z, info);
+    }
+
+    void reinitialise(VectorNode newParent, int x, int y, int z, PathInfo newInfo) {
+        reset(newParent);
+        location.setX(x).setY(y).setZ(z);
+        info = newInfo;
+        blockCost = -1;
+        callbacks = null;
+        pathVectors = null;
+    }
+
     @Override
     public void setPathVectors(List<Vector> vectors) {
         this.pathVectors = vectors;
@@ -191,15 +332,24 @@ public class VectorNode extends AStarNode implements PathPoint {
         this.location = vector;
     }
 
-    private static class PathInfo {
+    static class PathInfo {
+        private final VectorNodeArena arena;
         private final BlockSource blockSource;
         private final BlockExaminer[] examiners;
-        private final VectorGoal goal;
+        private VectorGoal goal;
 
-        private PathInfo(BlockSource source, BlockExaminer[] examiners, VectorGoal goal) {
+        PathInfo(BlockSource source, BlockExaminer[] examiners, VectorGoal goal, VectorNodeArena arena) {
             this.blockSource = source;
             this.examiners = examiners;
             this.goal = goal;
+            this.arena = arena;
+        }
+
+        /**
+         * Changes the goal of every node sharing this info, used when a search graph is kept while its goal moves.
+         */
+        void setGoal(VectorGoal goal) {
+            this.goal = goal;
         }
     }
 
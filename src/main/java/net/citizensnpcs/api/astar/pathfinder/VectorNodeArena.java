@@ -0,0 +1,101 @@
+package net.citizensnpcs.api.astar.pathfinder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.citizensnpcs.api.astar.AStarMachine;
+import net.citizensnpcs.api.astar.AStarNode;
+
+/**
+ * A pool of {@link VectorNode}s scoped to a single {@link AStarMachine} search. Nodes (and their location
+ * {@link org.bukkit.util.Vector}s) handed out during the search are recycled in bulk when the arena is closed, and
+ * neighbour lists and diagonal probe nodes are reused between expansions instead of being allocated per node. The
+ * arena also memoises {@link BlockExaminer} results per block for the duration of the search.
+ * <p>
+ * The {@link Path} built from a search copies the winning chain, so it remains valid after the arena is closed. Nodes
+ * obtained from the arena must not be retained once it is closed. An arena is not thread-safe and should serve one
+ * search at a time, for example:
+ *
+ * <pre>
+ * try (VectorNodeArena arena = new VectorNodeArena()) {
+ *     Path plan = machine.runFully(goal, new VectorNode(goal, start, source, arena, examiners));
+ * }
+ * </pre>
+ */
+public class VectorNodeArena implements AutoCloseable {
+    final PassabilityMemo memo = new PassabilityMemo();
+    private final List<AStarNode> neighbours = new ArrayList<>(26);
+    private final List<VectorNode> nodes = new ArrayList<>(512);
+    private VectorNode probe;
+    private int used;
+
+    /**
+     * Recycles every node handed out since the arena was last closed.
+     */
+    @Override
+    public void close() {
+        if (nodes.size() > MAX_RETAINED_NODES) {
+            nodes.subList(MAX_RETAINED_NODES, nodes.size()).clear();
+        }
+        used = 0;
+        memo.clear();
+        neighbours.clear();
+        probe = null;
+    }
+
+    /**
+     * @return The number of block positions whose examiner results are memoised in the current search
+     */
+    public int getMemoisedCount() {
+        return memo.getSize();
+    }
+
+    /**
+     * @return The number of nodes handed out in the current search
+     */
+    public int getUsedCount() {
+        return used;
+    }
+
+    List<AStarNode> neighbourList() {
+        neighbours.clear();
+        return neighbours;
+    }
+
+    VectorNode obtain(VectorNode parent, int x, int y, int z, VectorNode.PathInfo info) {
+        VectorNode node;
+        if (used < nodes.size()) {
+            node = nodes.get(used);
+            node.reinitialise(parent, x, y, z, info);
+        } else {
+            node = new VectorNode(parent, x, y, z, info);
+            nodes.add(node);
+        }
+        used++;
+        return node;
+    }
+
+    /**
+     * Returns a scratch node used only to evaluate passability, for example for the orthogonal blocks beside a diagonal
+     * move. The same instance is returned on every call.
+     */
+    VectorNode probe(VectorNode parent, int x, int y, int z, VectorNode.PathInfo info) {
+        if (probe == null) {
+            probe = new VectorNode(parent, x, y, z, info);
+        } else {
+            probe.reinitialise(parent, x, y, z, info);
+        }
+        return probe;
+    }
+
+    /**
+     * Returns the most recently obtained node to the pool, used when a candidate neighbour is rejected immediately.
+     */
+    void releaseLast() {
+        if (used > 0) {
+            used--;
+        }
+    }
+
+    private static final int MAX_RETAINED_NODES = 8192;
+}
@@ -0,0 +1,43 @@
+package net.citizensnpcs.api.astar.pathfinder;
+
+import org.bukkit.util.Vector;
+
+import net.citizensnpcs.api.CitizensAPI;
+import net.citizensnpcs.api.util.SpigotUtil;
+
+/**
+ * A {@link MinecraftBlockExaminer} that answers passability from a {@link WalkabilityIndex} where possible, falling
+ * back to the full material checks for positions the index defers or cannot cover.
+ */
+public class WalkabilityExaminer extends MinecraftBlockExaminer {
+    private final WalkabilityIndex index;
+
+    /**
+     * Uses the shared index from {@link CitizensAPI#getWalkabilityIndex()}.
+     */
+    public WalkabilityExaminer() {
+        this(CitizensAPI.getWalkabilityIndex());
+    }
+
+    public WalkabilityExaminer(WalkabilityIndex index) {
+        this.index = index;
+    }
+
+    @Override
+    public PassableState isPassable(BlockSource source, PathPoint point) {
+        Vector pos = point.getVector();
+        int x = pos.getBlockX(), y = pos.getBlockY(), z = pos.getBlockZ();
+        if (!SpigotUtil.checkYSafe(y, source.getWorld()))
+            return PassableState.UNPASSABLE;
+        int flags = index.getFlags(source, x, y, z);
+        if (flags == -1)
+            return super.isPassable(source, point);
+        if ((flags & WalkabilityIndex.STANDABLE) == 0)
+            return PassableState.UNPASSABLE;
+        if ((flags & WalkabilityIndex.DEFERRED) != 0)
+            return super.isPassable(source, point);
+        return (flags & CLEAR) == CLEAR ? PassableState.PASSABLE : PassableState.UNPASSABLE;
+    }
+
+    private static final int CLEAR = WalkabilityIndex.FEET | WalkabilityIndex.HEAD;
+}
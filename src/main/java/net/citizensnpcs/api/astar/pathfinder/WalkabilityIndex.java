@@ -0,0 +1,225 @@
+package net.citizensnpcs.api.astar.pathfinder;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.bukkit.Material;
+import org.bukkit.World;
+
+import net.citizensnpcs.api.astar.pathfinder.ChunkSnapshotCache.ChunkChangeListener;
+import net.citizensnpcs.api.util.SpigotUtil;
+
+/**
+ * A persistent per-world index of the parent-independent part of {@link MinecraftBlockExaminer#isPassable}, stored as
+ * bitsets per 16x16x16 chunk section. Sections are built lazily from the {@link BlockSource} of the first search that
+ * needs them and dropped whenever the {@link ChunkSnapshotCache} reports their chunk as changed or unloaded.
+ * <p>
+ * Each block position holds four bits: {@link #STANDABLE}, {@link #FEET}, {@link #HEAD} and {@link #DEFERRED}, for
+ * about 2 KB per populated section. Sections are only built from sources that can read the real blocks of the chunk,
+ * and are only kept if the source's view of the chunk is still {@link BlockSource#isCurrent(int, int) current}.
+ */
+public class WalkabilityIndex implements ChunkChangeListener {
+    private final Map<UUID, Map<Long, ChunkColumn>> worlds = new ConcurrentHashMap<>();
+
+    public WalkabilityIndex() {
+    }
+
+    public WalkabilityIndex(ChunkSnapshotCache cache) {
+        cache.addListener(this);
+    }
+
+    private Section build(BlockSource source, int chunkX, int sectionY, int chunkZ) {
+        Section section = new Section();
+        int baseX = chunkX << 4, baseY = sectionY << 4, baseZ = chunkZ << 4;
+        for (int x = 0; x < 16; x++) {
+            for (int z = 0; z < 16; z++) {
+                int bx = baseX + x, bz = baseZ + z;
+                Material below = source.getMaterialAt(bx, baseY - 1, bz);
+                Material in = source.getMaterialAt(bx, baseY, bz);
+                for (int y = 0; y < 16; y++) {
+                    int by = baseY + y;
+                    Material above = source.getMaterialAt(bx, by + 1, bz);
+                    int bit = y << 8 | z << 4 | x;
+                    if (MinecraftBlockExaminer.canStandOn(below) || MaterialTraits.isLiquid(in)
+                            || MaterialTraits.isLiquid(below)
+                            || MaterialTraits.isClimbable(below)) {
+                        section.set(STANDABLE, bit);
+                    }
+                    if (MinecraftBlockExaminer.canStandIn(source, in, bx, by, bz)) {
+                        section.set(FEET, bit);
+                    }
+                    if (MinecraftBlockExaminer.canStandIn(source, above, bx, by + 1, bz)) {
+                        section.set(HEAD, bit);
+                    }
+                    if (MaterialTraits.isClimbable(in)
+                            && (MaterialTraits.isClimbable(above) || MaterialTraits.isClimbable(below))
+                            || !MinecraftBlockExaminer.canJumpOn(below)) {
+                        section.set(DEFERRED, bit);
+                    }
+                    below = in;
+                    in = above;
+                }
+            }
+        }
+        return section;
+    }
+
+    /**
+     * Drops every indexed section.
+     */
+    public void clear() {
+        worlds.clear();
+    }
+
+    /**
+     * Returns the walkability bits of the given block position, building its section from the source if necessary.
+     *
+     * @return A combination of {@link #STANDABLE}, {@link #FEET}, {@link #HEAD} and {@link #DEFERRED}, or -1 if the
+     *         position cannot be indexed
+     */
+    public int getFlags(BlockSource source, int x, int y, int z) {
+        int sectionIndex = (y >> 4) + SECTION_OFFSET;
+        if (sectionIndex < 0 || sectionIndex >= MAX_SECTIONS)
+            return -1;
+        if (source instanceof CachingChunkBlockSource
+                && !((CachingChunkBlockSource<?>) source).isChunkReadable(x >> 4, z >> 4))
+            return -1;
+        Map<Long, ChunkColumn> columns = worlds.computeIfAbsent(source.getWorld().getUID(),
+                uid -> new ConcurrentHashMap<>());
+        long key = getKey(x >> 4, z >> 4);
+        ChunkColumn column = columns.computeIfAbsent(key, k -> new ChunkColumn());
+        Section section = column.sections.get(sectionIndex);
+        if (section == null) {
+            section = build(source, x >> 4, y >> 4, z >> 4);
+            // a source snapshotted before the last change would publish stale bits
+            if (!column.invalidated && source.isCurrent(x >> 4, z >> 4)) {
+                column.sections.set(sectionIndex, section);
+            }
+        }
+        int bit = (y & 15) << 8 | (z & 15) << 4 | x & 15;
+        return section.get(bit);
+    }
+
+    /**
+     * @return The number of sections currently indexed in the given world
+     */
+    public int getSectionCount(World world) {
+        Map<Long, ChunkColumn> columns = worlds.get(world.getUID());
+        if (columns == null)
+            return 0;
+        int count = 0;
+        for (ChunkColumn column : columns.values()) {
+            for (int i = 0; i < MAX_SECTIONS; i++) {
+                if (column.sections.get(i) != null) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns whether an entity might be able to stand at the given position. This over-approximates
+     * {@link MinecraftBlockExaminer} walking: positions deferred to the full examiner count as walkable and doors and
+     * gates count as open.
+     *
+     * @return 1 if the position may be walkable, 0 if it is not, or -1 if the position cannot be indexed
+     */
+    public int getWalkableState(BlockSource source, int x, int y, int z) {
+        if (!SpigotUtil.checkYSafe(y, source.getWorld()))
+            return 0;
+        int flags = getFlags(source, x, y, z);
+        if (flags == -1)
+            return -1;
+        if ((flags & STANDABLE) == 0)
+            return 0;
+        if ((flags & DEFERRED) != 0)
+            return 1;
+        boolean feet = (flags & FEET) != 0 || isOpenable(source.getMaterialAt(x, y, z));
+        boolean head = (flags & HEAD) != 0 || isOpenable(source.getMaterialAt(x, y + 1, z));
+        return feet && head ? 1 : 0;
+    }
+
+    /**
+     * Drops the indexed sections of the given chunk.
+     */
+    public void invalidate(World world, int chunkX, int chunkZ) {
+        Map<Long, ChunkColumn> columns = worlds.get(world.getUID());
+        if (columns == null)
+            return;
+        ChunkColumn column = columns.remove(getKey(chunkX, chunkZ));
+        if (column != null) {
+            column.invalidated = true;
+        }
+    }
+
+    @Override
+    public void onChunkChanged(World world, int chunkX, int chunkZ) {
+        invalidate(world, chunkX, chunkZ);
+    }
+
+    @Override
+    public void onWorldUnloaded(World world) {
+        Map<Long, ChunkColumn> columns = worlds.remove(world.getUID());
+        if (columns == null)
+            return;
+        for (ChunkColumn column : columns.values()) {
+            column.invalidated = true;
+        }
+    }
+
+    private static class ChunkColumn {
+        private volatile boolean invalidated;
+        private final AtomicReferenceArray<Section> sections = new AtomicReferenceArray<>(MAX_SECTIONS);
+    }
+
+    private static class Section {
+        private final long[][] bits = new long[4][64];
+
+        private int get(int bit) {
+            int word = bit >>> 6;
+            long mask = 1L << bit;
+            int flags = 0;
+            for (int i = 0; i < bits.length; i++) {
+                if ((bits[i][word] & mask) != 0) {
+                    flags |= 1 << i;
+                }
+            }
+            return flags;
+        }
+
+        private void set(int flag, int bit) {
+            bits[Integer.numberOfTrailingZeros(flag)][bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    private static long getKey(int chunkX, int chunkZ) {
+        return (long) chunkX << 32 | chunkZ & 0xFFFFFFFFL;
+    }
+
+    private static boolean isOpenable(Material mat) {
+        return MaterialTraits.isDoor(mat) || MaterialTraits.isGate(mat);
+    }
+
+    /**
+     * The result at this position depends on the parent node or adds callbacks, such as ladders and fences below, and
+     * must be answered by the full examiner.
+     */
+    public static final int DEFERRED = 1 << 3;
+    /**
+     * An entity can fit its feet into the block.
+     */
+    public static final int FEET = 1 << 1;
+    /**
+     * An entity can fit its head into the block above.
+     */
+    public static final int HEAD = 1 << 2;
+    private static final int MAX_SECTIONS = 64;
+    private static final int SECTION_OFFSET = MAX_SECTIONS / 2;
+    /**
+     * The block below can be stood on, swum in or climbed.
+     */
+    public static final int STANDABLE = 1 << 0;
+}
@@ -0,0 +1,354 @@
+package net.citizensnpcs.api.navmesh;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.WeakHashMap;
+
+import org.bukkit.World;
+import org.bukkit.util.Vector;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import net.citizensnpcs.api.astar.pathfinder.BlockSource;
+import net.citizensnpcs.api.astar.pathfinder.ChunkSnapshotCache;
+import net.citizensnpcs.api.astar.pathfinder.ChunkSnapshotCache.ChunkChangeListener;
+import net.citizensnpcs.api.astar.pathfinder.PackedPosition;
+import net.citizensnpcs.api.astar.pathfinder.WalkabilityIndex;
+import net.citizensnpcs.api.util.LongIntHashMap;
+import net.citizensnpcs.api.util.SpigotUtil;
+
+/**
+ * A navigation mesh over walkable blocks. Each chunk is built on first use by greedily merging the blocks of every
+ * feet height that {@link WalkabilityIndex#getWalkableState(BlockSource, int, int, int)} considers walkable into
+ * rectangular {@link NavMeshRegion}s. The {@link NavMeshPortal}s between regions, including regions in neighbouring
+ * chunks and one block higher or lower, are found the first time a search leaves a region.
+ * <p>
+ * {@link #findCorridor(BlockSource, Vector, Vector, int)} searches this region graph, which on open terrain has a few
+ * regions per chunk instead of hundreds of blocks, and {@link NavMeshPathfinder} then refines a block path inside the
+ * corridor. Chunks are dropped and rebuilt lazily when the {@link ChunkSnapshotCache} reports them as changed. A chunk
+ * built through a source that is no longer {@link BlockSource#isCurrent(int, int) current} is only used for searches
+ * through that source. The mesh is thread-safe.
+ */
+public class NavMesh implements ChunkChangeListener {
+    // chunks built through sources whose snapshot is older than the last change, kept only for those sources
+    private final Map<BlockSource, Map<Long, MeshChunk>> staleChunks = new WeakHashMap<>();
+    private final WalkabilityIndex walkability;
+    private final Map<UUID, Map<Long, MeshChunk>> worlds = Maps.newHashMap();
+
+    public NavMesh(WalkabilityIndex walkability) {
+        this.walkability = walkability;
+    }
+
+    public NavMesh(WalkabilityIndex walkability, ChunkSnapshotCache cache) {
+        this(walkability);
+        cache.addListener(this);
+    }
+
+    private MeshChunk build(BlockSource source, int chunkX, int chunkZ) {
+        World world = source.getWorld();
+        long key = getChunkKey(chunkX, chunkZ);
+        int baseX = chunkX << 4, baseZ = chunkZ << 4;
+        MeshChunk chunk = new MeshChunk();
+        int[] states = new int[256];
+        int[] assigned = new int[256];
+        for (int y = MIN_Y; y <= MAX_Y; y++) {
+            if (!SpigotUtil.checkYSafe(y, world)) {
+                continue;
+            }
+            boolean any = false;
+            for (int i = 0; i < 256; i++) {
+                states[i] = walkability.getWalkableState(source, baseX + (i & 15), y, baseZ + (i >> 4));
+                if (states[i] == -1)
+                    return null;
+                any |= states[i] == 1;
+            }
+            if (!any) {
+                continue;
+            }
+            Arrays.fill(assigned, -1);
+            for (int z = 0; z < 16; z++) {
+                for (int x = 0; x < 16; x++) {
+                    if (!isFree(states, assigned, x, z)) {
+                        continue;
+                    }
+                    int width = 1;
+                    while (x + width < 16 && isFree(states, assigned, x + width, z)) {
+                        width++;
+                    }
+                    int depth = 1;
+                    rows: while (z + depth < 16) {
+                        for (int i = 0; i < width; i++) {
+                            if (!isFree(states, assigned, x + i, z + depth)) {
+                                break rows;
+                            }
+                        }
+                        depth++;
+                    }
+                    int idx = chunk.regions.size();
+                    chunk.regions.add(new NavMeshRegion(key, y, baseX + x, baseZ + z, baseX + x + width - 1,
+                            baseZ + z + depth - 1));
+                    for (int dz = 0; dz < depth; dz++) {
+                        for (int dx = 0; dx < width; dx++) {
+                            assigned[z + dz << 4 | x + dx] = idx;
+                            chunk.cells.put(PackedPosition.pack(baseX + x + dx, y, baseZ + z + dz), idx);
+                        }
+                    }
+                }
+            }
+        }
+        return chunk;
+    }
+
+    /**
+     * Drops every built chunk.
+     */
+    public synchronized void clear() {
+        for (Map<Long, MeshChunk> chunks : worlds.values()) {
+            for (MeshChunk chunk : chunks.values()) {
+                chunk.invalidate();
+            }
+        }
+        worlds.clear();
+        staleChunks.clear();
+    }
+
+    private void clearPortals(Map<Long, MeshChunk> chunks, int chunkX, int chunkZ) {
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dz = -1; dz <= 1; dz++) {
+                MeshChunk chunk = chunks.get(getChunkKey(chunkX + dx, chunkZ + dz));
+                if (chunk == null) {
+                    continue;
+                }
+                for (NavMeshRegion region : chunk.regions) {
+                    region.portals = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Searches the region graph for a corridor of regions from the start block to the goal block.
+     *
+     * @param source
+     *            The block source used to build missing chunks
+     * @param start
+     *            The start position
+     * @param goal
+     *            The goal position
+     * @param maxIterations
+     *            The maximum number of regions to expand, or -1 for no limit
+     * @return The regions from the start to the goal, or <code>null</code> if no corridor was found
+     */
+    public synchronized List<NavMeshRegion> findCorridor(BlockSource source, Vector start, Vector goal,
+            int maxIterations) {
+        NavMeshRegion from = getRegion(source, start.getBlockX(), start.getBlockY(), start.getBlockZ());
+        NavMeshRegion to = getRegion(source, goal.getBlockX(), goal.getBlockY(), goal.getBlockZ());
+        if (from == null || to == null)
+            return null;
+        if (from == to)
+            return Collections.singletonList(from);
+        Map<NavMeshRegion, SearchNode> best = Maps.newHashMap();
+        PriorityQueue<SearchNode> open = new PriorityQueue<>();
+        SearchNode root = new SearchNode(from, null, start, 0, (float) start.distance(goal));
+        best.put(from, root);
+        open.add(root);
+        int iterations = 0;
+        while (!open.isEmpty()) {
+            SearchNode node = open.poll();
+            if (best.get(node.region) != node) {
+                continue;
+            }
+            if (node.region == to) {
+                List<NavMeshRegion> corridor = Lists.newArrayList();
+                for (SearchNode step = node; step != null; step = step.parent) {
+                    corridor.add(step.region);
+                }
+                Collections.reverse(corridor);
+                return corridor;
+            }
+            if (maxIterations >= 0 && iterations++ >= maxIterations)
+                return null;
+            for (NavMeshPortal portal : getPortals(source, node.region)) {
+                float g = node.g + (float) node.point.distance(portal.midpoint);
+                SearchNode previous = best.get(portal.to);
+                if (previous != null && previous.g <= g) {
+                    continue;
+                }
+                SearchNode next = new SearchNode(portal.to, node, portal.midpoint, g,
+                        g + (float) portal.midpoint.distance(goal));
+                best.put(portal.to, next);
+                open.add(next);
+            }
+        }
+        return null;
+    }
+
+    private MeshChunk getChunk(BlockSource source, int chunkX, int chunkZ) {
+        Map<Long, MeshChunk> chunks = worlds.computeIfAbsent(source.getWorld().getUID(), uid -> Maps.newHashMap());
+        long key = getChunkKey(chunkX, chunkZ);
+        MeshChunk chunk = chunks.get(key);
+        if (chunk != null)
+            return chunk;
+        Map<Long, MeshChunk> stale = staleChunks.get(source);
+        if (stale != null && stale.containsKey(key))
+            return stale.get(key);
+        chunk = build(source, chunkX, chunkZ);
+        if (chunk == null)
+            return null;
+        if (source.isCurrent(chunkX, chunkZ)) {
+            chunks.put(key, chunk);
+            // regions beside the new chunk may now have portals into it
+            clearPortals(chunks, chunkX, chunkZ);
+        } else {
+            chunk.invalidate();
+            staleChunks.computeIfAbsent(source, s -> Maps.newHashMap()).put(key, chunk);
+        }
+        return chunk;
+    }
+
+    /**
+     * @return The number of chunks built in the given world
+     */
+    public synchronized int getChunkCount(World world) {
+        Map<Long, MeshChunk> chunks = worlds.get(world.getUID());
+        return chunks == null ? 0 : chunks.size();
+    }
+
+    synchronized List<NavMeshPortal> getPortals(BlockSource source, NavMeshRegion region) {
+        if (region.portals != null)
+            return region.portals;
+        Map<NavMeshRegion, double[]> crossings = Maps.newLinkedHashMap();
+        boolean keep = region.valid;
+        int y = region.y;
+        for (int x = region.minX; x <= region.maxX; x++) {
+            for (int z = region.minZ; z <= region.maxZ; z++) {
+                for (int[] step : STEPS) {
+                    int nx = x + step[0], nz = z + step[1];
+                    if (region.contains(nx, y, nz) && (step[0] != 0 || step[1] != 0)) {
+                        continue;
+                    }
+                    for (int dy = -1; dy <= 1; dy++) {
+                        if (step[0] == 0 && step[1] == 0 && dy == 0) {
+                            continue;
+                        }
+                        NavMeshRegion neighbour = getRegion(source, nx, y + dy, nz);
+                        if (neighbour == null || neighbour == region) {
+                            continue;
+                        }
+                        keep &= neighbour.valid;
+                        double[] sum = crossings.computeIfAbsent(neighbour, n -> new double[4]);
+                        sum[0] += x + nx + 1;
+                        sum[1] += y * 2 + dy;
+                        sum[2] += z + nz + 1;
+                        sum[3]++;
+                    }
+                }
+            }
+        }
+        List<NavMeshPortal> portals = Lists.newArrayListWithCapacity(crossings.size());
+        for (Map.Entry<NavMeshRegion, double[]> entry : crossings.entrySet()) {
+            double[] sum = entry.getValue();
+            double count = sum[3] * 2;
+            portals.add(new NavMeshPortal(entry.getKey(),
+                    new Vector(sum[0] / count, sum[1] / count, sum[2] / count), (int) sum[3]));
+        }
+        // portals into stale chunks must not outlive the search that found them
+        if (keep) {
+            region.portals = portals;
+        }
+        return portals;
+    }
+
+    /**
+     * Returns the region containing the given block, building its chunk if necessary.
+     *
+     * @return The region, or <code>null</code> if the block is not walkable or its chunk cannot be read
+     */
+    public synchronized NavMeshRegion getRegion(BlockSource source, int x, int y, int z) {
+        MeshChunk chunk = getChunk(source, x >> 4, z >> 4);
+        if (chunk == null)
+            return null;
+        int idx = chunk.cells.get(PackedPosition.pack(x, y, z));
+        return idx == -1 ? null : chunk.regions.get(idx);
+    }
+
+    /**
+     * Drops the built chunk at the given position, which is rebuilt the next time it is needed.
+     */
+    public synchronized void invalidate(World world, int chunkX, int chunkZ) {
+        Map<Long, MeshChunk> chunks = worlds.get(world.getUID());
+        if (chunks == null)
+            return;
+        MeshChunk chunk = chunks.remove(getChunkKey(chunkX, chunkZ));
+        if (chunk != null) {
+            chunk.invalidate();
+            clearPortals(chunks, chunkX, chunkZ);
+        }
+    }
+
+    @Override
+    public void onChunkChanged(World world, int chunkX, int chunkZ) {
+        invalidate(world, chunkX, chunkZ);
+    }
+
+    @Override
+    public synchronized void onWorldUnloaded(World world) {
+        Map<Long, MeshChunk> chunks = worlds.remove(world.getUID());
+        if (chunks == null)
+            return;
+        for (MeshChunk chunk : chunks.values()) {
+            chunk.invalidate();
+        }
+    }
+
+    private static class MeshChunk {
+        private final LongIntHashMap cells = new LongIntHashMap(256, -1);
+        private final List<NavMeshRegion> regions = Lists.newArrayList();
+
+        private void invalidate() {
+            for (NavMeshRegion region : regions) {
+                region.valid = false;
+                region.portals = null;
+            }
+        }
+    }
+
+    private static class SearchNode implements Comparable<SearchNode> {
+        private final float f;
+        private final float g;
+        private final SearchNode parent;
+        private final Vector point;
+        private final NavMeshRegion region;
+
+        private SearchNode(NavMeshRegion region, SearchNode parent, Vector point, float g, float f) {
+            this.region = region;
+            this.parent = parent;
+            this.point = point;
+            this.g = g;
+            this.f = f;
+        }
+
+        @Override
+        public int compareTo(SearchNode other) {
+            return Float.compare(f, other.f);
+        }
+    }
+
+    private static long getChunkKey(int chunkX, int chunkZ) {
+        return (long) chunkX << 32 | chunkZ & 0xFFFFFFFFL;
+    }
+
+    private static boolean isFree(int[] states, int[] assigned, int x, int z) {
+        int idx = z << 4 | x;
+        return states[idx] == 1 && assigned[idx] == -1;
+    }
+
+    private static final int MAX_Y = 511;
+    private static final int MIN_Y = -512;
+    private static final int[][] STEPS = { { 0, 0 }, { 1, 0 }, { -1, 0 }, { 0, 1 }, { 0, -1 } };
+}
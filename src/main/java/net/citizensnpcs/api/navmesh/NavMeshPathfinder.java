@@ -0,0 +1,113 @@
+package net.citizensnpcs.api.navmesh;
+
+import java.util.List;
+import java.util.Set;
+
+import org.bukkit.Location;
+import org.bukkit.util.Vector;
+
+import com.google.common.collect.Sets;
+
+import net.citizensnpcs.api.astar.AStarMachine;
+import net.citizensnpcs.api.astar.pathfinder.BlockExaminer;
+import net.citizensnpcs.api.astar.pathfinder.BlockSource;
+import net.citizensnpcs.api.astar.pathfinder.Path;
+import net.citizensnpcs.api.astar.pathfinder.PathPoint;
+import net.citizensnpcs.api.astar.pathfinder.VectorGoal;
+import net.citizensnpcs.api.astar.pathfinder.VectorNode;
+
+/**
+ * Finds block paths for the {@link net.citizensnpcs.api.ai.PathfinderType#NAVMESH} pathfinder. The {@link NavMesh}
+ * region graph is searched for a corridor first, and the usual {@link VectorNode} search is then run with every block
+ * outside the corridor and the regions bordering it treated as unpassable, so that it only expands blocks along the
+ * route. Where no corridor is found, or the refined search fails inside it, an unrestricted search is run instead.
+ */
+public class NavMeshPathfinder {
+    private final AStarMachine<VectorNode, Path> machine;
+    private final NavMesh mesh;
+
+    public NavMeshPathfinder(NavMesh mesh) {
+        this(mesh, AStarMachine.createWithDefaultStorage());
+    }
+
+    public NavMeshPathfinder(NavMesh mesh, AStarMachine<VectorNode, Path> machine) {
+        this.mesh = mesh;
+        this.machine = machine;
+    }
+
+    /**
+     * Finds a path from the start to the destination.
+     *
+     * @param source
+     *            The block source
+     * @param start
+     *            The start location
+     * @param dest
+     *            The destination
+     * @param range
+     *            The distance from the destination at which the search is finished
+     * @param maxIterations
+     *            The maximum number of iterations of the corridor search, and of the block searches together, or -1
+     *            for no limit
+     * @param examiners
+     *            The examiners to use, which should describe walking
+     * @return The path, or <code>null</code> if not found
+     */
+    public Path findPath(BlockSource source, Location start, Location dest, float range, int maxIterations,
+            BlockExaminer... examiners) {
+        VectorGoal goal = new VectorGoal(dest, range);
+        List<NavMeshRegion> corridor = mesh.findCorridor(source, start.toVector(), goal.getGoalVector(),
+                maxIterations);
+        if (corridor != null) {
+            Set<NavMeshRegion> allowed = Sets.newHashSet(corridor);
+            for (NavMeshRegion region : corridor) {
+                for (NavMeshPortal portal : mesh.getPortals(source, region)) {
+                    allowed.add(portal.to);
+                }
+            }
+            BlockExaminer[] restricted = new BlockExaminer[examiners.length + 1];
+            System.arraycopy(examiners, 0, restricted, 0, examiners.length);
+            restricted[examiners.length] = new CorridorExaminer(allowed);
+            AStarMachine<VectorNode, Path>.AStarState state = machine.getStateFor(goal,
+                    new VectorNode(goal, start, source, restricted));
+            Path path = machine.run(state, maxIterations);
+            if (path != null)
+                return path;
+            if (maxIterations >= 0) {
+                // the fallback only gets what the refined search left over
+                maxIterations -= state.getExpandedCount();
+                if (maxIterations <= 0)
+                    return null;
+            }
+        }
+        return machine.runFully(goal, new VectorNode(goal, start, source, examiners), maxIterations);
+    }
+
+    /**
+     * Rejects blocks outside a set of regions. Must be the last examiner, since it only ever overrides the others.
+     */
+    private class CorridorExaminer implements BlockExaminer {
+        private final Set<NavMeshRegion> allowed;
+
+        private CorridorExaminer(Set<NavMeshRegion> allowed) {
+            this.allowed = allowed;
+        }
+
+        @Override
+        public float getCost(BlockSource source, PathPoint point) {
+            return 0;
+        }
+
+        @Override
+        public boolean isParentDependent(BlockSource source, PathPoint point) {
+            return false;
+        }
+
+        @Override
+        public PassableState isPassable(BlockSource source, PathPoint point) {
+            Vector pos = point.getVector();
+            NavMeshRegion region = mesh.getRegion(source, pos.getBlockX(), pos.getBlockY(), pos.getBlockZ());
+            return region != null && allowed.contains(region) ? PassableState.IGNORE : PassableState.UNPASSABLE;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package net.citizensnpcs.api.navmesh;
+
+import org.bukkit.util.Vector;
+
+/**
+ * The shared edge through which one {@link NavMeshRegion} can be left for another, stored as the midpoint of the block
+ * steps crossing it.
+ */
+public class NavMeshPortal {
+    final Vector midpoint;
+    final NavMeshRegion to;
+    final int width;
+
+    NavMeshPortal(NavMeshRegion to, Vector midpoint, int width) {
+        this.to = to;
+        this.midpoint = midpoint;
+        this.width = width;
+    }
+
+    public Vector getMidpoint() {
+        return midpoint.clone();
+    }
+
+    public NavMeshRegion getTo() {
+        return to;
+    }
+
+    /**
+     * @return The number of block steps crossing the portal
+     */
+    public int getWidth() {
+        return width;
+    }
+}
@@ -0,0 +1,67 @@
+package net.citizensnpcs.api.navmesh;
+
+import java.util.List;
+
+import org.bukkit.util.Vector;
+
+/**
+ * A convex region of a {@link NavMesh}: an axis-aligned rectangle of walkable blocks sharing one feet height within a
+ * single chunk.
+ */
+public class NavMeshRegion {
+    final long chunk;
+    final int maxX;
+    final int maxZ;
+    final int minX;
+    final int minZ;
+    List<NavMeshPortal> portals;
+    boolean valid = true;
+    final int y;
+
+    NavMeshRegion(long chunk, int y, int minX, int minZ, int maxX, int maxZ) {
+        this.chunk = chunk;
+        this.y = y;
+        this.minX = minX;
+        this.minZ = minZ;
+        this.maxX = maxX;
+        this.maxZ = maxZ;
+    }
+
+    /**
+     * @return Whether the block lies inside the region
+     */
+    public boolean contains(int x, int y, int z) {
+        return y == this.y && x >= minX && x <= maxX && z >= minZ && z <= maxZ;
+    }
+
+    /**
+     * @return The number of blocks in the region
+     */
+    public int getArea() {
+        return (maxX - minX + 1) * (maxZ - minZ + 1);
+    }
+
+    /**
+     * @return The centre of the region's floor
+     */
+    public Vector getCentre() {
+        return new Vector((minX + maxX + 1) / 2.0, y, (minZ + maxZ + 1) / 2.0);
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    /**
+     * @return Whether the region is still part of its mesh, which is no longer the case once its chunk has changed
+     */
+    public boolean isValid() {
+        return valid;
+    }
+
+    @Override
+    public String toString() {
+        return "NavMeshRegion [y=" + y + ", minX=" + minX + ", minZ=" + minZ + ", maxX=" + maxX + ", maxZ=" + maxZ
+                + "]";
+    }
+}
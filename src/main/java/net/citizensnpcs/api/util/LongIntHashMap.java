@@ -0,0 +1,104 @@
+package net.citizensnpcs.api.util;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressing hash map from primitive <code>long</code> keys to <code>int</code> values. Avoids the boxing and
+ * entry allocation of a {@link java.util.HashMap} for hot lookups such as packed block positions.
+ */
+public class LongIntHashMap {
+    private long[] keys;
+    private int mask;
+    private final int missingValue;
+    private int size;
+    private int[] values;
+
+    public LongIntHashMap(int expectedSize, int missingValue) {
+        this.missingValue = missingValue;
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, missingValue);
+        mask = capacity - 1;
+    }
+
+    public void clear() {
+        if (size == 0)
+            return;
+        Arrays.fill(values, missingValue);
+        size = 0;
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != missingValue;
+    }
+
+    /**
+     * @return The value for the key, or the configured missing value if not present
+     */
+    public int get(long key) {
+        int idx = mix(key) & mask;
+        while (values[idx] != missingValue) {
+            if (keys[idx] == key)
+                return values[idx];
+            idx = idx + 1 & mask;
+        }
+        return missingValue;
+    }
+
+    /**
+     * Sets the value for the key, returning the previous value or the missing value. Storing the missing value itself
+     * is not supported.
+     */
+    public int put(long key, int value) {
+        if (value == missingValue)
+            throw new IllegalArgumentException("cannot store the missing value");
+        int idx = mix(key) & mask;
+        while (values[idx] != missingValue) {
+            if (keys[idx] == key) {
+                int old = values[idx];
+                values[idx] = value;
+                return old;
+            }
+            idx = idx + 1 & mask;
+        }
+        keys[idx] = key;
+        values[idx] = value;
+        if (++size * 2 > keys.length) {
+            rehash();
+        }
+        return missingValue;
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(oldKeys.length << 1);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] == missingValue) {
+                continue;
+            }
+            int idx = mix(oldKeys[i]) & mask;
+            while (values[idx] != missingValue) {
+                idx = idx + 1 & mask;
+            }
+            keys[idx] = oldKeys[i];
+            values[idx] = oldValues[i];
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private static int mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
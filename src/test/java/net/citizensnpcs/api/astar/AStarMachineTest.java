@@ -0,0 +1,251 @@
+package net.citizensnpcs.api.astar;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class AStarMachineTest {
+    @Test
+    public void anytimeRefinesToOptimalPath() {
+        AStarMachine<GridNode, GridPlan> machine = AStarMachine.createWithStorage(IndexedAStarStorage.FACTORY);
+        AStarMachine<GridNode, GridPlan>.AnytimeState state = machine.getAnytimeStateFor(new GridGoal(9, 9),
+                new GridNode(null, 0, 0), 3, 1);
+        while (!state.isComplete()) {
+            machine.runAnytime(state, 10);
+        }
+        assertThat(state.getEpsilon(), is(1F));
+        assertThat(state.getBestPlan().steps, is(runSimple(9, 9).steps));
+    }
+
+    @Test
+    public void bidirectionalFindsOptimalPath() {
+        AStarMachine<GridNode, GridPlan> machine = AStarMachine.createWithStorage(IndexedAStarStorage.FACTORY);
+        GridPlan plan = machine.runBidirectional(new GridGoal(9, 9), new GridNode(null, 0, 0), new GridGoal(0, 0),
+                new GridNode(null, 9, 9));
+        assertThat(plan, notNullValue());
+        assertThat(plan.steps, is(runSimple(9, 9).steps));
+    }
+
+    @Test
+    public void bidirectionalUnreachableGoal() {
+        AStarMachine<GridNode, GridPlan> machine = AStarMachine.createWithDefaultStorage();
+        GridPlan plan = machine.runBidirectional(new GridGoal(5, WALL_Z + 2), new GridNode(null, 0, 0),
+                new GridGoal(0, 0), new GridNode(null, 5, WALL_Z + 2));
+        assertThat(plan, nullValue());
+    }
+
+    @Test
+    public void bidirectionalRejectsUnsupportedNodes() {
+        AStarMachine<AStarNode, GridPlan> machine = AStarMachine.createWithDefaultStorage();
+        AStarNode node = new AStarNode(null) {
+            @Override
+            public Plan buildPlan() {
+                return new GridPlan(1);
+            }
+
+            @Override
+            public boolean equals(Object other) {
+                return this == other;
+            }
+
+            @Override
+            public Iterable<AStarNode> getNeighbours() {
+                throw new AssertionError("search should not start");
+            }
+
+            @Override
+            public int hashCode() {
+                return 0;
+            }
+        };
+        boolean thrown = false;
+        try {
+            machine.runBidirectional(null, node, null, node);
+        } catch (IllegalArgumentException e) {
+            thrown = true;
+        }
+        assertThat(thrown, is(true));
+    }
+
+    @Test
+    public void heapDecreaseKey() {
+        IndexedNodeHeap heap = new IndexedNodeHeap(2);
+        GridNode a = node(0, 0, 5), b = node(1, 0, 3), c = node(2, 0, 4);
+        heap.offer(0, a);
+        heap.offer(1, b);
+        heap.offer(2, c);
+        assertThat(heap.offer(1, node(1, 0, 6)), is(false));
+        GridNode cheaper = node(0, 0, 1);
+        assertThat(heap.offer(0, cheaper), is(true));
+        assertThat(heap.size(), is(3));
+        assertThat(heap.poll(), is((AStarNode) cheaper));
+        assertThat(heap.poll(), is((AStarNode) b));
+        assertThat(heap.poll(), is((AStarNode) c));
+        assertThat(heap.poll(), nullValue());
+    }
+
+    @Test
+    public void incrementalReplansToMovedGoal() {
+        IncrementalAStarMachine<GridNode, GridPlan> machine = new IncrementalAStarMachine<>();
+        GridPlan plan = machine.plan(new GridGoal(9, 9), new GridNode(null, 0, 0), -1);
+        assertThat(plan.steps, is(runSimple(9, 9).steps));
+        plan = machine.plan(new GridGoal(11, 10), new GridNode(null, 0, 0), -1);
+        assertThat(plan.steps, is(runSimple(11, 10).steps));
+        plan = machine.plan(new GridGoal(3, 2), new GridNode(null, 0, 0), -1);
+        assertThat(plan.steps, is(runSimple(3, 2).steps));
+        assertThat(machine.plan(new GridGoal(5, WALL_Z), new GridNode(null, 0, 0), -1), nullValue());
+    }
+
+    @Test
+    public void indexedStorageFindsOptimalPath() {
+        AStarMachine<GridNode, GridPlan> machine = AStarMachine.createWithStorage(IndexedAStarStorage.FACTORY);
+        GridPlan plan = machine.runFully(new GridGoal(9, 9), new GridNode(null, 0, 0));
+        assertThat(plan, notNullValue());
+        assertThat(plan.steps, is(runSimple(9, 9).steps));
+    }
+
+    @Test
+    public void partialPlanToClosestNode() {
+        AStarMachine<GridNode, GridPlan> machine = AStarMachine.createWithStorage(IndexedAStarStorage.FACTORY);
+        AStarMachine<GridNode, GridPlan>.AStarState state = machine.getStateFor(new GridGoal(5, WALL_Z),
+                new GridNode(null, 0, 0));
+        GridPlan plan = machine.run(state, -1, true);
+        assertThat(plan, notNullValue());
+        assertThat(state.isGoalReached(), is(false));
+        assertThat(state.getClosestNode().x, is(5));
+        assertThat(state.getClosestNode().z, is(WALL_Z - 1));
+    }
+
+    @Test
+    public void unreachableGoal() {
+        AStarMachine<GridNode, GridPlan> machine = AStarMachine.createWithStorage(IndexedAStarStorage.FACTORY);
+        assertThat(machine.runFully(new GridGoal(5, WALL_Z), new GridNode(null, 0, 0)), nullValue());
+    }
+
+    private static GridNode node(int x, int z, float f) {
+        GridNode node = new GridNode(null, x, z);
+        node.g = f;
+        return node;
+    }
+
+    private static GridPlan runSimple(int x, int z) {
+        AStarMachine<GridNode, GridPlan> machine = AStarMachine.createWithDefaultStorage();
+        return machine.runFully(new GridGoal(x, z), new GridNode(null, 0, 0));
+    }
+
+    private static class GridGoal implements AStarGoal<GridNode> {
+        private final int x, z;
+
+        private GridGoal(int x, int z) {
+            this.x = x;
+            this.z = z;
+        }
+
+        @Override
+        public float g(GridNode from, GridNode to) {
+            return 1;
+        }
+
+        @Override
+        public float getInitialCost(GridNode node) {
+            return 0;
+        }
+
+        @Override
+        public float h(GridNode from) {
+            return Math.abs(from.x - x) + Math.abs(from.z - z);
+        }
+
+        @Override
+        public boolean isFinished(GridNode node) {
+            return node.x == x && node.z == z;
+        }
+    }
+
+    private static class GridNode extends AStarNode implements BidirectionalNode {
+        private final int x, z;
+
+        private GridNode(GridNode parent, int x, int z) {
+            super(parent);
+            this.x = x;
+            this.z = z;
+        }
+
+        @Override
+        public Plan buildPlan() {
+            int steps = 0;
+            for (AStarNode node : orderedPath()) {
+                steps++;
+            }
+            return new GridPlan(steps);
+        }
+
+        @Override
+        public Plan buildPlan(AStarNode reverse) {
+            int steps = 0;
+            for (AStarNode node : orderedPath()) {
+                steps++;
+            }
+            for (AStarNode node = reverse.getParent(); node != null; node = node.getParent()) {
+                steps++;
+            }
+            return new GridPlan(steps);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (obj == null || getClass() != obj.getClass())
+                return false;
+            GridNode other = (GridNode) obj;
+            return x == other.x && z == other.z;
+        }
+
+        @Override
+        public Iterable<AStarNode> getNeighbours() {
+            List<AStarNode> neighbours = Lists.newArrayList();
+            for (int[] offset : OFFSETS) {
+                int nx = x + offset[0], nz = z + offset[1];
+                if (nx < 0 || nz < 0 || nx >= SIZE || nz >= SIZE || nz == WALL_Z) {
+                    continue;
+                }
+                neighbours.add(new GridNode(this, nx, nz));
+            }
+            return neighbours;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 + x) + z;
+        }
+    }
+
+    private static class GridPlan implements Plan {
+        private final int steps;
+
+        private GridPlan(int steps) {
+            this.steps = steps;
+        }
+
+        @Override
+        public boolean isComplete() {
+            return true;
+        }
+
+        @Override
+        public void update(Agent agent) {
+        }
+    }
+
+    private static final int[][] OFFSETS = { { 1, 0 }, { -1, 0 }, { 0, 1 }, { 0, -1 } };
+    private static final int SIZE = 16;
+    private static final int WALL_Z = 12;
+}
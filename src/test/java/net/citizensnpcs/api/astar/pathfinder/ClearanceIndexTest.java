@@ -0,0 +1,34 @@
+package net.citizensnpcs.api.astar.pathfinder;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.bukkit.Material;
+import org.junit.Test;
+
+public class ClearanceIndexTest {
+    @Test
+    public void gapBesideChunkBorder() {
+        // a 3x3 gap, 3 blocks high, carved into stone against the border at x = 16
+        MaterialGridBlockSource source = new MaterialGridBlockSource().fill(8, 60, 0, 24, 70, 12, Material.STONE)
+                .fill(13, 64, 5, 15, 66, 7, Material.AIR);
+        ClearanceIndex index = new ClearanceIndex(new WalkabilityIndex());
+        assertThat(height(index, source, 14, 64, 6, 0), is(3));
+        assertThat(height(index, source, 14, 65, 6, 0), is(2));
+        assertThat(height(index, source, 14, 66, 6, 0), is(1));
+        assertThat(height(index, source, 15, 64, 7, 0), is(3));
+        assertThat(height(index, source, 14, 63, 6, 0), is(0));
+        assertThat(height(index, source, 16, 64, 6, 0), is(0));
+
+        assertThat(height(index, source, 14, 64, 6, 1), is(3));
+        assertThat(height(index, source, 14, 65, 6, 1), is(2));
+        // footprints reaching into the stone of the gap's own chunk and of the next chunk
+        assertThat(height(index, source, 13, 64, 6, 1), is(0));
+        assertThat(height(index, source, 15, 64, 6, 1), is(0));
+        assertThat(height(index, source, 14, 64, 6, 2), is(0));
+    }
+
+    private static int height(ClearanceIndex index, BlockSource source, int x, int y, int z, int radius) {
+        return ClearanceIndex.getHeight(index.getClearance(source, x, y, z), radius);
+    }
+}
@@ -0,0 +1,112 @@
+package net.citizensnpcs.api.astar.pathfinder;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+import java.util.Set;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.util.Vector;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import net.citizensnpcs.api.astar.AStarMachine;
+import net.citizensnpcs.api.astar.pathfinder.PathTest.FakeBlockSource;
+
+public class JumpPointExaminerTest {
+    @Test
+    public void jumpsMatchDefaultExpansion() {
+        GridBlockSource source = new GridBlockSource();
+        for (int x = 2; x <= 12; x++) {
+            source.walls.add(PackedPosition.pack(x, 1, 6));
+        }
+        for (int z = 9; z <= SIZE; z++) {
+            source.walls.add(PackedPosition.pack(8, 1, z));
+        }
+        source.walls.add(PackedPosition.pack(4, 1, 11));
+        source.walls.add(PackedPosition.pack(13, 1, 3));
+
+        AStarMachine<VectorNode, Path> machine = AStarMachine.createWithDefaultStorage();
+        Location start = new Location(null, 1, 1, 1);
+        VectorGoal goal = new VectorGoal(new Vector(14, 1, 14), 0);
+        FloorExaminer floor = new FloorExaminer();
+        Path plain = machine.runFully(goal, new VectorNode(goal, start, source, floor));
+        JumpPointExaminer jps = new JumpPointExaminer(floor).setGoalRadius(0);
+        Path jumped = machine.runFully(goal, new VectorNode(goal, start, source, jps, floor));
+        assertThat(plain, notNullValue());
+        assertThat(jumped, notNullValue());
+        assertThat(jumped.size(), is(plain.size()));
+        assertThat(Math.abs(length(jumped) - length(plain)) < 1e-6, is(true));
+        for (Vector vector : jumped.getPath()) {
+            assertThat(source.isFloor(vector.getBlockX(), vector.getBlockY(), vector.getBlockZ()), is(true));
+        }
+        // a second search through the same examiner reuses its classified blocks
+        Path again = machine.runFully(goal, new VectorNode(goal, start, source, jps, floor));
+        assertThat(vectors(again), is(vectors(jumped)));
+    }
+
+    private static double length(Path path) {
+        double length = 0;
+        List<Vector> vectors = vectors(path);
+        for (int i = 1; i < vectors.size(); i++) {
+            length += vectors.get(i).distance(vectors.get(i - 1));
+        }
+        return length;
+    }
+
+    private static List<Vector> vectors(Path path) {
+        return Lists.newArrayList(path.getPath());
+    }
+
+    /**
+     * Allows standing in any empty block with a solid floor and an empty block above it.
+     */
+    private static class FloorExaminer implements BlockExaminer {
+        @Override
+        public float getCost(BlockSource source, PathPoint point) {
+            return 0;
+        }
+
+        @Override
+        public boolean isParentDependent(BlockSource source, PathPoint point) {
+            return false;
+        }
+
+        @Override
+        public PassableState isPassable(BlockSource source, PathPoint point) {
+            Vector pos = point.getVector();
+            return ((GridBlockSource) source).isFloor(pos.getBlockX(), pos.getBlockY(), pos.getBlockZ())
+                    ? PassableState.PASSABLE
+                    : PassableState.UNPASSABLE;
+        }
+    }
+
+    /**
+     * A square of stone floor at height 0, with single stone wall blocks standing on it.
+     */
+    private static class GridBlockSource extends FakeBlockSource {
+        private final Set<Long> walls = Sets.newHashSet();
+
+        @Override
+        public Material getMaterialAt(int x, int y, int z) {
+            if (x < 0 || z < 0 || x > SIZE || z > SIZE)
+                return Material.AIR;
+            if (y == 0 || walls.contains(PackedPosition.pack(x, y, z))
+                    || walls.contains(PackedPosition.pack(x, y - 1, z)))
+                return Material.STONE;
+            return Material.AIR;
+        }
+
+        private boolean isFloor(int x, int y, int z) {
+            return getMaterialAt(x, y - 1, z) == Material.STONE && getMaterialAt(x, y, z) == Material.AIR
+                    && getMaterialAt(x, y + 1, z) == Material.AIR;
+        }
+    }
+
+    private static final int SIZE = 15;
+}
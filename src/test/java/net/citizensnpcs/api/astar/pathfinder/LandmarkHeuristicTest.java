@@ -0,0 +1,183 @@
+package net.citizensnpcs.api.astar.pathfinder;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.util.Vector;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import net.citizensnpcs.api.astar.AStarMachine;
+import net.citizensnpcs.api.astar.pathfinder.PathTest.FakeBlockSource;
+
+public class LandmarkHeuristicTest {
+    @Test
+    public void estimatesAreAdmissible() {
+        MazeBlockSource source = new MazeBlockSource();
+        LandmarkHeuristic heuristic = compute(source);
+        AStarMachine<VectorNode, Path> machine = AStarMachine.createWithDefaultStorage();
+        boolean tighter = false;
+        for (Vector target : new Vector[] { new Vector(0, 1, 0), new Vector(4, 1, 4), new Vector(8, 1, 8) }) {
+            float[] goalDistances = heuristic.getDistances(target);
+            assertThat(goalDistances, notNullValue());
+            VectorGoal goal = new VectorGoal(target, 0);
+            for (Vector start : source.getOpenBlocks()) {
+                if (start.getBlockX() == POCKET_X) {
+                    continue;
+                }
+                Path path = machine.runFully(goal, new VectorNode(goal,
+                        new Location(source.getWorld(), start.getX(), start.getY(), start.getZ()), source,
+                        new MazeExaminer()));
+                assertThat(path, notNullValue());
+                double walked = length(path);
+                float estimate = heuristic.estimate(start.getBlockX(), start.getBlockY(), start.getBlockZ(),
+                        goalDistances);
+                assertThat(estimate <= walked + 1e-4, is(true));
+                tighter |= estimate > start.distance(target) + 1;
+            }
+        }
+        assertThat(tighter, is(true));
+    }
+
+    @Test
+    public void saveLoadRoundTrip() throws IOException {
+        MazeBlockSource source = new MazeBlockSource();
+        LandmarkHeuristic heuristic = compute(source);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        heuristic.save(out);
+        LandmarkHeuristic loaded = LandmarkHeuristic.load(new ByteArrayInputStream(out.toByteArray()));
+        assertThat(loaded.getWorld(), is(heuristic.getWorld()));
+        assertThat(loaded.getFingerprint(), is(heuristic.getFingerprint()));
+        assertThat(loaded.getLandmarks(), is(heuristic.getLandmarks()));
+        assertThat(loaded.size(), is(heuristic.size()));
+        assertThat(loaded.isInRegion(POCKET_X, 1, 8), is(true));
+        assertThat(loaded.isInRegion(POCKET_X + 1, 1, 8), is(false));
+        for (Vector block : source.getOpenBlocks()) {
+            assertThat(loaded.getDistances(block), is(heuristic.getDistances(block)));
+        }
+        boolean thrown = false;
+        try {
+            LandmarkHeuristic.load(new ByteArrayInputStream(new byte[] { 1, 2, 3 }));
+        } catch (IOException e) {
+            thrown = true;
+        }
+        assertThat(thrown, is(true));
+    }
+
+    @Test
+    public void unreachableBlocksGiveNoBound() {
+        MazeBlockSource source = new MazeBlockSource();
+        LandmarkHeuristic heuristic = compute(source);
+        float[] goalDistances = heuristic.getDistances(new Vector(8, 1, 8));
+        // the pocket is walled off from the seed, so it is never numbered
+        assertThat(heuristic.getDistances(new Vector(POCKET_X, 1, 4)), nullValue());
+        assertThat(heuristic.estimate(POCKET_X, 1, 4, goalDistances), is(0F));
+        assertThat(heuristic.estimate(0, 1, 0, null), is(0F));
+        float[] unknown = new float[goalDistances.length];
+        Arrays.fill(unknown, Float.NaN);
+        assertThat(heuristic.estimate(0, 1, 0, unknown), is(0F));
+        assertThat(heuristic.size(), is(source.getOpenBlocks().size() - 9));
+    }
+
+    private static LandmarkHeuristic compute(MazeBlockSource source) {
+        return LandmarkHeuristic.compute(source, new Vector(0, 1, 0), new Vector(POCKET_X, 1, 8),
+                new Vector(0, 1, 0), 3, new MazeExaminer());
+    }
+
+    private static double length(Path path) {
+        List<Vector> vectors = Lists.newArrayList(path.getPath());
+        double length = 0;
+        for (int i = 1; i < vectors.size(); i++) {
+            length += vectors.get(i).distance(vectors.get(i - 1));
+        }
+        return length;
+    }
+
+    /**
+     * Allows standing on the open cells of the {@link #MAZE} at height 1.
+     */
+    private static class MazeExaminer implements BlockExaminer {
+        @Override
+        public float getCost(BlockSource source, PathPoint point) {
+            return 0;
+        }
+
+        @Override
+        public boolean isParentDependent(BlockSource source, PathPoint point) {
+            return false;
+        }
+
+        @Override
+        public PassableState isPassable(BlockSource source, PathPoint point) {
+            Vector pos = point.getVector();
+            return pos.getBlockY() == 1 && isOpen(pos.getBlockX(), pos.getBlockZ()) ? PassableState.PASSABLE
+                    : PassableState.UNPASSABLE;
+        }
+    }
+
+    private static class MazeBlockSource extends FakeBlockSource {
+        private final World world = (World) Proxy.newProxyInstance(World.class.getClassLoader(),
+                new Class<?>[] { World.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getUID":
+                            return WORLD;
+                        case "getMinHeight":
+                            return 0;
+                        case "getMaxHeight":
+                            return 256;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+
+        private List<Vector> getOpenBlocks() {
+            List<Vector> blocks = Lists.newArrayList();
+            for (int z = 0; z < MAZE.length; z++) {
+                for (int x = 0; x < MAZE[z].length(); x++) {
+                    if (isOpen(x, z)) {
+                        blocks.add(new Vector(x, 1, z));
+                    }
+                }
+            }
+            return blocks;
+        }
+
+        @Override
+        public World getWorld() {
+            return world;
+        }
+    }
+
+    private static boolean isOpen(int x, int z) {
+        return z >= 0 && z < MAZE.length && x >= 0 && x < MAZE[z].length() && MAZE[z].charAt(x) == '.';
+    }
+
+    /**
+     * A maze in the x/z plane, with a separate pocket at {@link #POCKET_X} that cannot be reached from the rest.
+     */
+    private static final String[] MAZE = { //
+            ".........#.", //
+            ".#######.#.", //
+            ".#.....#.#.", //
+            ".#.###.#.#.", //
+            ".#.#.#.#.#.", //
+            ".#.#.#...#.", //
+            ".#...#.###.", //
+            ".#####...#.", //
+            ".........#." };
+    private static final int POCKET_X = 10;
+    private static final UUID WORLD = UUID.randomUUID();
+}
@@ -0,0 +1,71 @@
+package net.citizensnpcs.api.astar.pathfinder;
+
+import java.lang.reflect.Proxy;
+import java.util.UUID;
+
+import org.bukkit.Material;
+import org.bukkit.World;
+
+import net.citizensnpcs.api.util.BoundingBox;
+import net.citizensnpcs.api.util.LongIntHashMap;
+
+/**
+ * A block source over a sparse grid of materials in a fake world between heights 0 and 255, where every unset block
+ * is air.
+ */
+public class MaterialGridBlockSource extends BlockSource {
+    private final LongIntHashMap materials = new LongIntHashMap(256, -1);
+    private final UUID uid = UUID.randomUUID();
+    private final World world = (World) Proxy.newProxyInstance(World.class.getClassLoader(),
+            new Class<?>[] { World.class }, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getUID":
+                        return uid;
+                    case "getMinHeight":
+                        return 0;
+                    case "getMaxHeight":
+                        return 255;
+                    case "hashCode":
+                        return uid.hashCode();
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+
+    /**
+     * Sets every block in the given box, inclusive.
+     */
+    public MaterialGridBlockSource fill(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, Material mat) {
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                for (int z = minZ; z <= maxZ; z++) {
+                    set(x, y, z, mat);
+                }
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public BoundingBox getCollisionBox(int x, int y, int z) {
+        return MaterialTraits.isSolid(getMaterialAt(x, y, z)) ? BoundingBox.ONE.add(x, y, z) : BoundingBox.EMPTY;
+    }
+
+    @Override
+    public Material getMaterialAt(int x, int y, int z) {
+        int ordinal = materials.get(PackedPosition.pack(x, y, z));
+        return ordinal == -1 ? Material.AIR : Material.values()[ordinal];
+    }
+
+    @Override
+    public World getWorld() {
+        return world;
+    }
+
+    public MaterialGridBlockSource set(int x, int y, int z, Material mat) {
+        materials.put(PackedPosition.pack(x, y, z), mat.ordinal());
+        return this;
+    }
+}
@@ -0,0 +1,134 @@
+package net.citizensnpcs.api.astar.pathfinder;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.util.Vector;
+import org.junit.Test;
+
+import net.citizensnpcs.api.astar.AStarGoal;
+import net.citizensnpcs.api.astar.AStarMachine;
+import net.citizensnpcs.api.util.BoundingBox;
+
+public class PackedBlockAStarStorageTest {
+    @Test
+    public void keepsCheapestParents() {
+        PackedBlockAStarStorage[] storage = new PackedBlockAStarStorage[1];
+        AStarMachine<VectorNode, Path> machine = AStarMachine
+                .createWithStorage(() -> storage[0] = new PackedBlockAStarStorage());
+        GridGoal goal = new GridGoal();
+        // the goal is never reached, so the search floods the whole grid
+        assertThat(machine.runFully(goal, node(null, 0, 0)), is((Path) null));
+        assertThat(storage[0].getVisitedCount(), is(SIZE * SIZE - WALL_LENGTH));
+
+        double cost = 0;
+        boolean throughGap = false;
+        long position = PackedPosition.pack(SIZE - 1, 0, 0);
+        while (position != PackedPosition.pack(0, 0, 0)) {
+            long parent = storage[0].getParent(position);
+            assertThat(parent == Long.MIN_VALUE, is(false));
+            cost += PackedPosition.toVector(position).distance(PackedPosition.toVector(parent));
+            throughGap |= position == PackedPosition.pack(WALL_X, 0, SIZE - 1);
+            position = parent;
+        }
+        assertThat(throughGap, is(true));
+        // around the wall through the gap at its end, cutting the corners diagonally
+        assertThat(Math.abs(cost - (2 * (Math.sqrt(2) + SIZE - 2) + 2)) < 1e-4, is(true));
+    }
+
+    @Test
+    public void openCloseAndExamine() {
+        PackedBlockAStarStorage storage = new PackedBlockAStarStorage();
+        VectorNode root = node(null, 0, 0);
+        VectorNode child = node(root, 1, 0);
+        assertThat(storage.shouldExamine(root), is(true));
+        storage.open(root);
+        assertThat(storage.getVisitedCount(), is(1));
+        assertThat(storage.getParent(PackedPosition.pack(0, 0, 0)), is(Long.MIN_VALUE));
+        // a second node for an open block is only examined if it is cheaper
+        assertThat(storage.shouldExamine(node(null, 0, 0)), is(false));
+        assertThat(storage.shouldExamine(child), is(true));
+
+        assertThat(storage.removeBestNode(), is(root));
+        storage.close(root);
+        storage.open(child);
+        assertThat(storage.getVisitedCount(), is(2));
+        assertThat(storage.getParent(PackedPosition.pack(1, 0, 0)), is(PackedPosition.pack(0, 0, 0)));
+        assertThat(storage.getParent(PackedPosition.pack(2, 0, 0)), is(Long.MIN_VALUE));
+        assertThat(storage.shouldExamine(node(child, 0, 0)), is(false));
+        assertThat(storage.getBestNode(), is(child));
+        assertThat(storage.removeBestNode(), is(child));
+        assertThat(storage.removeBestNode(), is((Object) null));
+    }
+
+    private static VectorNode node(VectorNode parent, int x, int z) {
+        return new VectorNode(parent, null, new Vector(x, 0, z), new EmptyBlockSource(), new GridExaminer());
+    }
+
+    private static class EmptyBlockSource extends BlockSource {
+        @Override
+        public BoundingBox getCollisionBox(int x, int y, int z) {
+            return null;
+        }
+
+        @Override
+        public Material getMaterialAt(int x, int y, int z) {
+            return null;
+        }
+
+        @Override
+        public World getWorld() {
+            return null;
+        }
+    }
+
+    /**
+     * Allows walking on a single layer inside a square, which is split by a wall open at one end.
+     */
+    private static class GridExaminer implements BlockExaminer {
+        @Override
+        public float getCost(BlockSource source, PathPoint point) {
+            return 0;
+        }
+
+        @Override
+        public PassableState isPassable(BlockSource source, PathPoint point) {
+            Vector pos = point.getVector();
+            int x = pos.getBlockX(), z = pos.getBlockZ();
+            boolean inside = pos.getBlockY() == 0 && x >= 0 && x < SIZE && z >= 0 && z < SIZE
+                    && (x != WALL_X || z >= WALL_LENGTH);
+            return inside ? PassableState.PASSABLE : PassableState.UNPASSABLE;
+        }
+    }
+
+    /**
+     * A goal that is never reached, without a heuristic so that every block ends with its cheapest parent.
+     */
+    private static class GridGoal implements AStarGoal<VectorNode> {
+        @Override
+        public float g(VectorNode from, VectorNode to) {
+            return from.distance(to);
+        }
+
+        @Override
+        public float getInitialCost(VectorNode node) {
+            return 0;
+        }
+
+        @Override
+        public float h(VectorNode from) {
+            return 0;
+        }
+
+        @Override
+        public boolean isFinished(VectorNode node) {
+            return false;
+        }
+    }
+
+    private static final int SIZE = 5;
+    private static final int WALL_LENGTH = SIZE - 1;
+    private static final int WALL_X = 2;
+}
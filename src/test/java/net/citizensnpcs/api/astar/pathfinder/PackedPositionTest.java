@@ -0,0 +1,61 @@
+package net.citizensnpcs.api.astar.pathfinder;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+import org.bukkit.util.Vector;
+import org.junit.Test;
+
+public class PackedPositionTest {
+    @Test
+    public void coordinateLimitsRoundTrip() {
+        assertRoundTrip(MIN_XZ, MIN_Y, MIN_XZ);
+        assertRoundTrip(MAX_XZ, MAX_Y, MAX_XZ);
+        assertRoundTrip(MIN_XZ, MAX_Y, MAX_XZ);
+        assertRoundTrip(MAX_XZ, MIN_Y, MIN_XZ);
+    }
+
+    @Test
+    public void negativeCoordinatesRoundTrip() {
+        assertRoundTrip(-1, -1, -1);
+        assertRoundTrip(-30000000, -64, 30000000);
+        assertRoundTrip(12345, -2, -67890);
+    }
+
+    @Test
+    public void neighboursHaveDistinctKeys() {
+        long packed = PackedPosition.pack(-1, 0, -1);
+        assertThat(PackedPosition.pack(-1, -1, -1), not(packed));
+        assertThat(PackedPosition.pack(0, 0, -1), not(packed));
+        assertThat(PackedPosition.pack(-1, 0, 0), not(packed));
+        assertThat(PackedPosition.pack(-1, 1, -1), not(packed));
+    }
+
+    @Test
+    public void outOfRangeYDoesNotLeakIntoXZ() {
+        long packed = PackedPosition.pack(-5, MAX_Y + 1, 7);
+        assertThat(PackedPosition.unpackX(packed), is(-5));
+        assertThat(PackedPosition.unpackY(packed), is(MIN_Y));
+        assertThat(PackedPosition.unpackZ(packed), is(7));
+    }
+
+    @Test
+    public void vectorsArePackedByBlock() {
+        long packed = PackedPosition.pack(new Vector(-0.5, -63.25, 15.999));
+        assertThat(packed, is(PackedPosition.pack(-1, -64, 15)));
+        assertThat(PackedPosition.toVector(packed), is(new Vector(-1, -64, 15)));
+    }
+
+    private static void assertRoundTrip(int x, int y, int z) {
+        long packed = PackedPosition.pack(x, y, z);
+        assertThat(PackedPosition.unpackX(packed), is(x));
+        assertThat(PackedPosition.unpackY(packed), is(y));
+        assertThat(PackedPosition.unpackZ(packed), is(z));
+    }
+
+    private static final int MAX_XZ = (1 << 25) - 1;
+    private static final int MAX_Y = 2047;
+    private static final int MIN_XZ = -(1 << 25);
+    private static final int MIN_Y = -2048;
+}
@@ -0,0 +1,73 @@
+package net.citizensnpcs.api.astar.pathfinder;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+
+import org.bukkit.Location;
+import org.bukkit.util.Vector;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import net.citizensnpcs.api.astar.AStarMachine;
+import net.citizensnpcs.api.astar.pathfinder.PathTest.FakeBlockSource;
+
+public class PassabilityMemoTest {
+    @Test
+    public void memoisedSearchMatchesUnmemoised() {
+        AStarMachine<VectorNode, Path> machine = AStarMachine.createWithDefaultStorage();
+        Location start = new Location(null, -1, 0, 5);
+        VectorGoal goal = new VectorGoal(new Vector(0, 1, 8), 0);
+        Path plain = machine.runFully(goal, new VectorNode(goal, start, new FakeBlockSource(), new StepExaminer()));
+        Path memoised;
+        try (VectorNodeArena arena = new VectorNodeArena()) {
+            memoised = machine.runFully(goal,
+                    new VectorNode(goal, start, new FakeBlockSource(), arena, new StepExaminer()));
+            assertThat(arena.getMemoisedCount() > 0, is(true));
+        }
+        assertThat(plain, notNullValue());
+        assertThat(memoised, notNullValue());
+        assertThat(vectors(memoised), is(vectors(plain)));
+        // the platform can only be climbed onto from the floor in front of it
+        assertThat(plain.getVector(plain.size() - 5), is(new Vector(0, 0, 4)));
+    }
+
+    private static List<Vector> vectors(Path path) {
+        return Lists.newArrayList(path.getPath());
+    }
+
+    /**
+     * A floor at height 0 beside a one block wide platform at height 1, which can only be stepped onto in the +z
+     * direction. The platform is first examined from the side, so reusing that result for other parents would leave
+     * it unreachable. Relies on the default {@link BlockExaminer#isParentDependent(BlockSource, PathPoint)}.
+     */
+    private static class StepExaminer implements BlockExaminer {
+        @Override
+        public float getCost(BlockSource source, PathPoint point) {
+            return 0;
+        }
+
+        private int getHeight(int x, int z) {
+            if (z < 0 || z > 8 || x < -3 || x > 0)
+                return -1;
+            return x == 0 && z >= 5 ? 1 : 0;
+        }
+
+        @Override
+        public PassableState isPassable(BlockSource source, PathPoint point) {
+            Vector pos = point.getVector();
+            int x = pos.getBlockX(), y = pos.getBlockY(), z = pos.getBlockZ();
+            if (getHeight(x, z) != y)
+                return PassableState.UNPASSABLE;
+            PathPoint parent = point.getParentPoint();
+            if (parent == null || parent.getVector().getBlockY() >= y)
+                return PassableState.PASSABLE;
+            Vector from = parent.getVector();
+            return from.getBlockX() == x && from.getBlockZ() == z - 1 ? PassableState.PASSABLE
+                    : PassableState.UNPASSABLE;
+        }
+    }
+}
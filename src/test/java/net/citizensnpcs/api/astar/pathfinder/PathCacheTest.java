@@ -0,0 +1,85 @@
+package net.citizensnpcs.api.astar.pathfinder;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+
+import org.bukkit.World;
+import org.bukkit.util.Vector;
+import org.junit.Test;
+
+public class PathCacheTest {
+    @Test
+    public void chunkChangesInvalidatePaths() {
+        MaterialGridBlockSource source = new MaterialGridBlockSource();
+        World world = source.getWorld();
+        PathCache cache = new PathCache();
+        // the corner block at 0, 0 also depends on the diagonal chunk at -1, -1
+        put(cache, source, 0, 1);
+        put(cache, source, 8, 9);
+        assertThat(cache.size(), is(2));
+        assertThat(get(cache, world, 0, 1), notNullValue());
+        assertThat(get(cache, world, 0, 1).size(), is(2));
+
+        cache.onChunkChanged(world, 5, 5);
+        assertThat(cache.size(), is(2));
+        cache.onChunkChanged(world, -1, -1);
+        assertThat(cache.size(), is(1));
+        assertThat(get(cache, world, 0, 1), nullValue());
+        assertThat(get(cache, world, 8, 9), notNullValue());
+
+        cache.onChunkChanged(world, 0, 0);
+        assertThat(cache.size(), is(0));
+        assertThat(cache.getHits(), is(3L));
+        assertThat(cache.getMisses(), is(1L));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        MaterialGridBlockSource source = new MaterialGridBlockSource();
+        World world = source.getWorld();
+        PathCache cache = new PathCache().setMaxSize(2);
+        put(cache, source, 0, 1);
+        put(cache, source, 2, 3);
+        assertThat(get(cache, world, 0, 1), notNullValue());
+        put(cache, source, 4, 5);
+        assertThat(cache.size(), is(2));
+        assertThat(get(cache, world, 2, 3), nullValue());
+        assertThat(get(cache, world, 0, 1), notNullValue());
+        assertThat(get(cache, world, 4, 5), notNullValue());
+
+        cache.setMaxSize(1);
+        assertThat(cache.size(), is(1));
+        assertThat(get(cache, world, 4, 5), notNullValue());
+        // evicted paths must leave nothing behind for chunk changes to find
+        cache.onChunkChanged(world, 0, 0);
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    public void rejectsStaleSources() {
+        MaterialGridBlockSource stale = new MaterialGridBlockSource() {
+            @Override
+            public boolean isCurrent(int chunkX, int chunkZ) {
+                return chunkX != -1 || chunkZ != -1;
+            }
+        };
+        PathCache cache = new PathCache();
+        put(cache, stale, 0, 1);
+        assertThat(cache.size(), is(0));
+        put(cache, stale, 8, 9);
+        assertThat(cache.size(), is(1));
+    }
+
+    private static Path get(PathCache cache, World world, int from, int to) {
+        return cache.get(world, new Vector(from, 64, from), new Vector(to, 64, from), 0, 1);
+    }
+
+    private static void put(PathCache cache, BlockSource source, int from, int to) {
+        cache.put(source.getWorld(), new Vector(from, 64, from), new Vector(to, 64, from), 0, 1,
+                new Path(Arrays.asList(new Vector(from, 64, from), new Vector(to, 64, from))), source);
+    }
+}
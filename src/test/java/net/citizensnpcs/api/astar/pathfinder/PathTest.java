@@ -0,0 +1,237 @@
+package net.citizensnpcs.api.astar.pathfinder;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.util.Vector;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import net.citizensnpcs.api.astar.AStarMachine;
+import net.citizensnpcs.api.astar.pathfinder.PathPoint.PathCallback;
+import net.citizensnpcs.api.npc.NPC;
+import net.citizensnpcs.api.util.BoundingBox;
+
+public class PathTest {
+    @Test
+    public void callbacksFollowSmoothedIndices() {
+        List<PathCallback>[] callbacks = callbacks(new NoopCallback(), new NoopCallback());
+        Path path = new Path(pack(0, 0, 0, 0, 0, 1, 0, 0, 2, 0, 0, 3, 0, 0, 4, 0, 0, 5, 0, 0, 6),
+                new int[] { 2, 4 }, callbacks);
+        Path smoothed = path.smooth(new GridBlockSource()::isWalkable);
+        assertThat(vectors(smoothed), is(vectors(0, 0, 0, 0, 0, 2, 0, 0, 4, 0, 0, 6)));
+        assertThat(smoothed.getCallbacks(0), nullValue());
+        assertThat(smoothed.getCallbacks(1), is(callbacks[0]));
+        assertThat(smoothed.getCallbacks(2), is(callbacks[1]));
+        assertThat(smoothed.getCallbacks(3), nullValue());
+    }
+
+    @Test
+    public void callbackWaypointKept() {
+        List<PathCallback>[] callbacks = callbacks(new NoopCallback());
+        Path path = new Path(pack(0, 0, 0, 0, 0, 1, 0, 0, 2, 0, 0, 3, 0, 0, 4, 0, 0, 5), new int[] { 2 }, callbacks);
+        Path smoothed = path.smooth(new GridBlockSource()::isWalkable);
+        assertThat(vectors(smoothed), is(vectors(0, 0, 0, 0, 0, 2, 0, 0, 5)));
+        assertThat(smoothed.getCallbacks(1), is(callbacks[0]));
+    }
+
+    @Test
+    public void fractionalPositionsRoundTrip() {
+        List<Vector> points = Lists.newArrayList(new Vector(-0.5, -1.25, 2.5), new Vector(3, 64, -7),
+                new Vector(-3.25, 64.5, 7.75));
+        Path path = new Path(points);
+        assertThat(vectors(path), is(points));
+        assertThat(path.getBlockX(0), is(-1));
+        assertThat(path.getBlockY(0), is(-2));
+        assertThat(path.getBlockZ(2), is(7));
+    }
+
+    @Test
+    public void goalInLastBlockReplacesLastEntry() {
+        List<VectorNode> nodes = nodes(0, 0, 0, 0, 0, 1);
+        PathCallback callback = new NoopCallback();
+        nodes.get(1).addCallback(callback);
+        Vector goal = new Vector(0.5, 0, 1.75);
+        Path path = new Path(nodes, goal);
+        assertThat(path.size(), is(2));
+        assertThat(path.getVector(0), is(new Vector(0, 0, 0)));
+        assertThat(path.getVector(1), is(goal));
+        assertThat(path.getCallbacks(0), nullValue());
+        assertThat(path.getCallbacks(1), is(nodes.get(1).callbacks));
+    }
+
+    @Test
+    public void goalOutsideLastBlockIsAppended() {
+        List<VectorNode> nodes = nodes(0, 0, 0, 0, 0, 1);
+        nodes.get(1).addCallback(new NoopCallback());
+        Vector goal = new Vector(-0.5, 0, 2.5);
+        Path path = new Path(nodes, goal);
+        assertThat(path.size(), is(3));
+        assertThat(path.getVector(1), is(new Vector(0, 0, 1)));
+        assertThat(path.getVector(2), is(goal));
+        assertThat(path.getBlockX(2), is(-1));
+        assertThat(path.getCallbacks(1), is(nodes.get(1).callbacks));
+        assertThat(path.getCallbacks(2), is(nodes.get(1).callbacks));
+    }
+
+    @Test
+    public void heightChangeKept() {
+        Path path = new Path(vectors(0, 0, 0, 0, 0, 1, 0, 1, 2, 0, 1, 3, 0, 1, 4));
+        Path smoothed = path.smooth(new GridBlockSource()::isWalkable);
+        assertThat(vectors(smoothed), is(vectors(0, 0, 0, 0, 0, 1, 0, 1, 2, 0, 1, 4)));
+    }
+
+    @Test
+    public void partialPlanEndsAtClosestNode() {
+        AStarMachine<VectorNode, Path> machine = AStarMachine.createWithDefaultStorage();
+        Vector goalVector = new Vector(0, 0, WALL_Z + 4);
+        VectorGoal goal = new VectorGoal(goalVector, 0);
+        AStarMachine<VectorNode, Path>.AStarState state = machine.getStateFor(goal,
+                new VectorNode(null, goal, new Vector(0, 0, 0), new FakeBlockSource(), new WallExaminer()));
+        Path path = machine.run(state, -1, true);
+        assertThat(path, notNullValue());
+        assertThat(state.isGoalReached(), is(false));
+        Vector last = path.getVector(path.size() - 1);
+        assertThat(last, is(state.getClosestNode().getVector()));
+        assertThat(last, is(new Vector(0, 0, WALL_Z - 1)));
+        for (Vector point : path.getPath()) {
+            assertThat(point, not(goalVector));
+        }
+    }
+
+    @Test
+    public void smoothsAgainstBlockSource() {
+        MaterialGridBlockSource source = new MaterialGridBlockSource().fill(0, 63, 0, 4, 63, 4, Material.STONE);
+        Path path = new Path(vectors(0, 64, 0, 0, 64, 1, 0, 64, 2, 1, 64, 2, 2, 64, 2));
+        assertThat(vectors(path.smooth(source)), is(vectors(0, 64, 0, 2, 64, 2)));
+
+        // a slowing block or a missing floor at the corner stops the corner being cut
+        source.set(1, 64, 1, Material.COBWEB);
+        assertThat(vectors(path.smooth(source)), is(vectors(0, 64, 0, 0, 64, 2, 2, 64, 2)));
+        source.set(1, 64, 1, Material.AIR).set(1, 63, 1, Material.AIR);
+        assertThat(vectors(path.smooth(source)), is(vectors(0, 64, 0, 0, 64, 2, 2, 64, 2)));
+    }
+
+    @Test
+    public void straightRunCollapses() {
+        Path path = new Path(vectors(0, 0, 0, 0, 0, 1, 0, 0, 2, 0, 0, 3, 0, 0, 4, 0, 0, 5));
+        Path smoothed = path.smooth(new GridBlockSource()::isWalkable);
+        assertThat(vectors(smoothed), is(vectors(0, 0, 0, 0, 0, 5)));
+        assertThat(smoothed.getCallbacks(0), nullValue());
+    }
+
+    @Test
+    public void wallCornerNotCut() {
+        GridBlockSource source = new GridBlockSource();
+        source.walls.add(PackedPosition.pack(1, 0, 1));
+        Path path = new Path(vectors(0, 0, 0, 0, 0, 1, 0, 0, 2, 1, 0, 2, 2, 0, 2));
+        Path smoothed = path.smooth(source::isWalkable);
+        assertThat(vectors(smoothed), is(vectors(0, 0, 0, 0, 0, 2, 2, 0, 2)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<PathCallback>[] callbacks(PathCallback... callbacks) {
+        List<PathCallback>[] lists = new List[callbacks.length];
+        for (int i = 0; i < callbacks.length; i++) {
+            lists[i] = Collections.singletonList(callbacks[i]);
+        }
+        return lists;
+    }
+
+    private static List<VectorNode> nodes(int... coords) {
+        List<VectorNode> nodes = Lists.newArrayList();
+        VectorNode parent = null;
+        for (int i = 0; i < coords.length; i += 3) {
+            parent = new VectorNode(parent, null, new Vector(coords[i], coords[i + 1], coords[i + 2]),
+                    new FakeBlockSource());
+            nodes.add(parent);
+        }
+        return nodes;
+    }
+
+    private static long[] pack(int... coords) {
+        long[] packed = new long[coords.length / 3];
+        for (int i = 0; i < packed.length; i++) {
+            packed[i] = PackedPosition.pack(coords[i * 3], coords[i * 3 + 1], coords[i * 3 + 2]);
+        }
+        return packed;
+    }
+
+    private static List<Vector> vectors(int... coords) {
+        List<Vector> vectors = Lists.newArrayList();
+        for (int i = 0; i < coords.length; i += 3) {
+            vectors.add(new Vector(coords[i], coords[i + 1], coords[i + 2]));
+        }
+        return vectors;
+    }
+
+    private static List<Vector> vectors(Path path) {
+        return Lists.newArrayList(path.getPath());
+    }
+
+    static class FakeBlockSource extends BlockSource {
+        @Override
+        public BoundingBox getCollisionBox(int x, int y, int z) {
+            return null;
+        }
+
+        @Override
+        public Material getMaterialAt(int x, int y, int z) {
+            return null;
+        }
+
+        @Override
+        public World getWorld() {
+            return null;
+        }
+    }
+
+    /**
+     * Open floor everywhere except for the given wall blocks.
+     */
+    private static class GridBlockSource {
+        private final Set<Long> walls = Sets.newHashSet();
+
+        private boolean isWalkable(int x, int y, int z) {
+            return !walls.contains(PackedPosition.pack(x, y, z));
+        }
+    }
+
+    private static class NoopCallback implements PathCallback {
+        @Override
+        public void run(NPC npc, Block point, List<Block> path, int index) {
+        }
+    }
+
+    /**
+     * Allows walking on a single layer inside a small square, which is split by a wall.
+     */
+    private static class WallExaminer implements BlockExaminer {
+        @Override
+        public float getCost(BlockSource source, PathPoint point) {
+            return 0;
+        }
+
+        @Override
+        public PassableState isPassable(BlockSource source, PathPoint point) {
+            Vector pos = point.getVector();
+            boolean inside = pos.getBlockY() == 0 && Math.abs(pos.getBlockX()) <= 4 && pos.getBlockZ() >= 0
+                    && pos.getBlockZ() <= WALL_Z + 4 && pos.getBlockZ() != WALL_Z;
+            return inside ? PassableState.PASSABLE : PassableState.UNPASSABLE;
+        }
+    }
+
+    private static final int WALL_Z = 5;
+}
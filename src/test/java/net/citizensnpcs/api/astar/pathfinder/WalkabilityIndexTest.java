@@ -0,0 +1,87 @@
+package net.citizensnpcs.api.astar.pathfinder;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Random;
+
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.util.Vector;
+import org.junit.Test;
+
+import net.citizensnpcs.api.astar.pathfinder.BlockExaminer.PassableState;
+import net.citizensnpcs.api.util.BoundingBox;
+
+public class WalkabilityIndexTest {
+    @Test
+    public void indexedExaminerMatchesFullExaminer() {
+        MaterialGridBlockSource source = new MaterialGridBlockSource();
+        Random random = new Random(7);
+        for (int x = 0; x < 16; x++) {
+            for (int y = 60; y <= 68; y++) {
+                for (int z = 0; z < 16; z++) {
+                    source.set(x, y, z,
+                            random.nextBoolean() ? Material.AIR : MATERIALS[random.nextInt(MATERIALS.length)]);
+                }
+            }
+        }
+        MinecraftBlockExaminer full = new MinecraftBlockExaminer();
+        WalkabilityExaminer indexed = new WalkabilityExaminer(new WalkabilityIndex());
+        for (int x = 1; x < 16; x++) {
+            for (int y = 61; y <= 68; y++) {
+                for (int z = 0; z < 16; z++) {
+                    Vector pos = new Vector(x, y, z);
+                    for (Vector parent : new Vector[] { null, new Vector(x - 1, y, z), new Vector(x - 1, y - 1, z),
+                            new Vector(x, y - 1, z) }) {
+                        VectorNode root = parent == null ? null : new VectorNode(null, null, parent, source);
+                        VectorNode point = new VectorNode(root, null, pos, source);
+                        PassableState expected = full.isPassable(source, point);
+                        assertThat(pos + " from " + parent + ": " + indexed.isPassable(source, point),
+                                is(pos + " from " + parent + ": " + expected));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void staleSourcesDoNotPublishSections() {
+        MaterialGridBlockSource source = new MaterialGridBlockSource().fill(0, 63, 0, 15, 63, 15, Material.STONE);
+        BlockSource stale = new BlockSource() {
+            @Override
+            public BoundingBox getCollisionBox(int x, int y, int z) {
+                return source.getCollisionBox(x, y, z);
+            }
+
+            @Override
+            public Material getMaterialAt(int x, int y, int z) {
+                return source.getMaterialAt(x, y, z);
+            }
+
+            @Override
+            public World getWorld() {
+                return source.getWorld();
+            }
+
+            @Override
+            public boolean isCurrent(int chunkX, int chunkZ) {
+                return false;
+            }
+        };
+        WalkabilityIndex index = new WalkabilityIndex();
+        // a snapshot that has gone stale is still read, but its section must not be kept
+        int flags = index.getFlags(stale, 4, 64, 4);
+        assertThat(flags & WalkabilityIndex.STANDABLE, is(WalkabilityIndex.STANDABLE));
+        assertThat(index.getSectionCount(source.getWorld()), is(0));
+
+        assertThat(index.getFlags(source, 4, 64, 4), is(flags));
+        assertThat(index.getSectionCount(source.getWorld()), is(1));
+        index.onChunkChanged(source.getWorld(), 0, 0);
+        assertThat(index.getSectionCount(source.getWorld()), is(0));
+    }
+
+    private static final Material[] MATERIALS = { Material.STONE, Material.STONE, Material.GRASS_BLOCK,
+            Material.WATER, Material.LADDER, Material.VINE, Material.OAK_FENCE, Material.OAK_DOOR, Material.COBWEB,
+            Material.CACTUS, Material.SOUL_SAND };
+}
@@ -0,0 +1,96 @@
+package net.citizensnpcs.api.navmesh;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.bukkit.Material;
+import org.bukkit.util.Vector;
+import org.junit.Test;
+
+import com.google.common.collect.Sets;
+
+import net.citizensnpcs.api.astar.pathfinder.MaterialGridBlockSource;
+import net.citizensnpcs.api.astar.pathfinder.WalkabilityIndex;
+
+public class NavMeshTest {
+    @Test
+    public void mergesOpenFloorIntoOneRegion() {
+        MaterialGridBlockSource source = new MaterialGridBlockSource().fill(0, FLOOR, 0, 15, FLOOR, 15,
+                Material.STONE);
+        NavMesh mesh = new NavMesh(new WalkabilityIndex());
+        NavMeshRegion region = mesh.getRegion(source, 0, FEET, 0);
+        assertThat(region, notNullValue());
+        assertThat(region.getArea(), is(256));
+        assertThat(mesh.getRegion(source, 15, FEET, 15), is(region));
+        assertThat(region.getCentre(), is(new Vector(8, FEET, 8)));
+        assertThat(mesh.getRegion(source, 0, FLOOR, 0), nullValue());
+        assertThat(mesh.getRegion(source, 0, FEET + 1, 0), nullValue());
+    }
+
+    @Test
+    public void portalsJoinNeighbouringChunksAndSteps() {
+        MaterialGridBlockSource source = new MaterialGridBlockSource()
+                .fill(0, FLOOR, 0, 31, FLOOR, 15, Material.STONE)
+                .fill(0, FLOOR + 1, 16, 15, FLOOR + 1, 31, Material.STONE);
+        NavMesh mesh = new NavMesh(new WalkabilityIndex());
+        NavMeshRegion start = mesh.getRegion(source, 0, FEET, 0);
+        NavMeshRegion east = mesh.getRegion(source, 16, FEET, 0);
+        NavMeshRegion south = mesh.getRegion(source, 0, FEET + 1, 16);
+        assertThat(east, notNullValue());
+        assertThat(south, notNullValue());
+
+        List<NavMeshPortal> portals = mesh.getPortals(source, start);
+        assertThat(portals.size(), is(2));
+        NavMeshPortal toEast = portals.get(0).getTo() == east ? portals.get(0) : portals.get(1);
+        NavMeshPortal toSouth = portals.get(0).getTo() == south ? portals.get(0) : portals.get(1);
+        assertThat(toEast.getTo(), is(east));
+        assertThat(toEast.getWidth(), is(16));
+        assertThat(toEast.getMidpoint(), is(new Vector(16, FEET, 8)));
+        assertThat(toSouth.getTo(), is(south));
+        assertThat(toSouth.getWidth(), is(16));
+        assertThat(toSouth.getMidpoint(), is(new Vector(8, FEET + 0.5, 16)));
+
+        assertThat(mesh.findCorridor(source, new Vector(2, FEET, 2), new Vector(20, FEET, 4), -1),
+                is(Arrays.asList(start, east)));
+        assertThat(mesh.findCorridor(source, new Vector(20, FEET, 4), new Vector(2, FEET + 1, 20), -1),
+                is(Arrays.asList(east, start, south)));
+    }
+
+    @Test
+    public void splitsAroundWalls() {
+        MaterialGridBlockSource source = new MaterialGridBlockSource()
+                .fill(0, FLOOR, 0, 15, FLOOR, 15, Material.STONE)
+                .fill(8, FEET, 0, 8, FEET + 1, 11, Material.STONE);
+        NavMesh mesh = new NavMesh(new WalkabilityIndex());
+        Set<NavMeshRegion> regions = Sets.newIdentityHashSet();
+        for (int x = 0; x < 16; x++) {
+            for (int z = 0; z < 16; z++) {
+                NavMeshRegion region = mesh.getRegion(source, x, FEET, z);
+                if (x == 8 && z <= 11) {
+                    assertThat(region, nullValue());
+                    continue;
+                }
+                assertThat(region, notNullValue());
+                assertThat(region.contains(x, FEET, z), is(true));
+                regions.add(region);
+            }
+        }
+        int area = 0;
+        for (NavMeshRegion region : regions) {
+            area += region.getArea();
+        }
+        assertThat(area, is(256 - 12));
+        assertThat(mesh.getRegion(source, 0, FEET, 0), not(mesh.getRegion(source, 15, FEET, 0)));
+        assertThat(mesh.getRegion(source, 8, FEET + 2, 0).getArea(), is(12));
+    }
+
+    private static final int FEET = 11;
+    private static final int FLOOR = FEET - 1;
+}
@@ -0,0 +1,74 @@
+package net.citizensnpcs.api.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class LongIntHashMapTest {
+    @Test
+    public void clearRemovesAllEntries() {
+        LongIntHashMap map = new LongIntHashMap(4, -1);
+        for (int i = 0; i < 10; i++) {
+            map.put(i, i);
+        }
+        map.clear();
+        assertThat(map.size(), is(0));
+        for (int i = 0; i < 10; i++) {
+            assertThat(map.containsKey(i), is(false));
+        }
+        map.put(3, 30);
+        assertThat(map.get(3), is(30));
+        assertThat(map.size(), is(1));
+    }
+
+    @Test
+    public void growsPastExpectedSize() {
+        LongIntHashMap map = new LongIntHashMap(2, -1);
+        for (int i = -500; i < 500; i++) {
+            map.put(key(i), i + 1000);
+        }
+        assertThat(map.size(), is(1000));
+        for (int i = -500; i < 500; i++) {
+            assertThat(map.get(key(i)), is(i + 1000));
+        }
+        assertThat(map.get(key(500)), is(-1));
+    }
+
+    @Test
+    public void missingKeyReturnsMissingValue() {
+        LongIntHashMap map = new LongIntHashMap(4, Integer.MIN_VALUE);
+        assertThat(map.get(0), is(Integer.MIN_VALUE));
+        assertThat(map.containsKey(0), is(false));
+        map.put(0, -1);
+        assertThat(map.get(0), is(-1));
+        assertThat(map.containsKey(0), is(true));
+    }
+
+    @Test
+    public void putReplacesValue() {
+        LongIntHashMap map = new LongIntHashMap(4, -1);
+        assertThat(map.put(Long.MIN_VALUE, 1), is(-1));
+        assertThat(map.put(Long.MIN_VALUE, 2), is(1));
+        assertThat(map.get(Long.MIN_VALUE), is(2));
+        assertThat(map.size(), is(1));
+    }
+
+    @Test
+    public void rejectsMissingValue() {
+        LongIntHashMap map = new LongIntHashMap(4, -1);
+        boolean thrown = false;
+        try {
+            map.put(1, -1);
+        } catch (IllegalArgumentException e) {
+            thrown = true;
+        }
+        assertThat(thrown, is(true));
+        assertThat(map.size(), is(0));
+    }
+
+    private static long key(int i) {
+        // spread keys over the high and low bits like packed block positions
+        return (long) i << 38 | i & 0xFFF;
+    }
+}